@@ -21,6 +21,7 @@ import de.fraunhofer.iosb.ilt.sta.settings.ConfigDefaults;
 import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
 import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValue;
 import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueBoolean;
+import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueInt;
 import de.fraunhofer.iosb.ilt.sta.util.AuthProvider;
 import de.fraunhofer.iosb.ilt.sta.util.LiquibaseUser;
 import de.fraunhofer.iosb.ilt.sta.util.UpgradeFailedException;
@@ -39,6 +40,13 @@ public class BasicAuthProvider implements AuthProvider, LiquibaseUser, ConfigDef
     @DefaultValue("FROST-Server")
     public static final String TAG_AUTH_REALM_NAME = "realmName";
 
+    @DefaultValueInt(1000)
+    public static final String TAG_CACHE_SIZE = "cacheSize";
+    @DefaultValueInt(300)
+    public static final String TAG_CACHE_TTL = "cacheTtl";
+    @DefaultValueBoolean(false)
+    public static final String TAG_HASH_PLAIN_PASSWORDS = "hashPlainPasswords";
+
     @DefaultValue("read")
     public static final String TAG_ROLE_GET = "roleGet";
     @DefaultValue("update")
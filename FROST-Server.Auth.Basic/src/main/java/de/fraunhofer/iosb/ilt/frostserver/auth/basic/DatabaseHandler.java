@@ -17,11 +17,17 @@
  */
 package de.fraunhofer.iosb.ilt.frostserver.auth.basic;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.querydsl.sql.SQLQueryFactory;
 import com.querydsl.sql.SQLTemplates;
 import com.querydsl.sql.spatial.PostGISTemplates;
 import static de.fraunhofer.iosb.ilt.frostserver.auth.basic.BasicAuthProvider.LIQUIBASE_CHANGELOG_FILENAME;
 import static de.fraunhofer.iosb.ilt.frostserver.auth.basic.BasicAuthProvider.TAG_AUTO_UPDATE_DATABASE;
+import static de.fraunhofer.iosb.ilt.frostserver.auth.basic.BasicAuthProvider.TAG_CACHE_SIZE;
+import static de.fraunhofer.iosb.ilt.frostserver.auth.basic.BasicAuthProvider.TAG_CACHE_TTL;
+import static de.fraunhofer.iosb.ilt.frostserver.auth.basic.BasicAuthProvider.TAG_HASH_PLAIN_PASSWORDS;
 import de.fraunhofer.iosb.ilt.sta.persistence.postgres.ConnectionUtils;
 import de.fraunhofer.iosb.ilt.sta.persistence.postgres.LiquibaseHelper;
 import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
@@ -32,6 +38,12 @@ import java.io.IOException;
 import java.io.Writer;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -71,6 +83,15 @@ public class DatabaseHandler {
     private boolean maybeUpdateDatabase = true;
     private ConnectionUtils.ConnectionWrapper connectionProvider;
     private SQLQueryFactory queryFactory;
+    private final boolean hashPlainPasswords;
+    /**
+     * The roles of verified users, by user name and password digest.
+     */
+    private final Cache<String, Set<String>> verifiedCredentials;
+    /**
+     * The roles of users, by user name.
+     */
+    private final Cache<String, Set<String>> rolesByUser;
 
     private DatabaseHandler(CoreSettings coreSettings) {
         this.coreSettings = coreSettings;
@@ -79,6 +100,18 @@ public class DatabaseHandler {
         maybeUpdateDatabase = authSettings.getBoolean(TAG_AUTO_UPDATE_DATABASE, BasicAuthProvider.class);
         connectionProvider = new ConnectionUtils.ConnectionWrapper(authSettings);
 
+        hashPlainPasswords = authSettings.getBoolean(TAG_HASH_PLAIN_PASSWORDS, BasicAuthProvider.class);
+        int cacheSize = authSettings.getInt(TAG_CACHE_SIZE, BasicAuthProvider.class);
+        int cacheTtl = authSettings.getInt(TAG_CACHE_TTL, BasicAuthProvider.class);
+        verifiedCredentials = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheTtl, TimeUnit.SECONDS)
+                .build();
+        rolesByUser = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(cacheTtl, TimeUnit.SECONDS)
+                .build();
+
     }
 
     private synchronized SQLQueryFactory createQueryFactory() {
@@ -97,20 +130,7 @@ public class DatabaseHandler {
     }
 
     public boolean isValidUser(String userName, String password) {
-        maybeUpdateDatabase();
-        try {
-            Integer one = createQueryFactory()
-                    .selectOne()
-                    .from(QUsers.USERS)
-                    .where(
-                            QUsers.USERS.userName.eq(userName)
-                                    .and(QUsers.USERS.userPass.eq(password))
-                    ).fetchFirst();
-            return one != null;
-        } catch (Exception exc) {
-            LOGGER.error("Failed to check user credentials.", exc);
-            return false;
-        }
+        return getRoles(userName, password) != null;
     }
 
     /**
@@ -123,39 +143,96 @@ public class DatabaseHandler {
      * given role.
      */
     public boolean userHasRole(String userName, String userPass, String roleName) {
-        maybeUpdateDatabase();
+        Set<String> roles = getRoles(userName, userPass);
+        return roles != null && roles.contains(roleName);
+    }
+
+    public boolean userHasRole(String userName, String roleName) {
         try {
-            Integer one = createQueryFactory()
-                    .selectOne()
-                    .from(QUsers.USERS)
-                    .leftJoin(QUsersRoles.USER_ROLES)
-                    .on(QUsers.USERS.userName.eq(QUsersRoles.USER_ROLES.userName))
-                    .where(
-                            QUsers.USERS.userName.eq(userName)
-                                    .and(QUsers.USERS.userPass.eq(userPass))
-                                    .and(QUsersRoles.USER_ROLES.roleName.eq(roleName))
-                    ).fetchFirst();
-            return one != null;
-        } catch (Exception exc) {
+            return rolesByUser.get(userName, () -> loadRoles(userName)).contains(roleName);
+        } catch (ExecutionException | UncheckedExecutionException exc) {
             LOGGER.error("Failed to check user rights.", exc);
             return false;
         }
     }
 
-    public boolean userHasRole(String userName, String roleName) {
+    /**
+     * Get the roles of the given user, if the password is correct. Verified
+     * credentials are cached, so the database is accessed, and the password
+     * hash is calculated, at most once per cache period.
+     *
+     * @param userName The name of the user.
+     * @param userPass The password of the user.
+     * @return The roles of the user, or null if the user does not exist or
+     * the password is wrong.
+     */
+    private Set<String> getRoles(String userName, String userPass) {
+        if (userName == null || userPass == null) {
+            return null;
+        }
+        String key = userName + '\n' + PasswordHasher.digest(userPass);
         try {
-            Integer one = createQueryFactory()
-                    .selectOne()
-                    .from(QUsersRoles.USER_ROLES)
-                    .where(
-                            QUsersRoles.USER_ROLES.userName.eq(userName)
-                                    .and(QUsersRoles.USER_ROLES.roleName.eq(roleName))
-                    ).fetchFirst();
-            return one != null;
-        } catch (Exception exc) {
-            LOGGER.error("Failed to check user rights.", exc);
-            return false;
+            return verifiedCredentials.get(key, () -> verifyAndLoadRoles(userName, userPass));
+        } catch (ExecutionException | UncheckedExecutionException exc) {
+            if (exc.getCause() instanceof InvalidCredentialsException) {
+                return null;
+            }
+            LOGGER.error("Failed to check user credentials.", exc);
+            return null;
+        }
+    }
+
+    private Set<String> verifyAndLoadRoles(String userName, String userPass) throws InvalidCredentialsException {
+        maybeUpdateDatabase();
+        String stored = loadPassword(userName);
+        if (!PasswordHasher.verify(userPass, stored)) {
+            throw new InvalidCredentialsException();
+        }
+        if (hashPlainPasswords && !PasswordHasher.isHashed(stored)) {
+            storePassword(userName, PasswordHasher.hash(userPass));
         }
+        Set<String> roles = loadRoles(userName);
+        rolesByUser.put(userName, roles);
+        return roles;
+    }
+
+    private synchronized String loadPassword(String userName) {
+        return createQueryFactory()
+                .select(QUsers.USERS.userPass)
+                .from(QUsers.USERS)
+                .where(QUsers.USERS.userName.eq(userName))
+                .fetchFirst();
+    }
+
+    private synchronized Set<String> loadRoles(String userName) {
+        List<String> roles = createQueryFactory()
+                .select(QUsersRoles.USER_ROLES.roleName)
+                .from(QUsersRoles.USER_ROLES)
+                .where(QUsersRoles.USER_ROLES.userName.eq(userName))
+                .fetch();
+        return Collections.unmodifiableSet(new HashSet<>(roles));
+    }
+
+    private synchronized void storePassword(String userName, String hash) {
+        try {
+            createQueryFactory()
+                    .update(QUsers.USERS)
+                    .set(QUsers.USERS.userPass, hash)
+                    .where(QUsers.USERS.userName.eq(userName))
+                    .execute();
+            connectionProvider.doCommit();
+            LOGGER.info("Replaced the plain text password of user {} by a hash.", userName);
+        } catch (RuntimeException exc) {
+            LOGGER.error("Failed to store password hash.", exc);
+            connectionProvider.doRollback();
+        }
+    }
+
+    /**
+     * Thrown when the user does not exist, or the password does not match.
+     * Since the cache does not store exceptions, failed checks are not cached.
+     */
+    private static class InvalidCredentialsException extends Exception {
     }
 
     private void maybeUpdateDatabase() {
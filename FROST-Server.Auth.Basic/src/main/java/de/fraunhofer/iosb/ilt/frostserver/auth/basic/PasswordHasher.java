@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.frostserver.auth.basic;
+
+import de.fraunhofer.iosb.ilt.sta.util.StringHelper;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Hashes and verifies passwords with PBKDF2. Hashes are stored as
+ * {PBKDF2}iterations$salt$hash, with salt and hash Base64 encoded. Stored
+ * passwords without the {PBKDF2} prefix are treated as plain text.
+ *
+ * Running this class prints the hash of the password given as argument, to
+ * insert in the USERS table.
+ *
+ * @author scf
+ */
+public class PasswordHasher {
+
+    public static final String PREFIX = "{PBKDF2}";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int DEFAULT_ITERATIONS = 100000;
+    private static final int SALT_LENGTH = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private PasswordHasher() {
+        // Utility class.
+    }
+
+    /**
+     * Hash the given password with a new, random salt.
+     *
+     * @param password The password to hash.
+     * @return The hash, in the format stored in the database.
+     */
+    public static String hash(String password) {
+        byte[] salt = new byte[SALT_LENGTH];
+        RANDOM.nextBytes(salt);
+        byte[] hash = pbkdf2(password, salt, DEFAULT_ITERATIONS);
+        Base64.Encoder encoder = Base64.getEncoder();
+        return PREFIX + DEFAULT_ITERATIONS + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    /**
+     * @param stored The stored password.
+     * @return true if the stored password is a hash, false if it is plain
+     * text.
+     */
+    public static boolean isHashed(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    /**
+     * Check the given password against the stored password, which can be a
+     * hash or plain text.
+     *
+     * @param password The password to check.
+     * @param stored The stored hash or plain text password.
+     * @return true if the password matches.
+     */
+    public static boolean verify(String password, String stored) {
+        if (password == null || stored == null) {
+            return false;
+        }
+        if (!isHashed(stored)) {
+            return MessageDigest.isEqual(password.getBytes(StringHelper.UTF8), stored.getBytes(StringHelper.UTF8));
+        }
+        String[] parts = stored.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) {
+            return false;
+        }
+        try {
+            int iterations = Integer.parseInt(parts[0]);
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] salt = decoder.decode(parts[1]);
+            byte[] expected = decoder.decode(parts[2]);
+            return MessageDigest.isEqual(expected, pbkdf2(password, salt, iterations));
+        } catch (IllegalArgumentException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * A fast digest of the password, so verified credentials can be kept in
+     * memory without keeping the password itself.
+     *
+     * @param password The password to digest.
+     * @return The Base64 encoded SHA-256 digest of the password.
+     */
+    public static String digest(String password) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(password.getBytes(StringHelper.UTF8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not supported.", ex);
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException("Failed to hash password.", ex);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.out.println("Usage: PasswordHasher <password>");
+            return;
+        }
+        System.out.println(hash(args[0]));
+    }
+}
@@ -19,8 +19,12 @@ package de.fraunhofer.iosb.ilt.frostserver.auth.keycloak;
 
 import de.fraunhofer.iosb.ilt.sta.settings.ConfigDefaults;
 import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
+import de.fraunhofer.iosb.ilt.sta.settings.Settings;
 import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValue;
+import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueBoolean;
+import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueInt;
 import de.fraunhofer.iosb.ilt.sta.util.AuthProvider;
+import de.fraunhofer.iosb.ilt.sta.util.JwtVerifier;
 import de.fraunhofer.iosb.ilt.sta.util.LiquibaseUser;
 import de.fraunhofer.iosb.ilt.sta.util.UpgradeFailedException;
 import java.io.IOException;
@@ -28,14 +32,17 @@ import java.io.Writer;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import javax.security.auth.Subject;
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.NameCallback;
 import javax.security.auth.callback.PasswordCallback;
 import javax.security.auth.login.LoginException;
+import org.keycloak.adapters.KeycloakDeployment;
 import org.keycloak.adapters.jaas.AbstractKeycloakLoginModule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -65,6 +72,29 @@ public class KeycloakAuthProvider implements AuthProvider, LiquibaseUser, Config
      */
     @DefaultValue("")
     public static final String TAG_KEYCLOAK_CONFIG_SECRET = "keycloakConfigSecret";
+    /**
+     * Verify bearer tokens locally, using the public keys of the realm,
+     * instead of sending each token to the Keycloak server.
+     */
+    @DefaultValueBoolean(true)
+    public static final String TAG_KEYCLOAK_LOCAL_VERIFICATION = "keycloakLocalTokenVerification";
+    /**
+     * The maximum number of verified tokens to keep in memory.
+     */
+    @DefaultValueInt(10000)
+    public static final String TAG_KEYCLOAK_TOKEN_CACHE_SIZE = "keycloakTokenCacheSize";
+    /**
+     * The time, in seconds, after which the public keys of the realm are
+     * reloaded.
+     */
+    @DefaultValueInt(86400)
+    public static final String TAG_KEYCLOAK_KEY_CACHE_TTL = "keycloakKeyCacheTtl";
+    /**
+     * The minimum time, in seconds, between two loads of the public keys of
+     * the realm, when tokens with unknown keys are received.
+     */
+    @DefaultValueInt(10)
+    public static final String TAG_KEYCLOAK_KEY_MIN_REFRESH = "keycloakKeyMinRefresh";
 
     /**
      * The logger for this class.
@@ -76,14 +106,20 @@ public class KeycloakAuthProvider implements AuthProvider, LiquibaseUser, Config
      */
     private static final String FROST_SERVER_KEYCLOAKJSON = "FROST-Server-Keycloak.json";
     private static final int CUTOFF_HOURS = 24;
+    /**
+     * The allowed clock difference with the Keycloak server, in seconds.
+     */
+    private static final int TOKEN_CLOCK_SKEW = 10;
 
     private CoreSettings coreSettings;
+    private JwtVerifier jwtVerifier;
+    private volatile boolean localVerification;
 
     private class Client {
 
         public final String userName;
         private Instant lastSeen;
-        private Subject subject;
+        private Set<String> roles;
 
         public Client(String userName) {
             this.userName = userName;
@@ -104,17 +140,20 @@ public class KeycloakAuthProvider implements AuthProvider, LiquibaseUser, Config
         }
 
         /**
-         * @return the subject
+         * @return the names of the roles of the user, in lower case.
          */
-        public Subject getSubject() {
-            return subject;
+        public Set<String> getRoles() {
+            return roles;
         }
 
         /**
-         * @param subject the subject to set
+         * @param roles the names of the roles of the user to set.
          */
-        public void setSubject(Subject subject) {
-            this.subject = subject;
+        public void setRoles(Set<String> roles) {
+            this.roles = new HashSet<>();
+            for (String role : roles) {
+                this.roles.add(role.toLowerCase());
+            }
         }
 
     }
@@ -130,6 +169,39 @@ public class KeycloakAuthProvider implements AuthProvider, LiquibaseUser, Config
     public void init(CoreSettings coreSettings) {
         this.coreSettings = coreSettings;
         OPTIONS.put("keycloak-config-file", FROST_SERVER_KEYCLOAKJSON);
+        Settings authSettings = coreSettings.getAuthSettings();
+        localVerification = authSettings.getBoolean(TAG_KEYCLOAK_LOCAL_VERIFICATION, getClass());
+    }
+
+    /**
+     * Get the verifier for local token verification, creating it on first
+     * use. Returns null if the realm information can not be determined, in
+     * which case tokens are verified by the Keycloak server.
+     *
+     * @return the verifier, or null.
+     */
+    private synchronized JwtVerifier getJwtVerifier() {
+        if (jwtVerifier == null && localVerification) {
+            KeycloakDeployment deployment = Utils.resolveDeployment(coreSettings);
+            String issuer = deployment.getRealmInfoUrl();
+            String jwksUrl = deployment.getJwksUrl();
+            if (issuer == null || jwksUrl == null) {
+                LOGGER.warn("Could not determine realm URLs, disabling local token verification.");
+                localVerification = false;
+                return null;
+            }
+            Settings authSettings = coreSettings.getAuthSettings();
+            jwtVerifier = new JwtVerifier(
+                    issuer,
+                    deployment.getResourceName(),
+                    deployment.isUseResourceRoleMappings(),
+                    JwtVerifier.urlKeySource(jwksUrl),
+                    authSettings.getInt(TAG_KEYCLOAK_KEY_CACHE_TTL, getClass()),
+                    authSettings.getInt(TAG_KEYCLOAK_KEY_MIN_REFRESH, getClass()),
+                    authSettings.getInt(TAG_KEYCLOAK_TOKEN_CACHE_SIZE, getClass()),
+                    TOKEN_CLOCK_SKEW);
+        }
+        return jwtVerifier;
     }
 
     @Override
@@ -139,6 +211,16 @@ public class KeycloakAuthProvider implements AuthProvider, LiquibaseUser, Config
 
     @Override
     public boolean isValidUser(String clientId, String username, String password) {
+        clientMapCleanup();
+        if (localVerification && JwtVerifier.isJwt(password)) {
+            JwtVerifier verifier = getJwtVerifier();
+            if (verifier != null && checkToken(verifier, username, password, clientId)) {
+                return true;
+            }
+            // Not a token we can verify, like a password that looks like a
+            // token, or a token with an issuer we do not know. Let the
+            // Keycloak server decide.
+        }
         AbstractKeycloakLoginModule loginModule;
         if (password.length() > 50) {
             LOGGER.debug("Using BearerTokenLoginModule...");
@@ -147,12 +229,22 @@ public class KeycloakAuthProvider implements AuthProvider, LiquibaseUser, Config
             LOGGER.debug("Using DirectAccessGrantsLoginModule...");
             loginModule = new DirectAccessGrantsLoginModuleFrost(coreSettings);
         }
-
-        clientMapCleanup();
-
         return checkLogin(loginModule, username, password, clientId);
     }
 
+    private boolean checkToken(JwtVerifier verifier, String username, String token, String clientId) {
+        JwtVerifier.Claims claims = verifier.verify(token);
+        if (claims == null) {
+            LOGGER.debug("Token for user {} ({}) could not be verified locally.", username, clientId);
+            return false;
+        }
+        Client client = new Client(username);
+        client.setLastSeen(Instant.now());
+        client.setRoles(claims.getRoles());
+        CLIENTMAP.put(clientId, client);
+        return true;
+    }
+
     private boolean checkLogin(AbstractKeycloakLoginModule loginModule, String username, String password, String clientId) {
         try {
             LOGGER.debug("Login for user {} ({})", username, clientId);
@@ -170,7 +262,9 @@ public class KeycloakAuthProvider implements AuthProvider, LiquibaseUser, Config
                 loginModule.commit();
                 Client client = new Client(username);
                 client.setLastSeen(Instant.now());
-                client.setSubject(subject);
+                Set<String> roles = new HashSet<>();
+                subject.getPrincipals().forEach(p -> roles.add(p.getName()));
+                client.setRoles(roles);
                 CLIENTMAP.put(clientId, client);
             }
             return login;
@@ -188,7 +282,7 @@ public class KeycloakAuthProvider implements AuthProvider, LiquibaseUser, Config
             return false;
         }
         client.setLastSeen(Instant.now());
-        boolean hasRole = client.getSubject().getPrincipals().stream().anyMatch(p -> p.getName().equalsIgnoreCase(roleName));
+        boolean hasRole = client.getRoles().contains(roleName.toLowerCase());
         LOGGER.trace("User {} has role {}: {}", userName, roleName, hasRole);
         return hasRole;
     }
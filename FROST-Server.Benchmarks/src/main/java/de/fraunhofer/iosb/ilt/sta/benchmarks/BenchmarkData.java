@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.benchmarks;
+
+import de.fraunhofer.iosb.ilt.sta.model.Datastream;
+import de.fraunhofer.iosb.ilt.sta.model.FeatureOfInterest;
+import de.fraunhofer.iosb.ilt.sta.model.Observation;
+import de.fraunhofer.iosb.ilt.sta.model.builder.DatastreamBuilder;
+import de.fraunhofer.iosb.ilt.sta.model.builder.FeatureOfInterestBuilder;
+import de.fraunhofer.iosb.ilt.sta.model.builder.ObservationBuilder;
+import de.fraunhofer.iosb.ilt.sta.model.core.EntitySet;
+import de.fraunhofer.iosb.ilt.sta.model.core.EntitySetImpl;
+import de.fraunhofer.iosb.ilt.sta.model.core.IdLong;
+import de.fraunhofer.iosb.ilt.sta.model.ext.TimeInstant;
+import de.fraunhofer.iosb.ilt.sta.path.EntityType;
+import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
+import java.util.Properties;
+
+/**
+ * Test data shared by the benchmarks.
+ *
+ * @author scf
+ */
+public class BenchmarkData {
+
+    public static final String SERVICE_ROOT_URL = "http://localhost:8080/FROST-Server";
+    public static final long START_TIME = 1_500_000_000_000L;
+
+    public static final String OBSERVATION_JSON = "{\n"
+            + "  \"phenomenonTime\": \"2017-07-14T02:40:00Z\",\n"
+            + "  \"resultTime\": \"2017-07-14T02:40:01Z\",\n"
+            + "  \"result\": 21.5,\n"
+            + "  \"parameters\": {\"quality\": \"good\", \"sensorMode\": 3},\n"
+            + "  \"Datastream\": {\"@iot.id\": 1},\n"
+            + "  \"FeatureOfInterest\": {\"@iot.id\": 1}\n"
+            + "}";
+
+    public static final String THING_JSON = "{\n"
+            + "  \"name\": \"Weather station\",\n"
+            + "  \"description\": \"A weather station on the roof.\",\n"
+            + "  \"properties\": {\"owner\": \"IOSB\", \"floor\": 5},\n"
+            + "  \"Locations\": [{\n"
+            + "    \"name\": \"Roof\",\n"
+            + "    \"description\": \"The roof of the building.\",\n"
+            + "    \"encodingType\": \"application/vnd.geo+json\",\n"
+            + "    \"location\": {\"type\": \"Point\", \"coordinates\": [8.42, 49.01]}\n"
+            + "  }],\n"
+            + "  \"Datastreams\": [{\n"
+            + "    \"name\": \"Air temperature\",\n"
+            + "    \"description\": \"The air temperature on the roof.\",\n"
+            + "    \"observationType\": \"http://www.opengis.net/def/observationType/OGC-OM/2.0/OM_Measurement\",\n"
+            + "    \"unitOfMeasurement\": {\"name\": \"degree Celsius\", \"symbol\": \"degC\", \"definition\": \"http://unitsofmeasure.org/ucum.html#para-30\"},\n"
+            + "    \"ObservedProperty\": {\"name\": \"Temperature\", \"definition\": \"http://dbpedia.org/page/Temperature\", \"description\": \"The temperature.\"},\n"
+            + "    \"Sensor\": {\"name\": \"PT100\", \"description\": \"A PT100 sensor.\", \"encodingType\": \"application/pdf\", \"metadata\": \"http://example.org/pt100.pdf\"}\n"
+            + "  }]\n"
+            + "}";
+
+    private BenchmarkData() {
+        // Utility class.
+    }
+
+    /**
+     * @return Settings that do not need a database or any other external
+     * service.
+     */
+    public static CoreSettings createCoreSettings() {
+        Properties properties = new Properties();
+        properties.put(CoreSettings.TAG_SERVICE_ROOT_URL, SERVICE_ROOT_URL);
+        properties.put(CoreSettings.TAG_TEMP_PATH, System.getProperty("java.io.tmpdir"));
+        properties.put("bus.busImplementationClass", "de.fraunhofer.iosb.ilt.sta.messagebus.InternalMessageBus");
+        return new CoreSettings(properties);
+    }
+
+    /**
+     * Create a dataArray request body, in the format of the CreateObservations
+     * request.
+     *
+     * @param datastreams The number of Datastreams.
+     * @param rows The number of observations per Datastream.
+     * @return The request body.
+     */
+    public static String createDataArrayJson(int datastreams, int rows) {
+        StringBuilder json = new StringBuilder("[");
+        for (int ds = 1; ds <= datastreams; ds++) {
+            if (ds > 1) {
+                json.append(',');
+            }
+            json.append("{\"Datastream\":{\"@iot.id\":").append(ds).append("},")
+                    .append("\"components\":[\"phenomenonTime\",\"result\",\"FeatureOfInterest/id\"],")
+                    .append("\"dataArray@iot.count\":").append(rows).append(',')
+                    .append("\"dataArray\":[");
+            for (int row = 0; row < rows; row++) {
+                if (row > 0) {
+                    json.append(',');
+                }
+                json.append("[\"").append(TimeInstant.create(START_TIME + row * 60_000L)).append("\",")
+                        .append(row * 0.5).append(',')
+                        .append(1)
+                        .append(']');
+            }
+            json.append("]}");
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * Create a set of Observations, as the persistence manager would return
+     * them.
+     *
+     * @param count The number of Observations.
+     * @return The Observations.
+     */
+    public static EntitySet<Observation> createObservations(int count) {
+        EntitySet<Observation> result = new EntitySetImpl<>(EntityType.OBSERVATION);
+        for (int i = 0; i < count; i++) {
+            long time = START_TIME + i * 60_000L;
+            Datastream datastream = new DatastreamBuilder()
+                    .setId(new IdLong(1))
+                    .build();
+            FeatureOfInterest foi = new FeatureOfInterestBuilder()
+                    .setId(new IdLong(1))
+                    .build();
+            result.add(new ObservationBuilder()
+                    .setId(new IdLong(i + 1))
+                    .setPhenomenonTime(TimeInstant.create(time))
+                    .setResultTime(TimeInstant.create(time + 1_000))
+                    .setResult(i * 0.5)
+                    .addParameter("quality", "good")
+                    .setDatastream(datastream)
+                    .setFeatureOfInterest(foi)
+                    .build());
+        }
+        result.setCount(count * 10L);
+        result.setNextLink(SERVICE_ROOT_URL + "/v1.0/Observations?$skip=" + count);
+        return result;
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.benchmarks;
+
+import de.fraunhofer.iosb.ilt.sta.formatter.DefaultResultFormater;
+import de.fraunhofer.iosb.ilt.sta.json.serialize.EntityFormatter;
+import de.fraunhofer.iosb.ilt.sta.model.Observation;
+import de.fraunhofer.iosb.ilt.sta.model.core.EntitySet;
+import de.fraunhofer.iosb.ilt.sta.parser.path.PathParser;
+import de.fraunhofer.iosb.ilt.sta.parser.query.QueryParser;
+import de.fraunhofer.iosb.ilt.sta.path.ResourcePath;
+import de.fraunhofer.iosb.ilt.sta.persistence.IdManagerlong;
+import de.fraunhofer.iosb.ilt.sta.query.Query;
+import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
+import de.fraunhofer.iosb.ilt.sta.util.VisibilityHelper;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for preparing and serialising the result of a request.
+ *
+ * @author scf
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormatterBenchmark {
+
+    /**
+     * The number of Observations in the result.
+     */
+    @Param({"100", "10000"})
+    public int count;
+
+    private CoreSettings coreSettings;
+    private ResourcePath path;
+    private Query query;
+    private Query dataArrayQuery;
+    private EntitySet<Observation> observations;
+    private DefaultResultFormater resultFormatter;
+
+    @Setup
+    public void setup() {
+        coreSettings = BenchmarkData.createCoreSettings();
+        path = PathParser.parsePath(new IdManagerlong(), coreSettings.getServiceRootUrl(), "/Datastreams(1)/Observations");
+        query = QueryParser.parseQuery("$select=id,phenomenonTime,result,Datastream", coreSettings);
+        query.validate(path);
+        dataArrayQuery = QueryParser.parseQuery("$resultFormat=dataArray&$select=id,phenomenonTime,result", coreSettings);
+        dataArrayQuery.validate(path);
+        observations = BenchmarkData.createObservations(count);
+        VisibilityHelper.applyVisibility(observations, path, query, coreSettings.isUseAbsoluteNavigationLinks());
+        resultFormatter = new DefaultResultFormater();
+    }
+
+    @Benchmark
+    public EntitySet<Observation> applyVisibility() {
+        VisibilityHelper.applyVisibility(observations, path, query, coreSettings.isUseAbsoluteNavigationLinks());
+        return observations;
+    }
+
+    @Benchmark
+    public String writeEntityCollection() throws IOException {
+        return EntityFormatter.writeEntityCollection(observations);
+    }
+
+    @Benchmark
+    public String formatDataArray() throws IOException {
+        return resultFormatter.formatDataArray(path, dataArrayQuery, observations);
+    }
+
+}
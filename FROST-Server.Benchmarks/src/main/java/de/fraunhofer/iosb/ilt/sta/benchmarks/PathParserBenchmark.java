@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.benchmarks;
+
+import de.fraunhofer.iosb.ilt.sta.parser.path.PathParser;
+import de.fraunhofer.iosb.ilt.sta.parser.query.QueryParser;
+import de.fraunhofer.iosb.ilt.sta.path.ResourcePath;
+import de.fraunhofer.iosb.ilt.sta.persistence.IdManagerlong;
+import de.fraunhofer.iosb.ilt.sta.query.Query;
+import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for parsing the path and the query options of a request.
+ *
+ * @author scf
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PathParserBenchmark {
+
+    @Param({
+        "/Things",
+        "/Things(1)/Datastreams(2)/Observations",
+        "/Datastreams(1)/Thing/properties/address/floor"
+    })
+    public String path;
+
+    @Param({
+        "$top=100",
+        "$filter=result gt 5 and phenomenonTime ge 2017-07-14T00:00:00Z&$orderby=phenomenonTime desc&$top=100",
+        "$select=id,name&$expand=Datastreams($select=id,name;$expand=Observations($top=10;$orderby=phenomenonTime desc)),Locations&$filter=st_within(Locations/location, geography'POLYGON((8 49, 9 49, 9 50, 8 50, 8 49))')"
+    })
+    public String query;
+
+    private IdManagerlong idManager;
+    private CoreSettings coreSettings;
+
+    @Setup
+    public void setup() {
+        idManager = new IdManagerlong();
+        coreSettings = BenchmarkData.createCoreSettings();
+    }
+
+    @Benchmark
+    public ResourcePath parsePath() {
+        return PathParser.parsePath(idManager, coreSettings.getServiceRootUrl(), path);
+    }
+
+    @Benchmark
+    public Query parseQuery() {
+        return QueryParser.parseQuery(query, coreSettings);
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.benchmarks;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.dsl.NumberPath;
+import com.querydsl.sql.SQLQuery;
+import com.querydsl.sql.SQLQueryFactory;
+import com.querydsl.sql.spatial.PostGISTemplates;
+import de.fraunhofer.iosb.ilt.sta.parser.path.PathParser;
+import de.fraunhofer.iosb.ilt.sta.parser.query.QueryParser;
+import de.fraunhofer.iosb.ilt.sta.path.ResourcePath;
+import de.fraunhofer.iosb.ilt.sta.persistence.postgres.PathSqlBuilderImp;
+import de.fraunhofer.iosb.ilt.sta.persistence.postgres.longid.PostgresPersistenceManagerLong;
+import de.fraunhofer.iosb.ilt.sta.query.Query;
+import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
+import de.fraunhofer.iosb.ilt.sta.settings.PersistenceSettings;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for generating the SQL of a request. The query factory does not
+ * have a database connection, so only the generation of the SQL is measured.
+ *
+ * @author scf
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PathSqlBuilderBenchmark {
+
+    @Param({
+        "/Things",
+        "/Things(1)/Datastreams(2)/Observations?$filter=result gt 5 and phenomenonTime ge 2017-07-14T00:00:00Z&$orderby=phenomenonTime desc&$top=100",
+        "/Datastreams?$filter=Thing/Locations/name eq 'Roof' and ObservedProperty/name eq 'Temperature'&$orderby=name"
+    })
+    public String url;
+
+    private PersistenceSettings persistenceSettings;
+    private PathSqlBuilderImp<NumberPath<Long>, Long> sqlBuilder;
+    private SQLQueryFactory queryFactory;
+    private ResourcePath path;
+    private Query query;
+
+    @Setup
+    public void setup() {
+        CoreSettings coreSettings = BenchmarkData.createCoreSettings();
+        persistenceSettings = coreSettings.getPersistenceSettings();
+        PostgresPersistenceManagerLong pm = new PostgresPersistenceManagerLong();
+        pm.init(coreSettings);
+        sqlBuilder = new PathSqlBuilderImp<>(pm.getPropertyResolver());
+        queryFactory = new SQLQueryFactory(
+                PostGISTemplates.builder().quote().build(),
+                () -> {
+                    throw new UnsupportedOperationException("The benchmark query factory has no connection.");
+                });
+        String[] split = url.split("\\?", 2);
+        path = PathParser.parsePath(pm.getIdManager(), coreSettings.getServiceRootUrl(), split[0]);
+        query = QueryParser.parseQuery(split.length > 1 ? split[1] : null, coreSettings);
+        query.validate(path);
+    }
+
+    @Benchmark
+    public SQLQuery<Tuple> buildFor() {
+        return sqlBuilder.buildFor(path, query, queryFactory, persistenceSettings);
+    }
+
+    @Benchmark
+    public String buildForAndSerialise() {
+        return sqlBuilder.buildFor(path, query, queryFactory, persistenceSettings).getSQL().getSQL();
+    }
+
+}
@@ -17,11 +17,14 @@
  */
 package de.fraunhofer.iosb.ilt.sta.json.deserialize;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import de.fraunhofer.iosb.ilt.sta.formatter.DataArrayValue;
 import de.fraunhofer.iosb.ilt.sta.json.deserialize.custom.CustomDeserializationManager;
 import de.fraunhofer.iosb.ilt.sta.json.deserialize.custom.CustomEntityChangedMessageDeserializer;
@@ -44,7 +47,10 @@ import de.fraunhofer.iosb.ilt.sta.model.core.EntitySetImpl;
 import de.fraunhofer.iosb.ilt.sta.model.core.Id;
 import de.fraunhofer.iosb.ilt.sta.model.mixin.MixinUtils;
 import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.function.BiConsumer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -63,6 +69,13 @@ public class EntityParser {
     public static final TypeReference listOfDataArrayValue = new TypeReference<List<DataArrayValue>>() {
         // Empty by design.
     };
+    /**
+     * The typereference for a single row of a dataArray.
+     */
+    private static final TypeReference<List<Object>> DATA_ARRAY_ROW = new TypeReference<List<Object>>() {
+        // Empty by design.
+    };
+    private static final String DATA_ARRAY = "dataArray";
     /**
      * The logger for this class.
      */
@@ -184,6 +197,74 @@ public class EntityParser {
         return mapper.readValue(value, listOfDataArrayValue);
     }
 
+    /**
+     * Parse a dataArray request from a stream, handing each row to the
+     * rowHandler as soon as it is read, so the full request never has to be in
+     * memory. The DataArrayValue passed to the handler has the (Multi)Datastream
+     * and components set, but no rows. The same DataArrayValue instance is
+     * passed for all rows of one dataArray.
+     *
+     * If the dataArray of an item comes before its (Multi)Datastream or
+     * components, the rows of that item are buffered until the end of the
+     * item.
+     *
+     * @param reader The reader to read the JSON from.
+     * @param rowHandler The handler that gets the rows.
+     * @throws IOException If the JSON can not be read or is not valid.
+     */
+    public void parseObservationDataArray(Reader reader, BiConsumer<DataArrayValue, List<Object>> rowHandler) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(reader)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected a JSON array of dataArrays.");
+            }
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                parseDataArrayValue(parser, rowHandler);
+            }
+            if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+                throw new IOException("Expected a JSON object with a dataArray, got " + parser.getCurrentToken());
+            }
+        }
+    }
+
+    private void parseDataArrayValue(JsonParser parser, BiConsumer<DataArrayValue, List<Object>> rowHandler) throws IOException {
+        ObjectNode headerNode = mapper.createObjectNode();
+        DataArrayValue header = null;
+        List<List<Object>> bufferedRows = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.getCurrentName();
+            parser.nextToken();
+            if (!DATA_ARRAY.equals(fieldName)) {
+                headerNode.set(fieldName, mapper.readTree(parser));
+                continue;
+            }
+            if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+                throw new IOException("Expected dataArray to be an array.");
+            }
+            boolean headerComplete = headerNode.has("components")
+                    && (headerNode.has("Datastream") || headerNode.has("MultiDatastream"));
+            if (headerComplete && header == null) {
+                header = mapper.treeToValue(headerNode, DataArrayValue.class);
+            }
+            while (parser.nextToken() == JsonToken.START_ARRAY) {
+                List<Object> row = mapper.readValue(parser, DATA_ARRAY_ROW);
+                if (headerComplete) {
+                    rowHandler.accept(header, row);
+                } else {
+                    bufferedRows.add(row);
+                }
+            }
+            if (parser.getCurrentToken() != JsonToken.END_ARRAY) {
+                throw new IOException("Expected the rows of a dataArray to be arrays.");
+            }
+        }
+        if (header == null) {
+            header = mapper.treeToValue(headerNode, DataArrayValue.class);
+        }
+        for (List<Object> row : bufferedRows) {
+            rowHandler.accept(header, row);
+        }
+    }
+
     public ObservedProperty parseObservedProperty(String value) throws IOException {
         return mapper.readValue(value, ObservedProperty.class);
     }
@@ -200,6 +281,10 @@ public class EntityParser {
         return mapper.readValue(value, clazz);
     }
 
+    public <T extends Entity> T parseEntity(Class<T> clazz, Reader value) throws IOException {
+        return mapper.readValue(value, clazz);
+    }
+
     public <T extends Entity> T parseEntity(Class<T> clazz, JsonNode value) throws IOException {
         return mapper.treeToValue(value, clazz);
     }
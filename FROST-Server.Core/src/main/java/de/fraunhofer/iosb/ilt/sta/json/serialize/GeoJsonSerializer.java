@@ -22,6 +22,7 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.fraunhofer.iosb.ilt.sta.json.serialize.custom.CustomSerializer;
+import de.fraunhofer.iosb.ilt.sta.model.ext.LazyJson;
 import org.geojson.Feature;
 import org.geojson.GeoJsonObject;
 
@@ -44,6 +45,15 @@ public class GeoJsonSerializer implements CustomSerializer {
 
     @Override
     public String serialize(Object object) throws JsonProcessingException {
+        if (object instanceof LazyJson) {
+            // GeoJSON read from the database is written as stored.
+            LazyJson lazy = (LazyJson) object;
+            String raw = lazy.getRawJson();
+            if (raw != null) {
+                return raw;
+            }
+            return getMapper().writeValueAsString(lazy.getParsed());
+        }
         if (object == null || !GeoJsonObject.class.isAssignableFrom(object.getClass())) {
             return null;
         }
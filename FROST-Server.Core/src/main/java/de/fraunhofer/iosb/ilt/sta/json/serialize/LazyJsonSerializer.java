@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.json.serialize;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import de.fraunhofer.iosb.ilt.sta.model.ext.LazyJson;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Writes unparsed {@link LazyJson} values as raw JSON. Parsed values, and all
+ * values written to a TokenBuffer (as used by valueToTree, for instance when
+ * applying a JSON-Patch) are written normally.
+ *
+ * @author scf
+ */
+public class LazyJsonSerializer extends JsonSerializer<LazyJson> {
+
+    @Override
+    public void serialize(LazyJson value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        String rawJson = value.getRawJson();
+        if (rawJson == null || gen instanceof TokenBuffer) {
+            serializers.defaultSerializeValue(value.getParsed(), gen);
+        } else {
+            gen.writeRawValue(rawJson);
+        }
+    }
+
+    @Override
+    public boolean isEmpty(SerializerProvider provider, LazyJson value) {
+        if (value == null) {
+            return true;
+        }
+        if (value instanceof Map) {
+            return ((Map) value).isEmpty();
+        }
+        return false;
+    }
+
+}
@@ -18,7 +18,9 @@
 package de.fraunhofer.iosb.ilt.sta.messagebus;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import de.fraunhofer.iosb.ilt.sta.model.Observation;
 import de.fraunhofer.iosb.ilt.sta.model.core.Entity;
+import de.fraunhofer.iosb.ilt.sta.model.core.Id;
 import de.fraunhofer.iosb.ilt.sta.path.EntityProperty;
 import de.fraunhofer.iosb.ilt.sta.path.EntityType;
 import de.fraunhofer.iosb.ilt.sta.path.NavigationProperty;
@@ -140,6 +142,35 @@ public class EntityChangedMessage {
         return this;
     }
 
+    /**
+     * The key that determines which messages must be handled in order.
+     * Observations are ordered per (Multi)Datastream, other entities per
+     * entity.
+     *
+     * @return The key used to keep related messages in order, or null if the
+     * message has no key.
+     */
+    @JsonIgnore
+    public Object getOrderKey() {
+        if (entity == null) {
+            return null;
+        }
+        Entity keyEntity = entity;
+        if (entity instanceof Observation) {
+            Observation observation = (Observation) entity;
+            if (observation.getDatastream() != null) {
+                keyEntity = observation.getDatastream();
+            } else if (observation.getMultiDatastream() != null) {
+                keyEntity = observation.getMultiDatastream();
+            }
+        }
+        Id id = keyEntity.getId();
+        if (id == null) {
+            return null;
+        }
+        return id.getValue();
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.messagebus;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.fraunhofer.iosb.ilt.sta.json.deserialize.EntityParser;
+import de.fraunhofer.iosb.ilt.sta.json.serialize.EntityFormatter;
+import de.fraunhofer.iosb.ilt.sta.model.core.Entity;
+import de.fraunhofer.iosb.ilt.sta.path.NavigationProperty;
+import de.fraunhofer.iosb.ilt.sta.persistence.PersistenceManager;
+import de.fraunhofer.iosb.ilt.sta.persistence.PersistenceManagerFactory;
+import de.fraunhofer.iosb.ilt.sta.util.QueueOverflowHandler;
+import de.fraunhofer.iosb.ilt.sta.util.StringHelper;
+import java.io.IOException;
+
+/**
+ * Encodes EntityChangedMessages to JSON for storing them in a spill file, in
+ * the same format used by the MqttMessageBus.
+ *
+ * @author scf
+ */
+public class EntityChangedMessageCodec implements QueueOverflowHandler.Codec<EntityChangedMessage> {
+
+    private final ObjectMapper formatter;
+    private EntityParser parser;
+
+    public EntityChangedMessageCodec() {
+        formatter = EntityFormatter.getObjectMapper();
+    }
+
+    @Override
+    public byte[] encode(EntityChangedMessage message) throws IOException {
+        // The message is discarded after encoding, so we can safely mark the
+        // navigation entities for export, so their ids end up in the JSON.
+        Entity entity = message.getEntity();
+        for (NavigationProperty property : entity.getEntityType().getNavigationEntities()) {
+            Object parentObject = entity.getProperty(property);
+            if (parentObject instanceof Entity) {
+                ((Entity) parentObject).setExportObject(true);
+            }
+        }
+        return formatter.writeValueAsBytes(message);
+    }
+
+    @Override
+    public EntityChangedMessage decode(byte[] data) throws IOException {
+        return getParser().parseObject(EntityChangedMessage.class, new String(data, StringHelper.UTF8));
+    }
+
+    private EntityParser getParser() {
+        if (parser == null) {
+            PersistenceManager pm = PersistenceManagerFactory.getInstance().create();
+            try {
+                parser = new EntityParser(pm.getIdManager().getIdClass());
+            } finally {
+                pm.close();
+            }
+        }
+        return parser;
+    }
+}
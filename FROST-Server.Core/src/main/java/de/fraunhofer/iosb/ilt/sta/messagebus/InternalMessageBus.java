@@ -24,8 +24,10 @@ import de.fraunhofer.iosb.ilt.sta.settings.BusSettings;
 import de.fraunhofer.iosb.ilt.sta.settings.ConfigDefaults;
 import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
 import de.fraunhofer.iosb.ilt.sta.settings.Settings;
+import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValue;
 import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueInt;
 import de.fraunhofer.iosb.ilt.sta.util.ProcessorHelper;
+import de.fraunhofer.iosb.ilt.sta.util.QueueOverflowHandler;
 
 import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
@@ -47,6 +49,12 @@ public class InternalMessageBus implements MessageBus, ConfigDefaults {
     public static final String TAG_WORKER_COUNT = "workerPoolSize";
     @DefaultValueInt(100)
     public static final String TAG_QUEUE_SIZE = "queueSize";
+    @DefaultValue("DROP")
+    public static final String TAG_OVERFLOW_POLICY = "queueOverflowPolicy";
+    @DefaultValueInt(1000)
+    public static final String TAG_OVERFLOW_TIMEOUT = "queueOverflowTimeout";
+    @DefaultValueInt(64)
+    public static final String TAG_SPILL_SIZE = "queueSpillSize";
 
     /**
      * The logger for this class.
@@ -54,6 +62,7 @@ public class InternalMessageBus implements MessageBus, ConfigDefaults {
     private static final Logger LOGGER = LoggerFactory.getLogger(InternalMessageBus.class);
 
     private BlockingQueue<EntityChangedMessage> entityChangedMessageQueue;
+    private QueueOverflowHandler<EntityChangedMessage> overflowHandler;
     private ExecutorService entityChangedExecutorService;
     private final List<MessageListener> listeners = new CopyOnWriteArrayList<>();
 
@@ -63,17 +72,30 @@ public class InternalMessageBus implements MessageBus, ConfigDefaults {
         Settings customSettings = busSettings.getCustomSettings();
         int poolSize = customSettings.getInt(TAG_WORKER_COUNT, defaultValueInt(TAG_WORKER_COUNT));
         int queueSize = customSettings.getInt(TAG_QUEUE_SIZE, defaultValueInt(TAG_QUEUE_SIZE));
+        QueueOverflowHandler.Policy overflowPolicy = QueueOverflowHandler.Policy.fromString(customSettings.get(TAG_OVERFLOW_POLICY, getClass()));
+        int overflowTimeout = customSettings.getInt(TAG_OVERFLOW_TIMEOUT, getClass());
+        int spillSize = customSettings.getInt(TAG_SPILL_SIZE, getClass());
 
         entityChangedMessageQueue = new ArrayBlockingQueue<>(queueSize);
-        entityChangedExecutorService = ProcessorHelper.createProcessors(
+        overflowHandler = QueueOverflowHandler.create(
+                entityChangedMessageQueue,
+                "InternalBus",
+                overflowPolicy,
+                overflowTimeout,
+                new EntityChangedMessageCodec(),
+                settings.getTempPath(),
+                QueueOverflowHandler.spillSizeInBytes(spillSize));
+        entityChangedExecutorService = ProcessorHelper.createOrderedProcessors(
                 poolSize,
                 entityChangedMessageQueue,
+                EntityChangedMessage::getOrderKey,
                 this::handleMessage,
                 "InternalBusProcessor");
     }
 
     @Override
     public void stop() {
+        overflowHandler.stop(2, TimeUnit.SECONDS);
         entityChangedExecutorService.shutdown();
         try {
             if (entityChangedExecutorService.awaitTermination(2, TimeUnit.SECONDS)) {
@@ -100,9 +122,7 @@ public class InternalMessageBus implements MessageBus, ConfigDefaults {
                 parentEntity.setExportObject(false);
             }
         }
-        if (!entityChangedMessageQueue.offer(message)) {
-            LOGGER.error("Failed to add message to queue. Increase the queue size to allow a bigger buffer, or increase the worker pool size to empty the buffer quicker.");
-        }
+        overflowHandler.offer(message);
     }
 
     @Override
@@ -115,6 +135,13 @@ public class InternalMessageBus implements MessageBus, ConfigDefaults {
         listeners.remove(listener);
     }
 
+    /**
+     * @return The handler that puts messages on the queue.
+     */
+    public QueueOverflowHandler<EntityChangedMessage> getOverflowHandler() {
+        return overflowHandler;
+    }
+
     private void handleMessage(EntityChangedMessage message) {
         for (MessageListener listener : listeners) {
             try {
@@ -17,7 +17,10 @@
  */
 package de.fraunhofer.iosb.ilt.sta.messagebus;
 
+import de.fraunhofer.iosb.ilt.sta.settings.BusSettings;
+import de.fraunhofer.iosb.ilt.sta.settings.ConfigDefaults;
 import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
+import de.fraunhofer.iosb.ilt.sta.util.QueueOverflowHandler;
 
 /**
  *
@@ -51,6 +54,24 @@ public class MessageBusFactory {
         return instance;
     }
 
+    /**
+     * Get the queue overflow policy of the configured message bus
+     * implementation. Listeners that depend on seeing every message use this
+     * to find out if messages may be dropped.
+     *
+     * @param settings The settings to read the configuration from.
+     * @return The overflow policy of the message bus.
+     */
+    public static QueueOverflowHandler.Policy getOverflowPolicy(CoreSettings settings) {
+        BusSettings busSettings = settings.getBusSettings();
+        Class<? extends ConfigDefaults> busClass = InternalMessageBus.class;
+        if (MqttMessageBus.class.getName().equals(busSettings.getBusImplementationClass())) {
+            busClass = MqttMessageBus.class;
+        }
+        String policy = busSettings.getCustomSettings().get(InternalMessageBus.TAG_OVERFLOW_POLICY, busClass);
+        return QueueOverflowHandler.Policy.fromString(policy);
+    }
+
     private MessageBusFactory() {
         // should not be instantiated.
     }
@@ -29,6 +29,7 @@ import de.fraunhofer.iosb.ilt.sta.settings.Settings;
 import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValue;
 import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueInt;
 import de.fraunhofer.iosb.ilt.sta.util.ProcessorHelper;
+import de.fraunhofer.iosb.ilt.sta.util.QueueOverflowHandler;
 import de.fraunhofer.iosb.ilt.sta.util.StringHelper;
 import java.util.List;
 import java.util.UUID;
@@ -62,6 +63,12 @@ public class MqttMessageBus implements MessageBus, MqttCallback, ConfigDefaults
     public static final String TAG_SEND_QUEUE_SIZE = "sendQueueSize";
     @DefaultValueInt(100)
     public static final String TAG_RECV_QUEUE_SIZE = "recvQueueSize";
+    @DefaultValue("DROP")
+    public static final String TAG_OVERFLOW_POLICY = "queueOverflowPolicy";
+    @DefaultValueInt(1000)
+    public static final String TAG_OVERFLOW_TIMEOUT = "queueOverflowTimeout";
+    @DefaultValueInt(64)
+    public static final String TAG_SPILL_SIZE = "queueSpillSize";
     @DefaultValue("tcp://127.0.0.1:1884")
     public static final String TAG_MQTT_BROKER = "mqttBroker";
     @DefaultValue("FROST-Bus")
@@ -81,8 +88,10 @@ public class MqttMessageBus implements MessageBus, MqttCallback, ConfigDefaults
     private int recvPoolSize;
     private int recvQueueSize;
     private BlockingQueue<EntityChangedMessage> sendQueue;
+    private QueueOverflowHandler<EntityChangedMessage> sendOverflowHandler;
     private ExecutorService sendService;
     private BlockingQueue<EntityChangedMessage> recvQueue;
+    private QueueOverflowHandler<EntityChangedMessage> recvOverflowHandler;
     private ExecutorService recvService;
     private final List<MessageListener> listeners = new CopyOnWriteArrayList<>();
 
@@ -105,18 +114,39 @@ public class MqttMessageBus implements MessageBus, MqttCallback, ConfigDefaults
         sendQueueSize = customSettings.getInt(TAG_SEND_QUEUE_SIZE, getClass());
         recvPoolSize = customSettings.getInt(TAG_RECV_WORKER_COUNT, getClass());
         recvQueueSize = customSettings.getInt(TAG_RECV_QUEUE_SIZE, getClass());
+        QueueOverflowHandler.Policy overflowPolicy = QueueOverflowHandler.Policy.fromString(customSettings.get(TAG_OVERFLOW_POLICY, getClass()));
+        int overflowTimeout = customSettings.getInt(TAG_OVERFLOW_TIMEOUT, getClass());
+        int spillSize = QueueOverflowHandler.spillSizeInBytes(customSettings.getInt(TAG_SPILL_SIZE, getClass()));
 
         sendQueue = new ArrayBlockingQueue<>(sendQueueSize);
-        sendService = ProcessorHelper.createProcessors(
+        sendOverflowHandler = QueueOverflowHandler.create(
+                sendQueue,
+                "mqttBusSend",
+                overflowPolicy,
+                overflowTimeout,
+                new EntityChangedMessageCodec(),
+                settings.getTempPath(),
+                spillSize);
+        sendService = ProcessorHelper.createOrderedProcessors(
                 sendPoolSize,
                 sendQueue,
+                EntityChangedMessage::getOrderKey,
                 this::handleMessageSent,
                 "mqttBusSend");
 
         recvQueue = new ArrayBlockingQueue<>(recvQueueSize);
-        recvService = ProcessorHelper.createProcessors(
+        recvOverflowHandler = QueueOverflowHandler.create(
+                recvQueue,
+                "mqttBusRecv",
+                overflowPolicy,
+                overflowTimeout,
+                new EntityChangedMessageCodec(),
+                settings.getTempPath(),
+                spillSize);
+        recvService = ProcessorHelper.createOrderedProcessors(
                 recvPoolSize,
                 recvQueue,
+                EntityChangedMessage::getOrderKey,
                 this::handleMessageReceived,
                 "mqttBusRecv");
 
@@ -211,6 +241,8 @@ public class MqttMessageBus implements MessageBus, MqttCallback, ConfigDefaults
     public void stop() {
         LOGGER.info("Message bus shutting down.");
         stopListening();
+        recvOverflowHandler.stop(10, TimeUnit.SECONDS);
+        sendOverflowHandler.stop(10, TimeUnit.SECONDS);
         disconnect();
         ProcessorHelper.shutdownProcessors(sendService, sendQueue, 10, TimeUnit.SECONDS);
         ProcessorHelper.shutdownProcessors(recvService, recvQueue, 10, TimeUnit.SECONDS);
@@ -219,8 +251,8 @@ public class MqttMessageBus implements MessageBus, MqttCallback, ConfigDefaults
 
     @Override
     public void sendMessage(EntityChangedMessage message) {
-        if (!sendQueue.offer(message)) {
-            LOGGER.error("Failed to add message to send-queue. Increase {} (currently {}) to allow a bigger buffer, or increase {} (currently {}) to empty the buffer quicker.",
+        if (!sendOverflowHandler.offer(message)) {
+            LOGGER.debug("Failed to add message to send-queue. Increase {} (currently {}) to allow a bigger buffer, or increase {} (currently {}) to empty the buffer quicker.",
                     TAG_SEND_QUEUE_SIZE, sendQueueSize, TAG_SEND_WORKER_COUNT, sendPoolSize);
         }
     }
@@ -264,12 +296,26 @@ public class MqttMessageBus implements MessageBus, MqttCallback, ConfigDefaults
     public void messageArrived(String topic, MqttMessage mqttMessage) throws Exception {
         String serialisedEcMessage = new String(mqttMessage.getPayload(), StringHelper.UTF8);
         EntityChangedMessage ecMessage = parser.parseObject(EntityChangedMessage.class, serialisedEcMessage);
-        if (!recvQueue.offer(ecMessage)) {
-            LOGGER.error("Failed to add message to receive-queue. Increase {} (currently {}) to allow a bigger buffer, or increase {} (currently {}) to empty the buffer quicker.",
+        if (!recvOverflowHandler.offer(ecMessage)) {
+            LOGGER.debug("Failed to add message to receive-queue. Increase {} (currently {}) to allow a bigger buffer, or increase {} (currently {}) to empty the buffer quicker.",
                     TAG_RECV_QUEUE_SIZE, recvQueueSize, TAG_RECV_WORKER_COUNT, recvPoolSize);
         }
     }
 
+    /**
+     * @return The handler that puts messages on the send-queue.
+     */
+    public QueueOverflowHandler<EntityChangedMessage> getSendOverflowHandler() {
+        return sendOverflowHandler;
+    }
+
+    /**
+     * @return The handler that puts messages on the receive-queue.
+     */
+    public QueueOverflowHandler<EntityChangedMessage> getRecvOverflowHandler() {
+        return recvOverflowHandler;
+    }
+
     @Override
     public void deliveryComplete(IMqttDeliveryToken token) {
         // Nothing to do...
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.metrics;
+
+import java.io.PrintWriter;
+import java.util.function.LongSupplier;
+
+/**
+ * A value that is read when the metrics are written, like the size of a
+ * queue.
+ *
+ * @author scf
+ */
+public class Gauge implements Metric {
+
+    private final String type;
+    private volatile LongSupplier source;
+
+    /**
+     * Create a new gauge.
+     *
+     * @param type The Prometheus type, "gauge", or "counter" if the source
+     * only goes up.
+     * @param source The source of the value.
+     */
+    public Gauge(String type, LongSupplier source) {
+        this.type = type;
+        this.source = source;
+    }
+
+    /**
+     * @param source The new source of the value.
+     */
+    public void setSource(LongSupplier source) {
+        this.source = source;
+    }
+
+    @Override
+    public String getType() {
+        return type;
+    }
+
+    @Override
+    public void write(PrintWriter out, String name, String labels) {
+        Metrics.writeSample(out, name, labels, source.getAsLong());
+    }
+
+}
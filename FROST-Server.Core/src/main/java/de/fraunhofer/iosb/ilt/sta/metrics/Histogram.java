@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.metrics;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram with fixed bucket boundaries.
+ *
+ * @author scf
+ */
+public class Histogram implements Metric {
+
+    /**
+     * Bucket boundaries for data sizes, in bytes or characters.
+     */
+    public static final double[] SIZE_BUCKETS = {
+        1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000
+    };
+
+    private final double[] bounds;
+    private final LongAdder[] counts;
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder sum = new DoubleAdder();
+
+    /**
+     * Create a new histogram.
+     *
+     * @param bounds The upper bounds of the buckets, in ascending order. The
+     * +Inf bucket is added automatically.
+     */
+    public Histogram(double[] bounds) {
+        this.bounds = bounds.clone();
+        this.counts = new LongAdder[bounds.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    public void observe(double value) {
+        for (int i = 0; i < bounds.length; i++) {
+            if (value <= bounds[i]) {
+                counts[i].increment();
+                break;
+            }
+        }
+        count.increment();
+        sum.add(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getSum() {
+        return sum.sum();
+    }
+
+    @Override
+    public String getType() {
+        return "histogram";
+    }
+
+    @Override
+    public void write(PrintWriter out, String name, String labels) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long total = getCount();
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += counts[i].sum();
+            Metrics.writeSample(out, name + "_bucket", prefix + "le=\"" + bounds[i] + "\"", Math.min(cumulative, total));
+        }
+        Metrics.writeSample(out, name + "_bucket", prefix + "le=\"+Inf\"", total);
+        Metrics.writeSample(out, name + "_sum", labels, getSum());
+        Metrics.writeSample(out, name + "_count", labels, total);
+    }
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.metrics;
+
+import java.io.PrintWriter;
+
+/**
+ * A single metric, with a fixed set of labels.
+ *
+ * @author scf
+ */
+public interface Metric {
+
+    /**
+     * @return The Prometheus type of the metric.
+     */
+    public String getType();
+
+    /**
+     * Write the samples of this metric, in the Prometheus text format.
+     *
+     * @param out The writer to write to.
+     * @param name The name of the metric.
+     * @param labels The formatted labels of the metric, without braces. Can
+     * be empty.
+     */
+    public void write(PrintWriter out, String name, String labels);
+
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.metrics;
+
+import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The registry of all metrics of the server. Metrics are created once, usually
+ * in a static field of the class that updates them, and are written in the
+ * Prometheus text format by {@link #write(PrintWriter)}.
+ *
+ * Counters and gauges are always updated, since they are cheap. Timers only
+ * record when metrics are enabled, to avoid reading the clock when nobody is
+ * interested in the result.
+ *
+ * @author scf
+ */
+public class Metrics {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(Metrics.class);
+    /**
+     * The content type of the Prometheus text format.
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final Map<String, Family> FAMILIES = new ConcurrentHashMap<>();
+    private static volatile boolean enabled = false;
+
+    private static class Family {
+
+        private final String help;
+        private final String type;
+        private final Map<String, Metric> metrics = new ConcurrentHashMap<>();
+
+        public Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private Metrics() {
+        // Utility class.
+    }
+
+    /**
+     * Enable or disable metrics, depending on the given settings.
+     *
+     * @param settings The settings to read the configuration from.
+     */
+    public static synchronized void init(CoreSettings settings) {
+        setEnabled(settings.isMetricsEnabled());
+    }
+
+    public static void setEnabled(boolean enabled) {
+        if (enabled && !Metrics.enabled) {
+            LOGGER.info("Metrics enabled.");
+        }
+        Metrics.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Get the start time for a {@link Timer}.
+     *
+     * @return The current time in nanoseconds, or 0 if metrics are disabled.
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Get or create a counter.
+     *
+     * @param name The name of the counter.
+     * @param help The description of the counter.
+     * @param labels The labels of the counter, as name, value pairs.
+     * @return The counter.
+     */
+    public static Counter counter(String name, String help, String... labels) {
+        return getOrCreate(name, help, "counter", labels, Counter::new);
+    }
+
+    /**
+     * Get or create a counter that reads its value from the given source.
+     * When the counter already exists, its source is replaced.
+     *
+     * @param name The name of the counter.
+     * @param help The description of the counter.
+     * @param source The source of the value.
+     * @param labels The labels of the counter, as name, value pairs.
+     * @return The counter.
+     */
+    public static Gauge counter(String name, String help, LongSupplier source, String... labels) {
+        Gauge gauge = getOrCreate(name, help, "counter", labels, () -> new Gauge("counter", source));
+        gauge.setSource(source);
+        return gauge;
+    }
+
+    /**
+     * Get or create a gauge. When the gauge already exists, its source is
+     * replaced.
+     *
+     * @param name The name of the gauge.
+     * @param help The description of the gauge.
+     * @param source The source of the value.
+     * @param labels The labels of the gauge, as name, value pairs.
+     * @return The gauge.
+     */
+    public static Gauge gauge(String name, String help, LongSupplier source, String... labels) {
+        Gauge gauge = getOrCreate(name, help, "gauge", labels, () -> new Gauge("gauge", source));
+        gauge.setSource(source);
+        return gauge;
+    }
+
+    /**
+     * Get or create a histogram.
+     *
+     * @param name The name of the histogram.
+     * @param help The description of the histogram.
+     * @param bounds The upper bounds of the buckets.
+     * @param labels The labels of the histogram, as name, value pairs.
+     * @return The histogram.
+     */
+    public static Histogram histogram(String name, String help, double[] bounds, String... labels) {
+        return getOrCreate(name, help, "histogram", labels, () -> new Histogram(bounds));
+    }
+
+    /**
+     * Get or create a timer. The name should end in "_seconds".
+     *
+     * @param name The name of the timer.
+     * @param help The description of the timer.
+     * @param labels The labels of the timer, as name, value pairs.
+     * @return The timer.
+     */
+    public static Timer timer(String name, String help, String... labels) {
+        return getOrCreate(name, help, "histogram", labels, Timer::new);
+    }
+
+    private static <T extends Metric> T getOrCreate(String name, String help, String type, String[] labels, Supplier<T> creator) {
+        Family family = FAMILIES.computeIfAbsent(name, n -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " already exists with type " + family.type);
+        }
+        return (T) family.metrics.computeIfAbsent(formatLabels(labels), l -> creator.get());
+    }
+
+    /**
+     * Write all metrics, in the Prometheus text format.
+     *
+     * @param out The writer to write to.
+     */
+    public static void write(PrintWriter out) {
+        for (Map.Entry<String, Family> entry : new TreeMap<>(FAMILIES).entrySet()) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            out.print("# HELP ");
+            out.print(name);
+            out.print(' ');
+            out.print(family.help.replace("\\", "\\\\").replace("\n", "\\n"));
+            out.print('\n');
+            out.print("# TYPE ");
+            out.print(name);
+            out.print(' ');
+            out.print(family.type);
+            out.print('\n');
+            for (Map.Entry<String, Metric> metric : new TreeMap<>(family.metrics).entrySet()) {
+                metric.getValue().write(out, name, metric.getKey());
+            }
+        }
+        out.flush();
+    }
+
+    static void writeSample(PrintWriter out, String name, String labels, double value) {
+        out.print(name);
+        if (!labels.isEmpty()) {
+            out.print('{');
+            out.print(labels);
+            out.print('}');
+        }
+        out.print(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.print((long) value);
+        } else {
+            out.print(value);
+        }
+        out.print('\n');
+    }
+
+    static String formatLabels(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be given as name, value pairs.");
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                result.append(',');
+            }
+            result.append(labels[i])
+                    .append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.metrics;
+
+/**
+ * A histogram of durations, in seconds. Usage:
+ * <pre>
+ * long start = Metrics.start();
+ * ...
+ * TIMER.record(start);
+ * </pre> When metrics are disabled, {@link Metrics#start()} returns 0 and
+ * nothing is recorded.
+ *
+ * @author scf
+ */
+public class Timer extends Histogram {
+
+    /**
+     * Bucket boundaries for durations, in seconds.
+     */
+    public static final double[] TIME_BUCKETS = {
+        0.0001, 0.0005, 0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+
+    public Timer() {
+        super(TIME_BUCKETS);
+    }
+
+    /**
+     * Record the time since the given start time.
+     *
+     * @param startNanos The start time, as returned by
+     * {@link Metrics#start()}. If 0, nothing is recorded.
+     */
+    public void record(long startNanos) {
+        if (startNanos != 0) {
+            recordNanos(System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Record the given duration.
+     *
+     * @param nanos The duration in nanoseconds.
+     */
+    public void recordNanos(long nanos) {
+        observe(nanos / 1e9);
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.model.ext;
+
+import de.fraunhofer.iosb.ilt.sta.json.deserialize.EntityParser;
+import java.io.IOException;
+
+/**
+ * A JSON value read from the database, that is only parsed when something
+ * needs its content. Until then it is written to the output verbatim.
+ *
+ * @author scf
+ */
+public interface LazyJson {
+
+    /**
+     * @return The JSON text, or null if the value has been parsed. Once
+     * parsed, the value may have been changed, so the text is no longer used.
+     */
+    public String getRawJson();
+
+    /**
+     * @return The parsed value.
+     */
+    public Object getParsed();
+
+    /**
+     * Parse the given JSON text.
+     *
+     * @param <T> The type to parse into.
+     * @param json The JSON text to parse.
+     * @param clazz The type to parse into.
+     * @return The parsed value.
+     */
+    public static <T> T parse(String json, Class<T> clazz) {
+        try {
+            return EntityParser.getSimpleObjectMapper().readValue(json, clazz);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to parse stored json.", ex);
+        }
+    }
+}
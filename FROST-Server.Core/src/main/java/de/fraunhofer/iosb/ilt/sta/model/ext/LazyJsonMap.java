@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.model.ext;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import de.fraunhofer.iosb.ilt.sta.json.serialize.LazyJsonSerializer;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A JSON object, used for properties and parameters, that is only parsed when
+ * it is accessed. When it is not accessed, the JSON text is written to the
+ * output as-is.
+ *
+ * @author scf
+ */
+@JsonSerialize(using = LazyJsonSerializer.class)
+public class LazyJsonMap implements Map<String, Object>, LazyJson {
+
+    private String rawJson;
+    private Map<String, Object> parsed;
+
+    /**
+     * @param rawJson The JSON text of the object.
+     */
+    public LazyJsonMap(String rawJson) {
+        this.rawJson = rawJson;
+    }
+
+    /**
+     * @param json The JSON text of an object, may be null.
+     * @return A LazyJsonMap for the given text, or null if the text is null.
+     */
+    public static LazyJsonMap fromJson(String json) {
+        if (json == null) {
+            return null;
+        }
+        return new LazyJsonMap(json);
+    }
+
+    @Override
+    public synchronized String getRawJson() {
+        return rawJson;
+    }
+
+    @Override
+    public synchronized Map<String, Object> getParsed() {
+        if (parsed == null) {
+            Map<String, Object> value = LazyJson.parse(rawJson, LinkedHashMap.class);
+            parsed = value == null ? new LinkedHashMap<>() : value;
+            rawJson = null;
+        }
+        return parsed;
+    }
+
+    @Override
+    public int size() {
+        return getParsed().size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        if (parsed == null) {
+            String trimmed = rawJson.trim();
+            if (trimmed.startsWith("{")) {
+                return trimmed.substring(1).trim().equals("}");
+            }
+        }
+        return getParsed().isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return getParsed().containsKey(key);
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return getParsed().containsValue(value);
+    }
+
+    @Override
+    public Object get(Object key) {
+        return getParsed().get(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        return getParsed().put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        return getParsed().remove(key);
+    }
+
+    @Override
+    public void putAll(Map<? extends String, ? extends Object> m) {
+        getParsed().putAll(m);
+    }
+
+    @Override
+    public void clear() {
+        getParsed().clear();
+    }
+
+    @Override
+    public Set<String> keySet() {
+        return getParsed().keySet();
+    }
+
+    @Override
+    public Collection<Object> values() {
+        return getParsed().values();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return getParsed().entrySet();
+    }
+
+    @Override
+    public int hashCode() {
+        return getParsed().hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof LazyJsonMap) {
+            String otherRaw = ((LazyJsonMap) obj).getRawJson();
+            String raw = getRawJson();
+            if (raw != null && raw.equals(otherRaw)) {
+                return true;
+            }
+        }
+        return getParsed().equals(obj);
+    }
+
+    @Override
+    public String toString() {
+        String raw = getRawJson();
+        if (raw != null) {
+            return raw;
+        }
+        return getParsed().toString();
+    }
+
+}
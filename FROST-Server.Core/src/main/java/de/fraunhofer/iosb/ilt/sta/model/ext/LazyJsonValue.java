@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.model.ext;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import de.fraunhofer.iosb.ilt.sta.json.serialize.LazyJsonSerializer;
+import java.util.Objects;
+
+/**
+ * A JSON value of any type, used for results, resultQuality and GeoJSON
+ * locations, that is only parsed when it is accessed. When it is parsed, objects become Maps and
+ * arrays become Lists.
+ *
+ * @author scf
+ */
+@JsonSerialize(using = LazyJsonSerializer.class)
+public class LazyJsonValue implements LazyJson {
+
+    private String rawJson;
+    private Object parsed;
+
+    /**
+     * @param rawJson The JSON text of the value.
+     */
+    public LazyJsonValue(String rawJson) {
+        this.rawJson = rawJson;
+    }
+
+    /**
+     * @param json The JSON text of a value, may be null.
+     * @return A LazyJsonValue for the given text, or null if the text is
+     * null.
+     */
+    public static LazyJsonValue fromJson(String json) {
+        if (json == null) {
+            return null;
+        }
+        return new LazyJsonValue(json);
+    }
+
+    @Override
+    public synchronized String getRawJson() {
+        return rawJson;
+    }
+
+    @Override
+    public synchronized Object getParsed() {
+        if (rawJson != null) {
+            parsed = LazyJson.parse(rawJson, Object.class);
+            rawJson = null;
+        }
+        return parsed;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(getParsed());
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj instanceof LazyJsonValue) {
+            LazyJsonValue other = (LazyJsonValue) obj;
+            String raw = getRawJson();
+            if (raw != null && raw.equals(other.getRawJson())) {
+                return true;
+            }
+            return Objects.equals(getParsed(), other.getParsed());
+        }
+        return Objects.equals(getParsed(), obj);
+    }
+
+    @Override
+    public String toString() {
+        String raw = getRawJson();
+        if (raw != null) {
+            return raw;
+        }
+        return Objects.toString(getParsed());
+    }
+
+}
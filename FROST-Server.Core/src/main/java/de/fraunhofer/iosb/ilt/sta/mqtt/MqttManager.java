@@ -19,6 +19,9 @@ package de.fraunhofer.iosb.ilt.sta.mqtt;
 
 import de.fraunhofer.iosb.ilt.sta.messagebus.EntityChangedMessage;
 import de.fraunhofer.iosb.ilt.sta.messagebus.MessageListener;
+import de.fraunhofer.iosb.ilt.sta.metrics.Counter;
+import de.fraunhofer.iosb.ilt.sta.metrics.Metrics;
+import de.fraunhofer.iosb.ilt.sta.metrics.Timer;
 import de.fraunhofer.iosb.ilt.sta.model.Observation;
 import de.fraunhofer.iosb.ilt.sta.model.core.Entity;
 import de.fraunhofer.iosb.ilt.sta.mqtt.create.EntityCreateListener;
@@ -60,6 +63,12 @@ public class MqttManager implements SubscriptionListener, MessageListener, Entit
 
     private static MqttManager instance;
     private static final Logger LOGGER = LoggerFactory.getLogger(MqttManager.class);
+    private static final String QUEUE_ENTITY_CHANGED = "MqttEntityChanged";
+    private static final String QUEUE_OBSERVATION_CREATE = "MqttObservationCreate";
+    private static final Timer DISPATCH_TIMER = Metrics.timer("frost_mqtt_dispatch_seconds", "Time spent matching an entity change to subscriptions and publishing the notifications.");
+    private static final Counter PUBLISHED = Metrics.counter("frost_mqtt_published_total", "Number of notifications published to MQTT subscribers.");
+    private static final Counter DROPPED_CHANGES = Metrics.counter("frost_queue_dropped_total", "Number of items dropped because the queue was full.", "queue", QUEUE_ENTITY_CHANGED);
+    private static final Counter DROPPED_CREATES = Metrics.counter("frost_queue_dropped_total", "Number of items dropped because the queue was full.", "queue", QUEUE_OBSERVATION_CREATE);
 
     public static synchronized void init(CoreSettings settings) {
         if (instance == null) {
@@ -109,18 +118,22 @@ public class MqttManager implements SubscriptionListener, MessageListener, Entit
             shutdown = false;
             entityChangedEventQueue = new ArrayBlockingQueue<>(mqttSettings.getSubscribeMessageQueueSize());
             // start watching for EntityChangedEvents
-            entityChangedExecutorService = ProcessorHelper.createProcessors(
+            entityChangedExecutorService = ProcessorHelper.createOrderedProcessors(
                     mqttSettings.getSubscribeThreadPoolSize(),
                     entityChangedEventQueue,
+                    EntityChangedMessage::getOrderKey,
                     this::handleEntityChangedEvent,
                     "MqttManager EntityChangedEventProcessor");
             // start watching for ObservationCreateEvents
             observationCreateEventQueue = new ArrayBlockingQueue<>(mqttSettings.getCreateMessageQueueSize());
-            observationCreateExecutorService = ProcessorHelper.createProcessors(
+            observationCreateExecutorService = ProcessorHelper.createOrderedProcessors(
                     mqttSettings.getCreateThreadPoolSize(),
                     observationCreateEventQueue,
+                    ObservationCreateEvent::getTopic,
                     this::handleObservationCreateEvent,
                     "MqttManager ObservationCreateEventProcessor");
+            Metrics.gauge("frost_queue_size", "Number of items waiting on the queue.", entityChangedEventQueue::size, "queue", QUEUE_ENTITY_CHANGED);
+            Metrics.gauge("frost_queue_size", "Number of items waiting on the queue.", observationCreateEventQueue::size, "queue", QUEUE_OBSERVATION_CREATE);
             // start MQTT server
             server = MqttServerFactory.getInstance().get(settings);
             server.addSubscriptionListener(this);
@@ -156,6 +169,7 @@ public class MqttManager implements SubscriptionListener, MessageListener, Entit
         if (!subscriptions.containsKey(entityType)) {
             return;
         }
+        long startTime = Metrics.start();
         PersistenceManager persistenceManager = PersistenceManagerFactory.getInstance().create();
         // Send a complete entity through the bus, or just an entity-id?
         Entity entity = message.getEntity();
@@ -171,6 +185,7 @@ public class MqttManager implements SubscriptionListener, MessageListener, Entit
             LOGGER.error("error handling MQTT subscriptions", ex);
         } finally {
             persistenceManager.close();
+            DISPATCH_TIMER.record(startTime);
         }
     }
 
@@ -178,6 +193,7 @@ public class MqttManager implements SubscriptionListener, MessageListener, Entit
         try {
             String payload = subscription.formatMessage(entity);
             server.publish(subscription.getTopic(), payload.getBytes(StringHelper.UTF8), settings.getMqttSettings().getQosLevel());
+            PUBLISHED.increment();
         } catch (IOException ex) {
             LOGGER.error("publishing to MQTT on topic '" + subscription.getTopic() + "' failed", ex);
         }
@@ -209,6 +225,7 @@ public class MqttManager implements SubscriptionListener, MessageListener, Entit
             return;
         }
         if (!entityChangedEventQueue.offer(e)) {
+            DROPPED_CHANGES.increment();
             LOGGER.warn("EntityChangedevent discarded because message queue is full {}! Increase mqtt.SubscribeMessageQueueSize and/or mqtt.SubscribeThreadPoolSize.", entityChangedEventQueue.size());
         }
     }
@@ -267,6 +284,7 @@ public class MqttManager implements SubscriptionListener, MessageListener, Entit
             return;
         }
         if (!observationCreateEventQueue.offer(e)) {
+            DROPPED_CREATES.increment();
             LOGGER.warn("ObservationCreateEvent discarded because message queue is full {}! Increase mqtt.SubscribeMessageQueueSize and/or mqtt.SubscribeThreadPoolSize", observationCreateEventQueue.size());
         }
     }
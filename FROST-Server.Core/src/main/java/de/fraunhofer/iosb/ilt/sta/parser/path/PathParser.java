@@ -17,6 +17,8 @@
  */
 package de.fraunhofer.iosb.ilt.sta.parser.path;
 
+import de.fraunhofer.iosb.ilt.sta.metrics.Metrics;
+import de.fraunhofer.iosb.ilt.sta.metrics.Timer;
 import de.fraunhofer.iosb.ilt.sta.path.CustomPropertyArrayIndex;
 import de.fraunhofer.iosb.ilt.sta.path.CustomPropertyPathElement;
 import de.fraunhofer.iosb.ilt.sta.path.EntityPathElement;
@@ -40,6 +42,7 @@ public class PathParser implements ParserVisitor {
      * The logger for this class.
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(PathParser.class);
+    private static final Timer PARSE_TIMER = Metrics.timer("frost_parse_path_seconds", "Time spent parsing request paths.");
 
     private final IdManager idmanager;
 
@@ -83,6 +86,7 @@ public class PathParser implements ParserVisitor {
             return resourcePath;
         }
         LOGGER.debug("Parsing: {}", path);
+        long startTime = Metrics.start();
         InputStream is = new ByteArrayInputStream(path.getBytes(encoding));
         Parser t = new Parser(is, StringHelper.UTF8.name());
         try {
@@ -93,6 +97,8 @@ public class PathParser implements ParserVisitor {
             LOGGER.error("Failed to parse because (Set loglevel to trace for stack): {}", ex.getMessage());
             LOGGER.trace("Exception: ", ex);
             throw new IllegalStateException("Path is not valid.");
+        } finally {
+            PARSE_TIMER.record(startTime);
         }
         return resourcePath;
     }
@@ -17,6 +17,8 @@
  */
 package de.fraunhofer.iosb.ilt.sta.parser.query;
 
+import de.fraunhofer.iosb.ilt.sta.metrics.Metrics;
+import de.fraunhofer.iosb.ilt.sta.metrics.Timer;
 import de.fraunhofer.iosb.ilt.sta.path.NavigationProperty;
 import de.fraunhofer.iosb.ilt.sta.path.Property;
 import de.fraunhofer.iosb.ilt.sta.query.Expand;
@@ -39,6 +41,7 @@ public class QueryParser extends AbstractParserVisitor {
      * The logger for this class.
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(QueryParser.class);
+    private static final Timer PARSE_TIMER = Metrics.timer("frost_parse_query_seconds", "Time spent parsing request query options.");
 
     private final CoreSettings settings;
 
@@ -59,6 +62,7 @@ public class QueryParser extends AbstractParserVisitor {
             return new Query(settings);
         }
 
+        long startTime = Metrics.start();
         InputStream is = new ByteArrayInputStream(query.getBytes(encoding));
         Parser t = new Parser(is, StringHelper.UTF8.name());
         try {
@@ -70,6 +74,8 @@ public class QueryParser extends AbstractParserVisitor {
             LOGGER.error("Failed to parse because (Set loglevel to trace for stack): {}", ex.getMessage());
             LOGGER.trace("Exception: ", ex);
             throw new IllegalArgumentException("Query is not valid: " + ex.getMessage(), ex);
+        } finally {
+            PARSE_TIMER.record(startTime);
         }
     }
 
@@ -68,6 +68,22 @@ public interface PersistenceManager extends LiquibaseUser {
         return clazz.cast(result);
     }
 
+    /**
+     * Explain how the backend executes the query for the given path and
+     * query, for diagnosing slow requests. Only the main query is explained,
+     * not the queries for expanded entities.
+     *
+     * @param path The path to explain the query for.
+     * @param query The query options to explain the query for.
+     * @return The execution plan, as text.
+     * @throws UnsupportedOperationException if the backend can not explain
+     * queries.
+     * @throws IllegalStateException if explaining the query failed.
+     */
+    public default String explain(ResourcePath path, Query query) {
+        throw new UnsupportedOperationException("Explaining queries is not supported by " + getClass().getName());
+    }
+
     public boolean delete(EntityPathElement pathElement) throws NoSuchEntityException;
 
     /**
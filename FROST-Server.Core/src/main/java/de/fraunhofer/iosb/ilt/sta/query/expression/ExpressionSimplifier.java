@@ -0,0 +1,370 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.query.expression;
+
+import de.fraunhofer.iosb.ilt.sta.query.expression.constant.BooleanConstant;
+import de.fraunhofer.iosb.ilt.sta.query.expression.constant.Constant;
+import de.fraunhofer.iosb.ilt.sta.query.expression.constant.DateTimeConstant;
+import de.fraunhofer.iosb.ilt.sta.query.expression.constant.DoubleConstant;
+import de.fraunhofer.iosb.ilt.sta.query.expression.constant.NumericConstant;
+import de.fraunhofer.iosb.ilt.sta.query.expression.function.Function;
+import de.fraunhofer.iosb.ilt.sta.query.expression.function.arithmetic.Add;
+import de.fraunhofer.iosb.ilt.sta.query.expression.function.comparison.Equal;
+import de.fraunhofer.iosb.ilt.sta.query.expression.function.comparison.GreaterEqual;
+import de.fraunhofer.iosb.ilt.sta.query.expression.function.comparison.GreaterThan;
+import de.fraunhofer.iosb.ilt.sta.query.expression.function.comparison.LessEqual;
+import de.fraunhofer.iosb.ilt.sta.query.expression.function.comparison.LessThan;
+import de.fraunhofer.iosb.ilt.sta.query.expression.function.comparison.NotEqual;
+import de.fraunhofer.iosb.ilt.sta.query.expression.function.date.Year;
+import de.fraunhofer.iosb.ilt.sta.query.expression.function.logical.And;
+import de.fraunhofer.iosb.ilt.sta.query.expression.function.logical.Not;
+import de.fraunhofer.iosb.ilt.sta.query.expression.function.logical.Or;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Simplifies filter expressions before they are translated into a database
+ * query. The simplifications are:
+ * <ul>
+ * <li>Arithmetic, comparison, logical and date functions with only constant
+ * parameters are folded into a constant. Functions without parameters, like
+ * now(), are not folded. Times are converted to UTC first, as the database
+ * does. Calculations that fail in the database, like integer overflows and
+ * divisions by zero, are not folded, so the error is not hidden.</li>
+ * <li>Boolean constants are removed from and/or: (x and true) becomes x, (x
+ * or true) becomes true.</li>
+ * <li>not(not(x)) becomes x.</li>
+ * <li>Duplicate terms of an and/or are removed.</li>
+ * <li>Of several lower or upper bounds on the same property, only the
+ * tightest is kept in an and, and only the loosest in an or: (result gt 5
+ * and result gt 3) becomes (result gt 5).</li>
+ * </ul>
+ * The given expression is not changed, functions with simplified parameters
+ * are copied.
+ *
+ * @author scf
+ */
+public class ExpressionSimplifier {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExpressionSimplifier.class);
+
+    /**
+     * The packages of the functions that evaluate to the same result in java
+     * as in the database, and can thus be folded. Math functions are not in
+     * here: java rounds halves up, the database rounds them away from zero.
+     */
+    private static final Set<Package> FOLDABLE_PACKAGES = new HashSet<>(Arrays.asList(
+            Add.class.getPackage(),
+            And.class.getPackage(),
+            Equal.class.getPackage(),
+            Year.class.getPackage()
+    ));
+
+    private ExpressionSimplifier() {
+        // Utility class.
+    }
+
+    /**
+     * Simplify the given expression.
+     *
+     * @param expression The expression to simplify, can be null.
+     * @return The simplified expression, or the given expression if it can
+     * not be simplified.
+     */
+    public static Expression simplify(Expression expression) {
+        if (!(expression instanceof Function)) {
+            return expression;
+        }
+        Function function = (Function) expression;
+        List<Expression> parameters = function.getParameters();
+        List<Expression> simplified = new ArrayList<>(parameters.size());
+        boolean changed = false;
+        boolean allConstant = !parameters.isEmpty();
+        for (Expression parameter : parameters) {
+            Expression result = simplify(parameter);
+            changed = changed || result != parameter;
+            allConstant = allConstant && result instanceof Constant;
+            simplified.add(result);
+        }
+        if (changed) {
+            function = copy(function, simplified);
+        }
+        if (allConstant && canFold(function)) {
+            Function toFold = withUtcDateTimes(function);
+            Expression folded = toFold == null ? null : toFold.compress();
+            if (folded instanceof Constant && isFinite(folded)) {
+                return folded;
+            }
+        }
+        if (function instanceof And) {
+            return simplifyJunction(function, false);
+        }
+        if (function instanceof Or) {
+            return simplifyJunction(function, true);
+        }
+        if (function instanceof Not) {
+            Expression parameter = function.getParameters().get(0);
+            if (parameter instanceof Not) {
+                return ((Not) parameter).getParameters().get(0);
+            }
+        }
+        return function;
+    }
+
+    /**
+     * Java gives infinity or NaN for a floating point division by zero, where
+     * the database raises an error.
+     */
+    private static boolean isFinite(Expression constant) {
+        if (constant instanceof DoubleConstant) {
+            Double value = ((DoubleConstant) constant).getValue();
+            return !value.isInfinite() && !value.isNaN();
+        }
+        return true;
+    }
+
+    private static boolean canFold(Function function) {
+        if (!FOLDABLE_PACKAGES.contains(function.getClass().getPackage())) {
+            return false;
+        }
+        if (function instanceof Equal || function instanceof NotEqual) {
+            // Equal compares the constant classes, the database does not: 1 eq 1.0
+            List<Expression> parameters = function.getParameters();
+            return parameters.get(0).getClass() == parameters.get(1).getClass();
+        }
+        return true;
+    }
+
+    /**
+     * The database compares and extracts fields from times in UTC, so the
+     * times must be in UTC before functions are evaluated in java:
+     * hour(2019-10-21T12:00:00+02:00) is 10 in the database.
+     *
+     * @param function The function to evaluate.
+     * @return The function with all times in UTC, or null if the function
+     * could not be copied.
+     */
+    private static Function withUtcDateTimes(Function function) {
+        List<Expression> parameters = function.getParameters();
+        List<Expression> utcParameters = new ArrayList<>(parameters.size());
+        boolean changed = false;
+        for (Expression parameter : parameters) {
+            if (parameter instanceof DateTimeConstant) {
+                DateTime value = ((DateTimeConstant) parameter).getValue();
+                if (!DateTimeZone.UTC.equals(value.getZone())) {
+                    parameter = new DateTimeConstant(value.withZone(DateTimeZone.UTC));
+                    changed = true;
+                }
+            }
+            utcParameters.add(parameter);
+        }
+        if (!changed) {
+            return function;
+        }
+        Function copy = copy(function, utcParameters);
+        return copy == function ? null : copy;
+    }
+
+    private static Function copy(Function function, List<Expression> parameters) {
+        try {
+            Function copy = function.getClass().getConstructor().newInstance();
+            copy.setParameters(parameters);
+            return copy;
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            LOGGER.debug("Could not copy function {}.", function.getFunctionName(), ex);
+            return function;
+        }
+    }
+
+    /**
+     * Simplify an And or an Or.
+     *
+     * @param function The And or Or to simplify.
+     * @param isOr true for an Or, false for an And.
+     * @return The simplified expression.
+     */
+    private static Expression simplifyJunction(Function function, boolean isOr) {
+        List<Expression> terms = new ArrayList<>();
+        flatten(function, function.getClass(), terms);
+        List<Expression> result = new ArrayList<>(terms.size());
+        for (Expression term : terms) {
+            if (term instanceof BooleanConstant) {
+                if (((BooleanConstant) term).getValue() == isOr) {
+                    // x or true, x and false
+                    return term;
+                }
+                // x or false, x and true
+                continue;
+            }
+            if (!result.contains(term)) {
+                result.add(term);
+            }
+        }
+        removeDominatedBounds(result, isOr);
+        if (result.isEmpty()) {
+            return new BooleanConstant(!isOr);
+        }
+        if (result.size() == terms.size()) {
+            return function;
+        }
+        Expression combined = result.get(0);
+        for (int i = 1; i < result.size(); i++) {
+            combined = isOr ? new Or(combined, result.get(i)) : new And(combined, result.get(i));
+        }
+        return combined;
+    }
+
+    private static void flatten(Expression expression, Class<?> type, List<Expression> terms) {
+        if (expression.getClass() == type) {
+            for (Expression parameter : ((Function) expression).getParameters()) {
+                flatten(parameter, type, terms);
+            }
+        } else {
+            terms.add(expression);
+        }
+    }
+
+    /**
+     * Remove the bounds that are implied by, or imply, another bound on the
+     * same Path. Only bounds of the form (Path op Constant) are considered.
+     * The comparisons are monotone in the constant for all types, also for
+     * time intervals, so this holds regardless of the type of the Path.
+     *
+     * @param terms The terms of the And or Or.
+     * @param isOr true for an Or, false for an And.
+     */
+    private static void removeDominatedBounds(List<Expression> terms, boolean isOr) {
+        for (int i = terms.size() - 1; i >= 0; i--) {
+            Bound bound = Bound.of(terms.get(i));
+            if (bound == null) {
+                continue;
+            }
+            for (int j = 0; j < terms.size(); j++) {
+                if (i == j) {
+                    continue;
+                }
+                Bound other = Bound.of(terms.get(j));
+                if (other != null && bound.isDominatedBy(other, isOr)) {
+                    terms.remove(i);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * A comparison of a Path with a numeric or date-time constant.
+     */
+    private static class Bound {
+
+        private final Path path;
+        private final boolean lower;
+        private final boolean strict;
+        private final Constant<?> value;
+
+        private Bound(Path path, boolean lower, boolean strict, Constant<?> value) {
+            this.path = path;
+            this.lower = lower;
+            this.strict = strict;
+            this.value = value;
+        }
+
+        private static Bound of(Expression expression) {
+            boolean lower;
+            boolean strict;
+            if (expression instanceof GreaterThan) {
+                lower = true;
+                strict = true;
+            } else if (expression instanceof GreaterEqual) {
+                lower = true;
+                strict = false;
+            } else if (expression instanceof LessThan) {
+                lower = false;
+                strict = true;
+            } else if (expression instanceof LessEqual) {
+                lower = false;
+                strict = false;
+            } else {
+                return null;
+            }
+            List<Expression> parameters = ((Function) expression).getParameters();
+            Expression left = parameters.get(0);
+            Expression right = parameters.get(1);
+            if (!(left instanceof Path)) {
+                return null;
+            }
+            if (right instanceof NumericConstant || right instanceof DateTimeConstant) {
+                return new Bound((Path) left, lower, strict, (Constant<?>) right);
+            }
+            return null;
+        }
+
+        /**
+         * Compare the values of two bounds.
+         *
+         * @return negative, 0 or positive, or null if the values can not be
+         * compared.
+         */
+        private Integer compareValue(Bound other) {
+            if (value instanceof NumericConstant && other.value instanceof NumericConstant) {
+                double v1 = ((NumericConstant<?>) value).getValue().doubleValue();
+                double v2 = ((NumericConstant<?>) other.value).getValue().doubleValue();
+                return Double.compare(v1, v2);
+            }
+            if (value instanceof DateTimeConstant && other.value instanceof DateTimeConstant) {
+                return ((DateTimeConstant) value).getValue().compareTo(((DateTimeConstant) other.value).getValue());
+            }
+            return null;
+        }
+
+        /**
+         * Check if this bound can be removed because of the other bound.
+         *
+         * @param other The other bound.
+         * @param isOr true if both are in an Or, false for an And.
+         * @return true if this bound can be removed.
+         */
+        private boolean isDominatedBy(Bound other, boolean isOr) {
+            if (lower != other.lower || !path.equals(other.path)) {
+                return false;
+            }
+            Integer compare = compareValue(other);
+            if (compare == null) {
+                return false;
+            }
+            if (compare == 0) {
+                // In an And the strict bound wins, in an Or the non-strict.
+                return strict != other.strict && strict == isOr;
+            }
+            // In an And the tightest bound wins, in an Or the loosest.
+            boolean tighter = lower ? compare > 0 : compare < 0;
+            return tighter == isOr;
+        }
+    }
+
+}
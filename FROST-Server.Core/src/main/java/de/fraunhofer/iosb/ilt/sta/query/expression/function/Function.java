@@ -141,10 +141,12 @@ public abstract class Function implements Expression {
             // getDeclaredMethod not working with inheritance, must find suited method myself
             Method method = findMethod(parameters);
             if (method != null) {
+                // Most eval methods are protected.
+                method.setAccessible(true);
                 return (Expression) method.invoke(this, parameters.toArray());
             }
         } catch (SecurityException | IllegalAccessException | IllegalArgumentException | InvocationTargetException ex) {
-            LOGGER.info("Could not eval.", ex);
+            LOGGER.debug("Could not eval.", ex);
         }
         return this;
     }
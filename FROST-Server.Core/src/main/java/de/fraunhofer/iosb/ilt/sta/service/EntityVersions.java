@@ -0,0 +1,544 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import de.fraunhofer.iosb.ilt.sta.messagebus.EntityChangedMessage;
+import de.fraunhofer.iosb.ilt.sta.messagebus.MessageBusFactory;
+import de.fraunhofer.iosb.ilt.sta.messagebus.MessageListener;
+import de.fraunhofer.iosb.ilt.sta.model.Datastream;
+import de.fraunhofer.iosb.ilt.sta.model.MultiDatastream;
+import de.fraunhofer.iosb.ilt.sta.model.Observation;
+import de.fraunhofer.iosb.ilt.sta.model.core.Entity;
+import de.fraunhofer.iosb.ilt.sta.model.core.Id;
+import de.fraunhofer.iosb.ilt.sta.path.EntityPathElement;
+import de.fraunhofer.iosb.ilt.sta.path.EntitySetPathElement;
+import de.fraunhofer.iosb.ilt.sta.path.EntityType;
+import de.fraunhofer.iosb.ilt.sta.path.NavigationProperty;
+import de.fraunhofer.iosb.ilt.sta.path.Property;
+import de.fraunhofer.iosb.ilt.sta.path.ResourcePath;
+import de.fraunhofer.iosb.ilt.sta.path.ResourcePathElement;
+import de.fraunhofer.iosb.ilt.sta.query.Expand;
+import de.fraunhofer.iosb.ilt.sta.query.OrderBy;
+import de.fraunhofer.iosb.ilt.sta.query.Query;
+import de.fraunhofer.iosb.ilt.sta.query.expression.Expression;
+import de.fraunhofer.iosb.ilt.sta.query.expression.Path;
+import de.fraunhofer.iosb.ilt.sta.query.expression.function.Function;
+import de.fraunhofer.iosb.ilt.sta.settings.ConfigDefaults;
+import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
+import de.fraunhofer.iosb.ilt.sta.settings.Settings;
+import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueBoolean;
+import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueInt;
+import de.fraunhofer.iosb.ilt.sta.util.QueueOverflowHandler;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track of the versions of entity types and entities, based on the
+ * messages on the message bus, so conditional GET requests can be answered
+ * without accessing the database.
+ *
+ * All changes get a number from a single, increasing sequence. The version of
+ * an entity type or entity is the number of the last change to it, and the
+ * version of a request is the highest version of everything the response
+ * depends on. Only the versions of the most recently changed entities are
+ * kept. Entities that are not tracked get the highest version of all
+ * forgotten entities, so their version never goes back.
+ *
+ * Since a lost message means a missed change, all versions are raised to a new
+ * version after a configured maximum age, limiting the time a client can get a
+ * wrong 304 Not Modified.
+ *
+ * @author scf
+ */
+public class EntityVersions implements MessageListener, ConfigDefaults {
+
+    @DefaultValueBoolean(false)
+    public static final String TAG_ENABLE = "etag.enable";
+    @DefaultValueInt(100000)
+    public static final String TAG_MAX_ENTITIES = "etag.maxEntities";
+    @DefaultValueInt(300)
+    public static final String TAG_MAX_AGE = "etag.maxAge";
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntityVersions.class);
+    /**
+     * The maximum age, in seconds, of versions when the message bus drops
+     * messages on overflow, since each dropped message may be a missed change.
+     */
+    private static final int DROP_MAX_AGE = 10;
+
+    private static EntityVersions instance;
+
+    /**
+     * A version, with the time of the change that caused it.
+     */
+    public static class Version {
+
+        private final long sequence;
+        private final long time;
+
+        public Version(long sequence, long time) {
+            this.sequence = sequence;
+            this.time = time;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return The time of the change, in milliseconds since the epoch.
+         */
+        public long getTime() {
+            return time;
+        }
+
+        private Version max(Version other) {
+            if (other.sequence > sequence) {
+                return other;
+            }
+            return this;
+        }
+    }
+
+    private final long startTime;
+    private final String startId;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<EntityType, Version> typeVersions = new EnumMap<>(EntityType.class);
+    private final Cache<EntityKey, Version> entityVersions;
+    private volatile Version forgotten;
+    /**
+     * The lowest version any request can have, raised when versions expire.
+     */
+    private volatile Version floor;
+    private final long maxAgeMillis;
+    private volatile long expiresAt;
+
+    /**
+     * Creates a new EntityVersions, of which versions do not expire.
+     *
+     * @param maxEntities The number of entities to keep individual versions
+     * for.
+     */
+    public EntityVersions(int maxEntities) {
+        this(maxEntities, 0);
+    }
+
+    /**
+     * Creates a new EntityVersions.
+     *
+     * @param maxEntities The number of entities to keep individual versions
+     * for.
+     * @param maxAge The maximum time, in seconds, a version stays valid, as a
+     * safeguard against lost messages. 0 for no limit.
+     */
+    public EntityVersions(int maxEntities, int maxAge) {
+        startTime = System.currentTimeMillis();
+        maxAgeMillis = maxAge * 1000L;
+        expiresAt = startTime + maxAgeMillis;
+        startId = Long.toString(startTime, 36);
+        forgotten = new Version(0, startTime);
+        floor = forgotten;
+        for (EntityType type : EntityType.values()) {
+            typeVersions.put(type, forgotten);
+        }
+        entityVersions = CacheBuilder.newBuilder()
+                .maximumSize(maxEntities)
+                .<EntityKey, Version>removalListener(n -> {
+                    if (n.wasEvicted()) {
+                        forget(n.getValue());
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Start tracking versions, if enabled in the given settings. The message
+     * bus must be initialised.
+     *
+     * @param settings The settings to read the configuration from.
+     */
+    public static synchronized void init(CoreSettings settings) {
+        if (instance != null) {
+            return;
+        }
+        Settings httpSettings = settings.getHttpSettings();
+        if (!httpSettings.getBoolean(TAG_ENABLE, EntityVersions.class)) {
+            return;
+        }
+        int maxAge = httpSettings.getInt(TAG_MAX_AGE, EntityVersions.class);
+        if (MessageBusFactory.getOverflowPolicy(settings) == QueueOverflowHandler.Policy.DROP
+                && (maxAge <= 0 || maxAge > DROP_MAX_AGE)) {
+            LOGGER.warn("The message bus drops messages when its queue is full, limiting the age of entity versions to {} seconds.", DROP_MAX_AGE);
+            maxAge = DROP_MAX_AGE;
+        }
+        instance = new EntityVersions(httpSettings.getInt(TAG_MAX_ENTITIES, EntityVersions.class), maxAge);
+        MessageBusFactory.getMessageBus().addMessageListener(instance);
+        LOGGER.info("Tracking entity versions for conditional requests.");
+    }
+
+    /**
+     * @return The instance, or null if versions are not tracked.
+     */
+    public static synchronized EntityVersions getInstance() {
+        return instance;
+    }
+
+    @Override
+    public void messageReceived(EntityChangedMessage message) {
+        EntityType type = message.getEntityType();
+        if (type == null) {
+            return;
+        }
+        bump(type, idOf(message.getEntity()));
+        for (EntityChangedMessage sideEffect : getSideEffects(message)) {
+            bump(sideEffect.getEntityType(), idOf(sideEffect.getEntity()));
+        }
+    }
+
+    private static Object idOf(Entity entity) {
+        Id id = entity == null ? null : entity.getId();
+        return id == null ? null : id.getValue();
+    }
+
+    /**
+     * Get the changes the database makes as a side effect of the given
+     * change. Creating, updating or deleting an Observation makes the
+     * database triggers update the phenomenonTime, resultTime and
+     * observedArea of its Datastream or MultiDatastream, without a message
+     * for that change.
+     *
+     * @param message The message to get the side effects of.
+     * @return UPDATE messages for the entities changed as a side effect. If
+     * the parent of an Observation is not known, the messages have entities
+     * without an id.
+     */
+    static List<EntityChangedMessage> getSideEffects(EntityChangedMessage message) {
+        if (message.getEntityType() != EntityType.OBSERVATION) {
+            return Collections.emptyList();
+        }
+        List<Entity> parents = new ArrayList<>();
+        Entity entity = message.getEntity();
+        if (entity instanceof Observation) {
+            Observation observation = (Observation) entity;
+            if (observation.getDatastream() != null) {
+                parents.add(observation.getDatastream());
+            }
+            if (observation.getMultiDatastream() != null) {
+                parents.add(observation.getMultiDatastream());
+            }
+        }
+        if (parents.isEmpty()) {
+            parents.add(new Datastream());
+            parents.add(new MultiDatastream());
+        }
+        List<EntityChangedMessage> result = new ArrayList<>();
+        for (Entity parent : parents) {
+            result.add(new EntityChangedMessage()
+                    .setEventType(EntityChangedMessage.Type.UPDATE)
+                    .setEntity(parent));
+        }
+        return result;
+    }
+
+    /**
+     * Register a change to the given entity type, and the entity with the
+     * given id.
+     *
+     * @param type The type of the entity that changed.
+     * @param id The id value of the entity that changed, or null if not known.
+     */
+    public void bump(EntityType type, Object id) {
+        Version version = new Version(sequence.incrementAndGet(), System.currentTimeMillis());
+        synchronized (typeVersions) {
+            typeVersions.put(type, typeVersions.get(type).max(version));
+        }
+        if (id != null) {
+            entityVersions.asMap().merge(new EntityKey(type, id), version, Version::max);
+        }
+    }
+
+    private void forget(Version version) {
+        synchronized (typeVersions) {
+            forgotten = forgotten.max(version);
+        }
+    }
+
+    /**
+     * Get the version of the response to the given request.
+     *
+     * @param path The path of the request.
+     * @param query The query of the request.
+     * @return The version of the response.
+     */
+    public Version getVersion(ResourcePath path, Query query) {
+        if (maxAgeMillis > 0 && System.currentTimeMillis() >= expiresAt) {
+            expire();
+        }
+        Set<EntityType> types = EnumSet.noneOf(EntityType.class);
+        if (query != null) {
+            addTypes(query, types);
+        }
+        EntityPathElement single = getSingleEntity(path);
+        Version result;
+        if (single == null) {
+            addTypes(path, 0, types);
+            result = new Version(0, startTime);
+        } else {
+            result = getVersion(single.getEntityType(), single.getId().getValue());
+        }
+        synchronized (typeVersions) {
+            for (EntityType type : types) {
+                result = result.max(typeVersions.get(type));
+            }
+        }
+        return result.max(floor);
+    }
+
+    /**
+     * Raise the versions of all requests to a new version, so clients can not
+     * keep using a response that missed a change.
+     */
+    void expire() {
+        synchronized (typeVersions) {
+            long now = System.currentTimeMillis();
+            if (maxAgeMillis > 0 && now < expiresAt) {
+                // Another thread was first.
+                return;
+            }
+            floor = new Version(sequence.incrementAndGet(), now);
+            expiresAt = now + maxAgeMillis;
+        }
+    }
+
+    private Version getVersion(EntityType type, Object id) {
+        Version version = entityVersions.getIfPresent(new EntityKey(type, id));
+        if (version == null) {
+            return forgotten;
+        }
+        return version;
+    }
+
+    /**
+     * Create the ETag for the given version.
+     *
+     * @param version The version to create the ETag for.
+     * @return The ETag.
+     */
+    public String toETag(Version version) {
+        return "W/\"" + startId + "-" + Long.toString(version.getSequence(), 36) + "\"";
+    }
+
+    /**
+     * Format the time of the given version as a Last-Modified header value.
+     *
+     * @param version The version to get the time of.
+     * @return The Last-Modified header value.
+     */
+    public static String toLastModified(Version version) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(Instant.ofEpochMilli(version.getTime()).atOffset(ZoneOffset.UTC));
+    }
+
+    /**
+     * Checks if the second of the given version is over. Only then its
+     * Last-Modified value is safe to use: a later change in the same second
+     * would get the same Last-Modified value.
+     *
+     * @param version The version to check.
+     * @return true if a Last-Modified header can be sent for the version.
+     */
+    public static boolean hasStableTime(Version version) {
+        return version.getTime() / 1000 < System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * Checks if the given If-Modified-Since header value is not before the
+     * given Last-Modified value.
+     *
+     * @param ifModifiedSince The value of the If-Modified-Since header, may be
+     * null.
+     * @param lastModified The Last-Modified value of the current version.
+     * @return true if the client has the current version.
+     */
+    public static boolean notModifiedSince(String ifModifiedSince, String lastModified) {
+        if (ifModifiedSince == null || lastModified == null) {
+            return false;
+        }
+        try {
+            Instant since = Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(ifModifiedSince.trim()));
+            Instant modified = Instant.from(DateTimeFormatter.RFC_1123_DATE_TIME.parse(lastModified));
+            return !modified.isAfter(since);
+        } catch (DateTimeParseException ex) {
+            LOGGER.trace("Invalid If-Modified-Since header: {}", ifModifiedSince, ex);
+            return false;
+        }
+    }
+
+    /**
+     * Checks if the given If-None-Match header value matches the given ETag.
+     *
+     * @param ifNoneMatch The value of the If-None-Match header, may be null.
+     * @param etag The ETag of the current version.
+     * @return true if the client has the current version.
+     */
+    public static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        String opaque = stripWeak(etag);
+        for (String tag : ifNoneMatch.split(",")) {
+            String trimmed = tag.trim();
+            if ("*".equals(trimmed) || opaque.equals(stripWeak(trimmed))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String tag) {
+        if (tag.startsWith("W/")) {
+            return tag.substring(2);
+        }
+        return tag;
+    }
+
+    /**
+     * Returns the entity the path points to, if the response only depends on
+     * that one entity.
+     */
+    private static EntityPathElement getSingleEntity(ResourcePath path) {
+        if (path.isRef()) {
+            return null;
+        }
+        EntityPathElement found = null;
+        for (int i = 0; i < path.size(); i++) {
+            ResourcePathElement element = path.get(i);
+            if (element instanceof EntitySetPathElement) {
+                // The set of an entity with an id is fine, other sets are not.
+                if (i + 1 >= path.size() || !(path.get(i + 1) instanceof EntityPathElement)) {
+                    return null;
+                }
+            } else if (element instanceof EntityPathElement) {
+                if (found != null) {
+                    return null;
+                }
+                found = (EntityPathElement) element;
+            }
+        }
+        if (found == null || found.getId() == null) {
+            return null;
+        }
+        return found;
+    }
+
+    /**
+     * Add the types of the entities and sets in the path, starting at the
+     * given index, to the given set.
+     */
+    static void addTypes(ResourcePath path, int start, Set<EntityType> types) {
+        for (int i = start; i < path.size(); i++) {
+            ResourcePathElement element = path.get(i);
+            if (element instanceof EntitySetPathElement) {
+                types.add(((EntitySetPathElement) element).getEntityType());
+            } else if (element instanceof EntityPathElement) {
+                types.add(((EntityPathElement) element).getEntityType());
+            }
+        }
+    }
+
+    /**
+     * Add the types of the entities used in the filter, orderby and expand of
+     * the query to the given set.
+     */
+    static void addTypes(Query query, Set<EntityType> types) {
+        addTypes(query.getFilter(), types);
+        for (OrderBy orderBy : query.getOrderBy()) {
+            addTypes(orderBy.getExpression(), types);
+        }
+        for (Expand expand : query.getExpand()) {
+            for (NavigationProperty np : expand.getPath()) {
+                types.add(np.type);
+            }
+            if (expand.getSubQuery() != null) {
+                addTypes(expand.getSubQuery(), types);
+            }
+        }
+    }
+
+    private static void addTypes(Expression expression, Set<EntityType> types) {
+        if (expression instanceof Path) {
+            for (Property property : ((Path) expression).getElements()) {
+                if (property instanceof NavigationProperty) {
+                    types.add(((NavigationProperty) property).type);
+                }
+            }
+        } else if (expression instanceof Function) {
+            for (Expression parameter : ((Function) expression).getParameters()) {
+                addTypes(parameter, types);
+            }
+        }
+    }
+
+    /**
+     * The key of an entity. The id is kept as a String, since messages from
+     * other instances may have been deserialised to a different number type.
+     */
+    static class EntityKey {
+
+        private final EntityType type;
+        private final String id;
+
+        public EntityKey(EntityType type, Object id) {
+            this.type = type;
+            this.id = id.toString();
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + id.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof EntityKey)) {
+                return false;
+            }
+            EntityKey other = (EntityKey) obj;
+            return type == other.type && id.equals(other.id);
+        }
+    }
+}
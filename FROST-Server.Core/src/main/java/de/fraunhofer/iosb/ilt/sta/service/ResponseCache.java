@@ -0,0 +1,478 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import de.fraunhofer.iosb.ilt.sta.messagebus.EntityChangedMessage;
+import de.fraunhofer.iosb.ilt.sta.messagebus.MessageBusFactory;
+import de.fraunhofer.iosb.ilt.sta.messagebus.MessageListener;
+import de.fraunhofer.iosb.ilt.sta.model.core.Entity;
+import de.fraunhofer.iosb.ilt.sta.model.core.Id;
+import de.fraunhofer.iosb.ilt.sta.path.EntityPathElement;
+import de.fraunhofer.iosb.ilt.sta.path.EntityType;
+import de.fraunhofer.iosb.ilt.sta.path.NavigationProperty;
+import de.fraunhofer.iosb.ilt.sta.path.ResourcePath;
+import de.fraunhofer.iosb.ilt.sta.path.ResourcePathElement;
+import de.fraunhofer.iosb.ilt.sta.query.Query;
+import de.fraunhofer.iosb.ilt.sta.settings.ConfigDefaults;
+import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
+import de.fraunhofer.iosb.ilt.sta.settings.Settings;
+import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueBoolean;
+import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueInt;
+import de.fraunhofer.iosb.ilt.sta.util.QueueOverflowHandler;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the formatted responses of GET requests. Entries are removed when a
+ * message on the message bus indicates that an entity they depend on changed,
+ * so the cache stays valid over all instances that share the message bus.
+ *
+ * Each entry knows the entity types it depends on. If the path of the request
+ * starts at a specific entity, like /Datastreams(5)/Observations, the entry is
+ * only removed for changes to that entity, or to entities of those types that
+ * are (or may be) related to that entity. A new Observation of Datastream 6
+ * does not remove the entry in the example. Since the database updates the
+ * Datastream of an Observation, changes to Observations are also treated as
+ * changes to their Datastream or MultiDatastream.
+ *
+ * To keep the handling of messages independent of the size of the cache, only
+ * entries that start at the changed entity, or at a known related entity, are
+ * removed directly. Other entries are checked against per-type change counters
+ * when they are requested.
+ *
+ * @author scf
+ */
+public class ResponseCache implements MessageListener, ConfigDefaults {
+
+    @DefaultValueBoolean(false)
+    public static final String TAG_ENABLE = "cache.enable";
+    @DefaultValueInt(64)
+    public static final String TAG_MAX_SIZE = "cache.maxSize";
+    @DefaultValueInt(300)
+    public static final String TAG_MAX_AGE = "cache.maxAge";
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResponseCache.class);
+    /**
+     * The maximum age, in seconds, of cached responses when the message bus
+     * drops messages on overflow, since each dropped message may be a missed
+     * invalidation.
+     */
+    private static final int DROP_MAX_AGE = 10;
+
+    private static ResponseCache instance;
+
+    /**
+     * The information needed to store a response, collected before the
+     * request is executed.
+     */
+    public static class Ticket {
+
+        private final String key;
+        private final Set<EntityType> types;
+        private final EntityVersions.EntityKey anchor;
+        /**
+         * The change counts of all types the response depends on, to check if
+         * anything changed while the request was executed.
+         */
+        private final Map<EntityType, Long> counts = new EnumMap<>(EntityType.class);
+        /**
+         * The counters that invalidate the response when they change, with
+         * their values when the ticket was created.
+         */
+        private final Map<AtomicLong, Long> validity = new HashMap<>();
+
+        private Ticket(String key, Set<EntityType> types, EntityVersions.EntityKey anchor) {
+            this.key = key;
+            this.types = types;
+            this.anchor = anchor;
+        }
+
+        private void addValidity(AtomicLong counter) {
+            validity.put(counter, counter.get());
+        }
+
+        /**
+         * Checks if a change was seen that invalidates the response, without
+         * removing it from the cache.
+         */
+        private boolean isStale() {
+            for (Map.Entry<AtomicLong, Long> entry : validity.entrySet()) {
+                if (entry.getKey().get() != entry.getValue()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static class CacheEntry {
+
+        private final Ticket ticket;
+        private final String resultFormatted;
+        private final Map<String, String> headers;
+        private final Map<String, byte[]> encodedResults = new ConcurrentHashMap<>();
+
+        public CacheEntry(Ticket ticket, String resultFormatted, Map<String, String> headers) {
+            this.ticket = ticket;
+            this.resultFormatted = resultFormatted;
+            this.headers = headers;
+        }
+    }
+
+    private final Cache<String, CacheEntry> entries;
+    /**
+     * The keys of the entries that start at a specific entity, by that entity.
+     * Changes to that entity, or to related entities, remove these entries
+     * directly.
+     */
+    private final Map<EntityVersions.EntityKey, Set<String>> keysByAnchor = new ConcurrentHashMap<>();
+    /**
+     * The number of changes seen, per entity type. Entries that do not start
+     * at a specific entity are stale when one of the counts of their types
+     * changed.
+     */
+    private final Map<EntityType, AtomicLong> changeCounts = new EnumMap<>(EntityType.class);
+    /**
+     * The number of changes seen of which it is not known to which entity of
+     * a related type they are related, by the related type and the changed
+     * type. Entries that start at an entity of the related type, and depend
+     * on the changed type, are stale when this count changed.
+     */
+    private final Map<EntityType, Map<EntityType, AtomicLong>> unknownRelationCounts = new EnumMap<>(EntityType.class);
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize The maximum size of the cached responses, in megabytes.
+     * @param maxAge The maximum time, in seconds, a response is kept, as a
+     * safeguard against lost messages. 0 for no limit.
+     */
+    public ResponseCache(int maxSize, int maxAge) {
+        for (EntityType type : EntityType.values()) {
+            changeCounts.put(type, new AtomicLong());
+            Map<EntityType, AtomicLong> counts = new EnumMap<>(EntityType.class);
+            for (EntityType changedType : EntityType.values()) {
+                counts.put(changedType, new AtomicLong());
+            }
+            unknownRelationCounts.put(type, counts);
+        }
+        CacheBuilder<String, CacheEntry> builder = CacheBuilder.newBuilder()
+                .maximumWeight(maxSize * 1024L * 1024L)
+                .weigher((String key, CacheEntry entry) -> (int) Math.min(Integer.MAX_VALUE, 2L * (key.length() + entry.resultFormatted.length())))
+                .removalListener((RemovalNotification<String, CacheEntry> n) -> unindex(n.getKey(), n.getValue()));
+        if (maxAge > 0) {
+            builder.expireAfterWrite(maxAge, TimeUnit.SECONDS);
+        }
+        entries = builder.build();
+    }
+
+    /**
+     * Start caching, if enabled in the given settings. The message bus must be
+     * initialised.
+     *
+     * @param settings The settings to read the configuration from.
+     */
+    public static synchronized void init(CoreSettings settings) {
+        if (instance != null) {
+            return;
+        }
+        Settings httpSettings = settings.getHttpSettings();
+        if (!httpSettings.getBoolean(TAG_ENABLE, ResponseCache.class)) {
+            return;
+        }
+        int maxAge = httpSettings.getInt(TAG_MAX_AGE, ResponseCache.class);
+        if (MessageBusFactory.getOverflowPolicy(settings) == QueueOverflowHandler.Policy.DROP
+                && (maxAge <= 0 || maxAge > DROP_MAX_AGE)) {
+            LOGGER.warn("The message bus drops messages when its queue is full, limiting the age of cached responses to {} seconds.", DROP_MAX_AGE);
+            maxAge = DROP_MAX_AGE;
+        }
+        instance = new ResponseCache(
+                httpSettings.getInt(TAG_MAX_SIZE, ResponseCache.class),
+                maxAge);
+        MessageBusFactory.getMessageBus().addMessageListener(instance);
+        LOGGER.info("Caching responses of GET requests.");
+    }
+
+    /**
+     * @return The instance, or null if responses are not cached.
+     */
+    public static synchronized ResponseCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Create the cache key for the given request. The parameters of the query
+     * are sorted, since their order does not matter.
+     *
+     * @param request The request to create the key for.
+     * @return The key.
+     */
+    public static String keyOf(ServiceRequest request) {
+        String urlQuery = request.getUrlQuery();
+        if (urlQuery == null || urlQuery.isEmpty()) {
+            return request.getUrlPath();
+        }
+        String[] params = urlQuery.split("&");
+        Arrays.sort(params);
+        return request.getUrlPath() + "?" + String.join("&", params);
+    }
+
+    /**
+     * Get the cached response for the given request.
+     *
+     * @param <T> The type of the response.
+     * @param request The request to find the response for.
+     * @return The cached response, or null if there is none.
+     */
+    public <T> ServiceResponse<T> get(ServiceRequest request) {
+        String key = keyOf(request);
+        CacheEntry entry = entries.getIfPresent(key);
+        if (entry != null && entry.ticket.isStale()) {
+            entries.asMap().remove(key, entry);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        ServiceResponse<T> response = new ServiceResponse<>(200, null, null, entry.resultFormatted);
+        response.getHeaders().putAll(entry.headers);
+        response.setEncodedResults(entry.encodedResults);
+        return response;
+    }
+
+    /**
+     * Collect the dependencies of the given request, before it is executed.
+     *
+     * @param request The request.
+     * @param path The parsed path of the request.
+     * @param query The parsed query of the request.
+     * @return The ticket to pass to {@link #put(Ticket, ServiceResponse)}.
+     */
+    public Ticket prepare(ServiceRequest request, ResourcePath path, Query query) {
+        int anchorIndex = -1;
+        for (int i = 0; i < path.size(); i++) {
+            ResourcePathElement element = path.get(i);
+            if (element instanceof EntityPathElement && ((EntityPathElement) element).getId() != null) {
+                anchorIndex = i;
+                break;
+            }
+        }
+        Set<EntityType> types = EnumSet.noneOf(EntityType.class);
+        EntityVersions.addTypes(query, types);
+        Ticket ticket;
+        if (anchorIndex < 0) {
+            EntityVersions.addTypes(path, 0, types);
+            ticket = new Ticket(keyOf(request), types, null);
+            for (EntityType type : types) {
+                ticket.addValidity(changeCounts.get(type));
+            }
+        } else {
+            EntityVersions.addTypes(path, anchorIndex + 1, types);
+            EntityPathElement anchor = (EntityPathElement) path.get(anchorIndex);
+            EntityType anchorType = anchor.getEntityType();
+            ticket = new Ticket(keyOf(request), types, new EntityVersions.EntityKey(anchorType, anchor.getId().getValue()));
+            ticket.counts.put(anchorType, changeCounts.get(anchorType).get());
+            Map<EntityType, AtomicLong> unknown = unknownRelationCounts.get(anchorType);
+            ticket.addValidity(unknown.get(anchorType));
+            for (EntityType type : types) {
+                if (hasRelationTo(type, anchorType)) {
+                    ticket.addValidity(unknown.get(type));
+                } else {
+                    // No way to tell if a change is related to the anchor.
+                    ticket.addValidity(changeCounts.get(type));
+                }
+            }
+        }
+        for (EntityType type : types) {
+            ticket.counts.put(type, changeCounts.get(type).get());
+        }
+        return ticket;
+    }
+
+    private static boolean hasRelationTo(EntityType type, EntityType relatedType) {
+        for (NavigationProperty np : type.getNavigationEntities()) {
+            if (np.type == relatedType) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Store the given response. The response is not stored if a change to
+     * any of its dependencies was seen since the ticket was created, since
+     * the response may have been created from data older than that change.
+     *
+     * @param ticket The ticket created before the request was executed.
+     * @param response The response to store.
+     */
+    public void put(Ticket ticket, ServiceResponse<?> response) {
+        if (isChanged(ticket)) {
+            LOGGER.trace("Not caching {}, changed while executing.", ticket.key);
+            return;
+        }
+        Map<String, String> headers = Collections.unmodifiableMap(new HashMap<>(response.getHeaders()));
+        CacheEntry entry = new CacheEntry(ticket, response.getResultFormatted(), headers);
+        entries.put(ticket.key, entry);
+        if (ticket.anchor != null) {
+            keysByAnchor.compute(ticket.anchor, (anchor, keys) -> {
+                Set<String> result = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+                result.add(ticket.key);
+                return result;
+            });
+        }
+        if (isChanged(ticket)) {
+            // A change may have been processed before the entry was indexed.
+            entries.invalidate(ticket.key);
+            return;
+        }
+        response.setEncodedResults(entry.encodedResults);
+    }
+
+    private boolean isChanged(Ticket ticket) {
+        for (Map.Entry<EntityType, Long> count : ticket.counts.entrySet()) {
+            if (changeCounts.get(count.getKey()).get() != count.getValue()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void unindex(String key, CacheEntry entry) {
+        if (entry.ticket.anchor == null || entries.getIfPresent(key) != null) {
+            // Not indexed, or replaced by a newer entry with the same anchor.
+            return;
+        }
+        keysByAnchor.computeIfPresent(entry.ticket.anchor, (anchor, keys) -> {
+            keys.remove(key);
+            return keys.isEmpty() ? null : keys;
+        });
+    }
+
+    @Override
+    public void messageReceived(EntityChangedMessage message) {
+        if (message.getEntityType() == null) {
+            return;
+        }
+        invalidate(message);
+        for (EntityChangedMessage sideEffect : EntityVersions.getSideEffects(message)) {
+            invalidate(sideEffect);
+        }
+    }
+
+    /**
+     * Register the given change. Entries that start at the changed entity, or
+     * at a known related entity, are removed directly. All other affected
+     * entries become stale by the change of one of the counters, and are
+     * removed when they are requested, so the work done here does not depend
+     * on the size of the cache.
+     */
+    private void invalidate(EntityChangedMessage message) {
+        EntityType type = message.getEntityType();
+        changeCounts.get(type).incrementAndGet();
+        Entity entity = message.getEntity();
+        Id id = entity == null ? null : entity.getId();
+        if (id == null) {
+            unknownRelationCounts.get(type).get(type).incrementAndGet();
+        } else {
+            invalidateAnchor(new EntityVersions.EntityKey(type, id.getValue()), null);
+        }
+        Set<NavigationProperty> changedNps = message.getNpFields();
+        boolean update = message.getEventType() == EntityChangedMessage.Type.UPDATE;
+        for (NavigationProperty np : type.getNavigationEntities()) {
+            Object related = entity == null ? null : entity.getProperty(np);
+            Id relatedId = related instanceof Entity ? ((Entity) related).getId() : null;
+            if (relatedId == null || (update && changedNps != null && changedNps.contains(np))) {
+                // Not known, or the entity may have been moved away from the
+                // entity it was related to before.
+                unknownRelationCounts.get(np.type).get(type).incrementAndGet();
+            } else {
+                invalidateAnchor(new EntityVersions.EntityKey(np.type, relatedId.getValue()), type);
+            }
+        }
+    }
+
+    /**
+     * Remove the entries that start at the given entity, and depend on the
+     * given type.
+     *
+     * @param anchor The entity the entries start at.
+     * @param changedType The type the entries must depend on, or null to
+     * remove all entries of the anchor.
+     */
+    private void invalidateAnchor(EntityVersions.EntityKey anchor, EntityType changedType) {
+        Set<String> keys = keysByAnchor.get(anchor);
+        if (keys == null) {
+            return;
+        }
+        for (String key : keys) {
+            CacheEntry entry = entries.getIfPresent(key);
+            if (entry != null && (changedType == null || entry.ticket.types.contains(changedType))) {
+                entries.invalidate(key);
+            }
+        }
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void clear() {
+        entries.invalidateAll();
+    }
+
+    /**
+     * @return The number of requests answered from the cache.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of requests not found in the cache.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return The (approximate) number of cached responses.
+     */
+    public long size() {
+        return entries.size();
+    }
+}
@@ -22,6 +22,9 @@ import com.fasterxml.jackson.databind.JsonMappingException;
 import com.github.fge.jsonpatch.JsonPatch;
 import de.fraunhofer.iosb.ilt.sta.formatter.DataArrayValue;
 import de.fraunhofer.iosb.ilt.sta.json.deserialize.EntityParser;
+import de.fraunhofer.iosb.ilt.sta.metrics.Histogram;
+import de.fraunhofer.iosb.ilt.sta.metrics.Metrics;
+import de.fraunhofer.iosb.ilt.sta.metrics.Timer;
 import de.fraunhofer.iosb.ilt.sta.model.Datastream;
 import de.fraunhofer.iosb.ilt.sta.model.MultiDatastream;
 import de.fraunhofer.iosb.ilt.sta.model.Observation;
@@ -49,6 +52,7 @@ import java.net.URI;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -80,6 +84,17 @@ public class Service {
     private static final String NOT_A_VALID_ID = "Not a valid id";
     private static final String POST_ONLY_ALLOWED_TO_COLLECTIONS = "POST only allowed to Collections.";
     private static final String COULD_NOT_PARSE_JSON = "Could not parse json.";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final Map<RequestType, Timer> REQUEST_TIMERS = new EnumMap<>(RequestType.class);
+    private static final Timer FORMAT_TIMER = Metrics.timer("frost_format_seconds", "Time spent serialising results.");
+    private static final Histogram RESULT_SIZE = Metrics.histogram("frost_result_size_characters", "Size of the serialised results, in characters.", Histogram.SIZE_BUCKETS);
+
+    static {
+        for (RequestType type : RequestType.values()) {
+            REQUEST_TIMERS.put(type, Metrics.timer("frost_request_seconds", "Time spent executing requests, by request type.", "type", type.name()));
+        }
+    }
 
     private final CoreSettings settings;
     private PersistenceManager persistenceManager;
@@ -91,6 +106,15 @@ public class Service {
     }
 
     public <T> ServiceResponse<T> execute(ServiceRequest request) {
+        long startTime = Metrics.start();
+        try {
+            return doExecute(request);
+        } finally {
+            REQUEST_TIMERS.get(request.getRequestType()).record(startTime);
+        }
+    }
+
+    private <T> ServiceResponse<T> doExecute(ServiceRequest request) {
         switch (request.getRequestType()) {
             case GET_CAPABILITIES:
                 return executeGetCapabilities(request);
@@ -178,6 +202,16 @@ public class Service {
         }
     }
 
+    private String formatResult(ServiceRequest request, ResourcePath path, Query query, Object result) {
+        long startTime = Metrics.start();
+        String formatted = request.getFormatter().format(path, query, result, settings.isUseAbsoluteNavigationLinks());
+        FORMAT_TIMER.record(startTime);
+        if (formatted != null) {
+            RESULT_SIZE.observe(formatted.length());
+        }
+        return formatted;
+    }
+
     private PersistenceManager getPm() {
         if (persistenceManager == null) {
             persistenceManager = PersistenceManagerFactory.getInstance().create();
@@ -196,7 +230,7 @@ public class Service {
             }
             response.setCode(200);
             response.setResult(result);
-            response.setResultFormatted(request.getFormatter().format(null, null, result, settings.isUseAbsoluteNavigationLinks()));
+            response.setResultFormatted(formatResult(request, null, null, result));
         } catch (MalformedURLException ex) {
             LOGGER.error("Failed to build url.", ex);
             return response.setStatus(500, ex.getMessage());
@@ -212,6 +246,19 @@ public class Service {
     }
 
     private <T> ServiceResponse<T> executeGet(ServiceRequest request) {
+        // Inside a transaction, the request must see the changes made in it.
+        ResponseCache cache = transactionActive ? null : ResponseCache.getInstance();
+        if (cache != null) {
+            ServiceResponse<T> cached = cache.get(request);
+            if (cached != null) {
+                Map<String, String> headers = cached.getHeaders();
+                if (isNotModified(request, headers.get(HEADER_ETAG), headers.get(HEADER_LAST_MODIFIED))) {
+                    cached.setResultFormatted(null);
+                    cached.setStatus(304, null);
+                }
+                return cached;
+            }
+        }
         ServiceResponse<T> response = new ServiceResponse<>();
         PersistenceManager pm = getPm();
         try {
@@ -250,6 +297,24 @@ public class Service {
 
         fixDataArrayRequests(query, path);
 
+        ResponseCache cache = transactionActive ? null : ResponseCache.getInstance();
+        ResponseCache.Ticket ticket = null;
+        if (cache != null) {
+            ticket = cache.prepare(request, path, query);
+        }
+
+        EntityVersions versions = EntityVersions.getInstance();
+        EntityVersions.Version version = null;
+        if (versions != null) {
+            version = versions.getVersion(path, query);
+            if (isNotModified(request, versions.toETag(version), lastModifiedOf(version))) {
+                addVersionHeaders(versions, version, response);
+                response.setStatus(304, null);
+                maybeCommitAndClose();
+                return response;
+            }
+        }
+
         if (!pm.validatePath(path)) {
             response.setStatus(404, "Nothing found.");
             maybeCommitAndClose();
@@ -282,13 +347,49 @@ public class Service {
             }
         } else {
             response.setResult(object);
-            response.setResultFormatted(request.getFormatter().format(path, query, object, settings.isUseAbsoluteNavigationLinks()));
+            response.setResultFormatted(formatResult(request, path, query, object));
             response.setCode(200);
+            if (version != null) {
+                addVersionHeaders(versions, version, response);
+            }
+            if (ticket != null) {
+                cache.put(ticket, response);
+            }
         }
         maybeCommitAndClose();
         return response;
     }
 
+    private static void addVersionHeaders(EntityVersions versions, EntityVersions.Version version, ServiceResponse<?> response) {
+        response.addHeader(HEADER_ETAG, versions.toETag(version));
+        String lastModified = lastModifiedOf(version);
+        if (lastModified != null) {
+            response.addHeader(HEADER_LAST_MODIFIED, lastModified);
+        }
+    }
+
+    /**
+     * Get the Last-Modified value of the given version, or null if a later
+     * change can still get the same value.
+     */
+    private static String lastModifiedOf(EntityVersions.Version version) {
+        if (EntityVersions.hasStableTime(version)) {
+            return EntityVersions.toLastModified(version);
+        }
+        return null;
+    }
+
+    /**
+     * Checks if the client has the current version of the response. If the
+     * request has an If-None-Match header, If-Modified-Since is ignored.
+     */
+    private static boolean isNotModified(ServiceRequest request, String etag, String lastModified) {
+        if (request.getIfNoneMatch() != null) {
+            return etag != null && EntityVersions.matches(request.getIfNoneMatch(), etag);
+        }
+        return EntityVersions.notModifiedSince(request.getIfModifiedSince(), lastModified);
+    }
+
     private void fixDataArrayRequests(Query query, ResourcePath path) {
         // If DataArray is requested, and $select is used, make sure Datastream is in the $select.
         if ("dataarray".equalsIgnoreCase(query.getFormat()) && !query.getSelect().isEmpty()) {
@@ -341,7 +442,7 @@ public class Service {
         EntityParser entityParser = new EntityParser(pm.getIdManager().getIdClass());
         Entity entity;
         try {
-            entity = entityParser.parseEntity(type.getImplementingClass(), request.getContent());
+            entity = entityParser.parseEntity(type.getImplementingClass(), request.getContentReader());
             entity.complete(mainSet);
         } catch (JsonParseException | JsonMappingException | IncompleteEntityException | IllegalStateException ex) {
             LOGGER.debug("Post failed: {}", ex.getMessage());
@@ -377,19 +478,11 @@ public class Service {
         PersistenceManager pm = getPm();
         try {
             EntityParser entityParser = new EntityParser(pm.getIdManager().getIdClass());
-            List<DataArrayValue> postData = entityParser.parseObservationDataArray(request.getContent());
             List<String> selfLinks = new ArrayList<>();
-            for (DataArrayValue daValue : postData) {
-                Datastream datastream = daValue.getDatastream();
-                MultiDatastream multiDatastream = daValue.getMultiDatastream();
-                List<ArrayValueHandlers.ArrayValueHandler> handlers = new ArrayList<>();
-                for (String component : daValue.getComponents()) {
-                    handlers.add(ArrayValueHandlers.getHandler(component));
-                }
-                handleDataArrayItems(handlers, daValue, datastream, multiDatastream, pm, selfLinks);
-            }
+            DataArrayRowInserter inserter = new DataArrayRowInserter(pm, selfLinks);
+            entityParser.parseObservationDataArray(request.getContentReader(), inserter::insert);
             maybeCommitAndClose();
-            response.setResultFormatted(request.getFormatter().format(null, null, selfLinks, settings.isUseAbsoluteNavigationLinks()));
+            response.setResultFormatted(formatResult(request, null, null, selfLinks));
             return response.setStatus(201, "Created");
         } catch (IllegalArgumentException | IOException e) {
             pm.rollbackAndClose();
@@ -397,9 +490,32 @@ public class Service {
         }
     }
 
-    private void handleDataArrayItems(List<ArrayValueHandlers.ArrayValueHandler> handlers, DataArrayValue daValue, Datastream datastream, MultiDatastream multiDatastream, PersistenceManager pm, List<String> selfLinks) {
-        int compCount = handlers.size();
-        for (List<Object> entry : daValue.getDataArray()) {
+    /**
+     * Inserts the rows of a dataArray request as they are parsed.
+     */
+    private class DataArrayRowInserter {
+
+        private final PersistenceManager pm;
+        private final List<String> selfLinks;
+        private DataArrayValue currentDaValue;
+        private List<ArrayValueHandlers.ArrayValueHandler> handlers;
+
+        public DataArrayRowInserter(PersistenceManager pm, List<String> selfLinks) {
+            this.pm = pm;
+            this.selfLinks = selfLinks;
+        }
+
+        public void insert(DataArrayValue daValue, List<Object> entry) {
+            if (daValue != currentDaValue) {
+                currentDaValue = daValue;
+                handlers = new ArrayList<>();
+                for (String component : daValue.getComponents()) {
+                    handlers.add(ArrayValueHandlers.getHandler(component));
+                }
+            }
+            Datastream datastream = daValue.getDatastream();
+            MultiDatastream multiDatastream = daValue.getMultiDatastream();
+            int compCount = handlers.size();
             try {
                 ObservationBuilder obsBuilder = new ObservationBuilder();
                 obsBuilder.setDatastream(datastream);
@@ -448,7 +564,7 @@ public class Service {
         try {
             mainElement = parsePathForPutPatch(pm, request, response);
             EntityParser entityParser = new EntityParser(pm.getIdManager().getIdClass());
-            entity = entityParser.parseEntity(mainElement.getEntityType().getImplementingClass(), request.getContent());
+            entity = entityParser.parseEntity(mainElement.getEntityType().getImplementingClass(), request.getContentReader());
         } catch (IllegalArgumentException exc) {
             LOGGER.trace("Path not valid for patch.", exc);
             return response;
@@ -477,7 +593,7 @@ public class Service {
         JsonPatch jsonPatch;
         try {
             mainElement = parsePathForPutPatch(pm, request, response);
-            jsonPatch = EntityParser.getSimpleObjectMapper().readValue(request.getContent(), JsonPatch.class);
+            jsonPatch = EntityParser.getSimpleObjectMapper().readValue(request.getContentReader(), JsonPatch.class);
         } catch (IllegalArgumentException exc) {
             LOGGER.trace("Path not valid.", exc);
             return response;
@@ -557,7 +673,7 @@ public class Service {
             mainElement = parsePathForPutPatch(pm, request, response);
 
             EntityParser entityParser = new EntityParser(pm.getIdManager().getIdClass());
-            entity = entityParser.parseEntity(mainElement.getEntityType().getImplementingClass(), request.getContent());
+            entity = entityParser.parseEntity(mainElement.getEntityType().getImplementingClass(), request.getContentReader());
             entity.complete(true);
             entity.setEntityPropertiesSet(true, true);
         } catch (IllegalArgumentException exc) {
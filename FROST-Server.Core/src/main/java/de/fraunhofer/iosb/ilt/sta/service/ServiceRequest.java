@@ -18,6 +18,10 @@
 package de.fraunhofer.iosb.ilt.sta.service;
 
 import de.fraunhofer.iosb.ilt.sta.formatter.ResultFormatter;
+import java.io.BufferedReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.stream.Collectors;
 
 /**
  *
@@ -29,7 +33,19 @@ public class ServiceRequest {
     private String urlPath;
     private String urlQuery;
     private String content;
+    /**
+     * The content as a stream, if it has not been read into a String yet.
+     */
+    private Reader contentReader;
     private ResultFormatter formatter;
+    /**
+     * The value of the If-None-Match header of the request, if any.
+     */
+    private String ifNoneMatch;
+    /**
+     * The value of the If-Modified-Since header of the request, if any.
+     */
+    private String ifModifiedSince;
 
     protected ServiceRequest() {
 
@@ -69,10 +85,38 @@ public class ServiceRequest {
         return requestType;
     }
 
+    /**
+     * Get the content of the request as a String. If the content was given as
+     * a Reader, the Reader is read completely.
+     *
+     * @return The content of the request.
+     */
     public String getContent() {
+        if (content == null && contentReader != null) {
+            content = new BufferedReader(contentReader).lines().collect(Collectors.joining("\n"));
+            contentReader = null;
+        }
         return content;
     }
 
+    /**
+     * Get the content of the request as a Reader. If the content was given as
+     * a Reader, that Reader is returned, and can only be read once.
+     *
+     * @return The content of the request, or null if there is no content.
+     */
+    public Reader getContentReader() {
+        if (contentReader != null) {
+            Reader reader = contentReader;
+            contentReader = null;
+            return reader;
+        }
+        if (content == null) {
+            return null;
+        }
+        return new StringReader(content);
+    }
+
     public ResultFormatter getFormatter() {
         return formatter;
     }
@@ -116,9 +160,37 @@ public class ServiceRequest {
 
     public void setContent(String content) {
         this.content = content;
+        this.contentReader = null;
+    }
+
+    /**
+     * Set the content as a stream, that is parsed while it is read, instead
+     * of being loaded into memory first.
+     *
+     * @param contentReader The reader to get the content from.
+     */
+    public void setContent(Reader contentReader) {
+        this.content = null;
+        this.contentReader = contentReader;
     }
 
     public void setFormatter(ResultFormatter formatter) {
         this.formatter = formatter;
     }
+
+    public String getIfNoneMatch() {
+        return ifNoneMatch;
+    }
+
+    public void setIfNoneMatch(String ifNoneMatch) {
+        this.ifNoneMatch = ifNoneMatch;
+    }
+
+    public String getIfModifiedSince() {
+        return ifModifiedSince;
+    }
+
+    public void setIfModifiedSince(String ifModifiedSince) {
+        this.ifModifiedSince = ifModifiedSince;
+    }
 }
@@ -19,6 +19,7 @@ package de.fraunhofer.iosb.ilt.sta.service;
 
 import de.fraunhofer.iosb.ilt.sta.formatter.DefaultResultFormater;
 import de.fraunhofer.iosb.ilt.sta.formatter.ResultFormatter;
+import java.io.Reader;
 import java.util.Optional;
 
 /**
@@ -32,6 +33,9 @@ public class ServiceRequestBuilder {
     private Optional<String> urlPath;
     private Optional<String> urlQuery;
     private Optional<String> content;
+    private Optional<Reader> contentReader;
+    private Optional<String> ifNoneMatch;
+    private Optional<String> ifModifiedSince;
     private ResultFormatter formatter;
 
     public ServiceRequestBuilder() {
@@ -40,6 +44,9 @@ public class ServiceRequestBuilder {
         this.urlPath = Optional.empty();
         this.urlQuery = Optional.empty();
         this.content = Optional.empty();
+        this.contentReader = Optional.empty();
+        this.ifNoneMatch = Optional.empty();
+        this.ifModifiedSince = Optional.empty();
         this.formatter = new DefaultResultFormater();
     }
 
@@ -60,6 +67,23 @@ public class ServiceRequestBuilder {
 
     public ServiceRequestBuilder withContent(String content) {
         this.content = Optional.ofNullable(content);
+        this.contentReader = Optional.empty();
+        return this;
+    }
+
+    public ServiceRequestBuilder withContent(Reader contentReader) {
+        this.contentReader = Optional.ofNullable(contentReader);
+        this.content = Optional.empty();
+        return this;
+    }
+
+    public ServiceRequestBuilder withIfNoneMatch(String ifNoneMatch) {
+        this.ifNoneMatch = Optional.ofNullable(ifNoneMatch);
+        return this;
+    }
+
+    public ServiceRequestBuilder withIfModifiedSince(String ifModifiedSince) {
+        this.ifModifiedSince = Optional.ofNullable(ifModifiedSince);
         return this;
     }
 
@@ -87,6 +111,15 @@ public class ServiceRequestBuilder {
         if (content.isPresent()) {
             result.setContent(content.get());
         }
+        if (contentReader.isPresent()) {
+            result.setContent(contentReader.get());
+        }
+        if (ifNoneMatch.isPresent()) {
+            result.setIfNoneMatch(ifNoneMatch.get());
+        }
+        if (ifModifiedSince.isPresent()) {
+            result.setIfModifiedSince(ifModifiedSince.get());
+        }
         if (requestType.isPresent()) {
             result.setRequestType(requestType.get());
         }
@@ -31,6 +31,11 @@ public class ServiceResponse<T> {
     private int code;
     private String message;
     private final Map<String, String> headers;
+    /**
+     * Encoded versions of the formatted result, by encoding, that can be
+     * stored for later use, or null if they are not stored.
+     */
+    private Map<String, byte[]> encodedResults;
 
     public ServiceResponse() {
         this.headers = new HashMap<>();
@@ -96,6 +101,14 @@ public class ServiceResponse<T> {
         this.resultFormatted = resultFormatted;
     }
 
+    public Map<String, byte[]> getEncodedResults() {
+        return encodedResults;
+    }
+
+    public void setEncodedResults(Map<String, byte[]> encodedResults) {
+        this.encodedResults = encodedResults;
+    }
+
     public boolean isSuccessful() {
         return code >= 200 && code < 300;
     }
@@ -61,6 +61,10 @@ public class CoreSettings implements ConfigDefaults {
     public static final String TAG_USE_ABSOLUTE_NAVIGATION_LINKS = "useAbsoluteNavigationLinks";
     @DefaultValue("")
     public static final String TAG_TEMP_PATH = "tempPath";
+    @DefaultValueBoolean(false)
+    public static final String TAG_VIRTUAL_THREADS = "virtualThreads";
+    @DefaultValueBoolean(false)
+    public static final String TAG_METRICS_ENABLE = "metrics.enable";
     /**
      * Used when passing CoreSettings in a map.
      */
@@ -144,6 +148,14 @@ public class CoreSettings implements ConfigDefaults {
      * Path to temp folder.
      */
     private String tempPath;
+    /**
+     * Flag indicating virtual threads should be used, if available.
+     */
+    private boolean virtualThreads = defaultValueBoolean(TAG_VIRTUAL_THREADS);
+    /**
+     * Flag indicating timing metrics should be collected.
+     */
+    private boolean metricsEnabled = defaultValueBoolean(TAG_METRICS_ENABLE);
     /**
      * The MQTT settings to use.
      */
@@ -215,6 +227,8 @@ public class CoreSettings implements ConfigDefaults {
         topDefault = settings.getInt(TAG_DEFAULT_TOP, getClass());
         topMax = settings.getInt(TAG_MAX_TOP, getClass());
         dataSizeMax = settings.getLong(TAG_MAX_DATASIZE, getClass());
+        virtualThreads = settings.getBoolean(TAG_VIRTUAL_THREADS, getClass());
+        metricsEnabled = settings.getBoolean(TAG_METRICS_ENABLE, getClass());
 
         mqttSettings = new MqttSettings(new Settings(settings.getProperties(), PREFIX_MQTT, false));
         persistenceSettings = new PersistenceSettings(new Settings(settings.getProperties(), PREFIX_PERSISTENCE, false));
@@ -276,6 +290,26 @@ public class CoreSettings implements ConfigDefaults {
         return tempPath;
     }
 
+    /**
+     * Flag indicating virtual threads should be used for handling requests
+     * and messages, if the JVM supports them.
+     *
+     * @return true if virtual threads should be used.
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Flag indicating timing metrics should be collected, and published on
+     * the metrics endpoint.
+     *
+     * @return true if metrics are enabled.
+     */
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
     /**
      * The default top to use when no specific top is set.
      *
@@ -0,0 +1,390 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigInteger;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.spec.RSAPublicKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Verifies signed JSON Web Tokens (JWTs) locally, using the public keys of the
+ * issuer. The keys are loaded from the JSON Web Key Set (JWKS) of the issuer,
+ * and reloaded when a token is signed with an unknown key, or when they are
+ * older than the configured time. Verified tokens are cached by their digest,
+ * until they expire.
+ *
+ * Only RSA signatures (RS256, RS384 and RS512) are supported.
+ *
+ * @author scf
+ */
+public class JwtVerifier {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(JwtVerifier.class);
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Map<String, String> ALGORITHMS = new HashMap<>();
+
+    static {
+        ALGORITHMS.put("RS256", "SHA256withRSA");
+        ALGORITHMS.put("RS384", "SHA384withRSA");
+        ALGORITHMS.put("RS512", "SHA512withRSA");
+    }
+
+    /**
+     * Loads the JSON Web Key Set of the issuer.
+     */
+    public static interface KeySource {
+
+        /**
+         * @return The JWKS, as JSON String.
+         * @throws IOException If loading fails.
+         */
+        public String loadJwks() throws IOException;
+    }
+
+    /**
+     * The claims of a verified token, that are relevant for authorisation.
+     */
+    public static class Claims {
+
+        private final String subject;
+        private final String userName;
+        private final long expiresAt;
+        private final Set<String> roles;
+
+        public Claims(String subject, String userName, long expiresAt, Set<String> roles) {
+            this.subject = subject;
+            this.userName = userName;
+            this.expiresAt = expiresAt;
+            this.roles = Collections.unmodifiableSet(roles);
+        }
+
+        public String getSubject() {
+            return subject;
+        }
+
+        public String getUserName() {
+            return userName;
+        }
+
+        /**
+         * @return The expiration time of the token, in seconds since the
+         * epoch, or 0 if the token does not expire.
+         */
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        public Set<String> getRoles() {
+            return roles;
+        }
+
+        public boolean isExpired(long nowSeconds) {
+            return expiresAt > 0 && expiresAt < nowSeconds;
+        }
+    }
+
+    private final String issuer;
+    private final String clientId;
+    private final boolean useResourceRoleMappings;
+    private final KeySource keySource;
+    private final long keyTtlMillis;
+    private final long minRefreshMillis;
+    private final int clockSkewSeconds;
+    private final Cache<String, Claims> verified;
+
+    private volatile Map<String, PublicKey> keys = Collections.emptyMap();
+    private volatile long keysLoadedAt;
+    private long lastLoadAttempt;
+
+    /**
+     * Creates a new verifier.
+     *
+     * @param issuer The expected issuer (iss claim) of the tokens.
+     * @param clientId The client id the tokens must be issued for, may be
+     * null to accept tokens for any client.
+     * @param useResourceRoleMappings If true, the roles are read from the
+     * client roles of the given client, otherwise from the realm roles, like
+     * the use-resource-role-mappings option of the Keycloak adapter.
+     * @param keySource The source of the public keys of the issuer.
+     * @param keyTtl The maximum age, in seconds, of the loaded keys.
+     * @param minRefresh The minimum time, in seconds, between two key loads.
+     * @param cacheSize The maximum number of verified tokens to cache.
+     * @param clockSkew The allowed clock difference, in seconds, when checking
+     * the validity period of tokens.
+     */
+    public JwtVerifier(String issuer, String clientId, boolean useResourceRoleMappings, KeySource keySource, int keyTtl, int minRefresh, int cacheSize, int clockSkew) {
+        this.issuer = issuer;
+        this.clientId = clientId;
+        this.useResourceRoleMappings = useResourceRoleMappings;
+        this.keySource = keySource;
+        this.keyTtlMillis = keyTtl * 1000L;
+        this.minRefreshMillis = minRefresh * 1000L;
+        this.clockSkewSeconds = clockSkew;
+        this.verified = CacheBuilder.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(1, TimeUnit.HOURS)
+                .build();
+    }
+
+    /**
+     * Create a KeySource that loads the JWKS from the given URL.
+     *
+     * @param jwksUrl The URL of the JWKS.
+     * @return A KeySource for the given URL.
+     */
+    public static KeySource urlKeySource(String jwksUrl) {
+        return () -> {
+            HttpURLConnection connection = (HttpURLConnection) new URL(jwksUrl).openConnection();
+            connection.setConnectTimeout(10000);
+            connection.setReadTimeout(10000);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StringHelper.UTF8))) {
+                return reader.lines().collect(Collectors.joining("\n"));
+            } finally {
+                connection.disconnect();
+            }
+        };
+    }
+
+    /**
+     * Checks if the given String looks like a JWT.
+     *
+     * @param token The String to check.
+     * @return true if the String consists of three Base64URL parts.
+     */
+    public static boolean isJwt(String token) {
+        return token != null && token.matches("[A-Za-z0-9_-]+\\.[A-Za-z0-9_-]+\\.[A-Za-z0-9_-]+");
+    }
+
+    /**
+     * Verify the given token.
+     *
+     * @param token The token to verify.
+     * @return The claims of the token, or null if the token is not valid.
+     */
+    public Claims verify(String token) {
+        if (!isJwt(token)) {
+            return null;
+        }
+        long now = System.currentTimeMillis() / 1000;
+        String digest = digest(token);
+        Claims claims = verified.getIfPresent(digest);
+        if (claims != null) {
+            if (claims.isExpired(now - clockSkewSeconds)) {
+                verified.invalidate(digest);
+                return null;
+            }
+            return claims;
+        }
+        claims = doVerify(token, now);
+        if (claims != null) {
+            verified.put(digest, claims);
+        }
+        return claims;
+    }
+
+    private Claims doVerify(String token, long now) {
+        String[] parts = token.split("\\.");
+        Base64.Decoder decoder = Base64.getUrlDecoder();
+        try {
+            JsonNode header = MAPPER.readTree(decoder.decode(parts[0]));
+            String algorithm = ALGORITHMS.get(header.path("alg").asText());
+            if (algorithm == null) {
+                LOGGER.debug("Unsupported token algorithm: {}", header.path("alg").asText());
+                return null;
+            }
+            PublicKey key = findKey(header.path("kid").asText(null));
+            if (key == null) {
+                LOGGER.debug("No key found for token.");
+                return null;
+            }
+            Signature signature = Signature.getInstance(algorithm);
+            signature.initVerify(key);
+            signature.update((parts[0] + "." + parts[1]).getBytes(StringHelper.UTF8));
+            if (!signature.verify(decoder.decode(parts[2]))) {
+                LOGGER.debug("Invalid token signature.");
+                return null;
+            }
+            JsonNode payload = MAPPER.readTree(decoder.decode(parts[1]));
+            return checkClaims(payload, now);
+        } catch (IOException | GeneralSecurityException | IllegalArgumentException ex) {
+            LOGGER.debug("Failed to verify token.", ex);
+            return null;
+        }
+    }
+
+    private Claims checkClaims(JsonNode payload, long now) {
+        if (issuer != null && !issuer.equals(payload.path("iss").asText())) {
+            LOGGER.debug("Token has wrong issuer: {}", payload.path("iss").asText());
+            return null;
+        }
+        if (!"Bearer".equals(payload.path("typ").asText())) {
+            LOGGER.debug("Token is not a bearer token: {}", payload.path("typ").asText());
+            return null;
+        }
+        if (clientId != null && !isForClient(payload)) {
+            LOGGER.debug("Token is not issued for client {}.", clientId);
+            return null;
+        }
+        long exp = payload.path("exp").asLong(0);
+        if (exp > 0 && exp < now - clockSkewSeconds) {
+            LOGGER.debug("Token expired.");
+            return null;
+        }
+        long nbf = payload.path("nbf").asLong(0);
+        if (nbf > 0 && nbf > now + clockSkewSeconds) {
+            LOGGER.debug("Token not yet valid.");
+            return null;
+        }
+        Set<String> roles = new HashSet<>();
+        if (!useResourceRoleMappings) {
+            addRoles(payload.path("realm_access").path("roles"), roles);
+        } else if (clientId != null) {
+            addRoles(payload.path("resource_access").path(clientId).path("roles"), roles);
+        }
+        String userName = payload.path("preferred_username").asText(payload.path("sub").asText());
+        return new Claims(payload.path("sub").asText(), userName, exp, roles);
+    }
+
+    /**
+     * Checks if the token is issued for our client, either as authorised
+     * party (azp) or as one of the audiences (aud).
+     */
+    private boolean isForClient(JsonNode payload) {
+        if (clientId.equals(payload.path("azp").asText())) {
+            return true;
+        }
+        JsonNode audience = payload.path("aud");
+        if (audience.isArray()) {
+            for (JsonNode item : audience) {
+                if (clientId.equals(item.asText())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return clientId.equals(audience.asText());
+    }
+
+    private static void addRoles(JsonNode roleArray, Set<String> roles) {
+        for (JsonNode role : roleArray) {
+            roles.add(role.asText());
+        }
+    }
+
+    private PublicKey findKey(String kid) {
+        long nowMillis = System.currentTimeMillis();
+        if (nowMillis - keysLoadedAt > keyTtlMillis) {
+            loadKeys(nowMillis);
+        }
+        PublicKey key = selectKey(kid);
+        if (key == null && loadKeys(nowMillis)) {
+            // The issuer may have rotated its keys.
+            key = selectKey(kid);
+        }
+        return key;
+    }
+
+    private PublicKey selectKey(String kid) {
+        Map<String, PublicKey> currentKeys = keys;
+        if (kid == null) {
+            return currentKeys.size() == 1 ? currentKeys.values().iterator().next() : null;
+        }
+        return currentKeys.get(kid);
+    }
+
+    /**
+     * Load the keys, if the last attempt was long enough ago.
+     *
+     * @return true if the keys were loaded.
+     */
+    private synchronized boolean loadKeys(long nowMillis) {
+        if (nowMillis - lastLoadAttempt < minRefreshMillis) {
+            return false;
+        }
+        lastLoadAttempt = nowMillis;
+        try {
+            keys = parseJwks(keySource.loadJwks());
+            keysLoadedAt = nowMillis;
+            LOGGER.debug("Loaded {} keys for issuer {}.", keys.size(), issuer);
+            return true;
+        } catch (IOException | GeneralSecurityException | RuntimeException ex) {
+            LOGGER.error("Failed to load keys for issuer {}: {}", issuer, ex.getMessage());
+            LOGGER.debug("Exception:", ex);
+            return false;
+        }
+    }
+
+    /**
+     * Parse the RSA signing keys from the given JWKS.
+     *
+     * @param jwks The JWKS to parse.
+     * @return The keys, by key id.
+     * @throws IOException If the JWKS is not valid JSON.
+     * @throws GeneralSecurityException If a key can not be created.
+     */
+    public static Map<String, PublicKey> parseJwks(String jwks) throws IOException, GeneralSecurityException {
+        Map<String, PublicKey> result = new HashMap<>();
+        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
+        Base64.Decoder decoder = Base64.getUrlDecoder();
+        for (JsonNode key : MAPPER.readTree(jwks).path("keys")) {
+            if (!"RSA".equals(key.path("kty").asText()) || "enc".equals(key.path("use").asText())) {
+                continue;
+            }
+            BigInteger modulus = new BigInteger(1, decoder.decode(key.path("n").asText()));
+            BigInteger exponent = new BigInteger(1, decoder.decode(key.path("e").asText()));
+            result.put(key.path("kid").asText(""), keyFactory.generatePublic(new RSAPublicKeySpec(modulus, exponent)));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static String digest(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(token.getBytes(StringHelper.UTF8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not supported.", ex);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A FIFO buffer of byte-array records, backed by a memory-mapped file of a
+ * fixed size. Records are stored with a length prefix. When a record does not
+ * fit in the space left at the end of the file, the writer wraps around to the
+ * start of the file.
+ *
+ * The buffer is not persistent: the file is deleted when the buffer is closed,
+ * and the content is not recovered after a restart.
+ *
+ * @author scf
+ */
+public class MappedRingBuffer implements Closeable {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(MappedRingBuffer.class);
+
+    /**
+     * The length-value marking that the writer wrapped around to the start of
+     * the file.
+     */
+    private static final int WRAP_MARKER = -1;
+    private static final int HEADER_SIZE = Integer.BYTES;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    /**
+     * The position of the next record to read.
+     */
+    private int head = 0;
+    /**
+     * The position where the next record will be written.
+     */
+    private int tail = 0;
+    /**
+     * The number of bytes in use, including bytes skipped due to wrapping.
+     */
+    private int used = 0;
+    /**
+     * The number of records in the buffer.
+     */
+    private int count = 0;
+
+    /**
+     * Creates a new buffer, backed by the given file. If the file exists, it is
+     * overwritten.
+     *
+     * @param file The file to use as backing store.
+     * @param capacity The size of the file, in bytes.
+     * @throws IOException If the file can not be created or mapped.
+     */
+    public MappedRingBuffer(Path file, int capacity) throws IOException {
+        if (capacity <= HEADER_SIZE) {
+            throw new IllegalArgumentException("capacity must be larger than " + HEADER_SIZE);
+        }
+        this.file = file;
+        this.capacity = capacity;
+        this.channel = FileChannel.open(file,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * Adds the given record to the buffer, if there is space.
+     *
+     * @param data The record to add.
+     * @return true if the record was added, false if there was not enough free
+     * space.
+     */
+    public synchronized boolean offer(byte[] data) {
+        int needed = HEADER_SIZE + data.length;
+        if (needed > capacity) {
+            return false;
+        }
+        int pos = tail;
+        int waste = 0;
+        if (capacity - pos < needed) {
+            waste = capacity - pos;
+            pos = 0;
+        }
+        if (used + waste + needed > capacity) {
+            return false;
+        }
+        if (waste >= HEADER_SIZE) {
+            buffer.putInt(tail, WRAP_MARKER);
+        }
+        used += waste;
+
+        buffer.putInt(pos, data.length);
+        ByteBuffer target = buffer.duplicate();
+        target.position(pos + HEADER_SIZE);
+        target.put(data);
+
+        tail = (pos + needed) % capacity;
+        used += needed;
+        count++;
+        return true;
+    }
+
+    /**
+     * Removes and returns the oldest record in the buffer.
+     *
+     * @return The oldest record, or null if the buffer is empty.
+     */
+    public synchronized byte[] poll() {
+        if (count == 0) {
+            return null;
+        }
+        int remaining = capacity - head;
+        if (remaining < HEADER_SIZE || buffer.getInt(head) == WRAP_MARKER) {
+            used -= remaining;
+            head = 0;
+        }
+        int length = buffer.getInt(head);
+        byte[] data = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(head + HEADER_SIZE);
+        source.get(data);
+
+        head = (head + HEADER_SIZE + length) % capacity;
+        used -= HEADER_SIZE + length;
+        count--;
+        if (count == 0) {
+            head = 0;
+            tail = 0;
+            used = 0;
+        }
+        return data;
+    }
+
+    /**
+     * @return The number of records in the buffer.
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * @return true if there are no records in the buffer.
+     */
+    public synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @return The number of bytes in use.
+     */
+    public synchronized int getUsedBytes() {
+        return used;
+    }
+
+    /**
+     * @return The total size of the buffer, in bytes.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (count > 0) {
+            LOGGER.warn("Closing spill file {} with {} records left.", file, count);
+        }
+        channel.close();
+        Files.deleteIfExists(file);
+    }
+
+}
@@ -17,13 +17,18 @@
  */
 package de.fraunhofer.iosb.ilt.sta.util;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,12 +40,14 @@ public class ProcessorHelper {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ProcessorHelper.class);
     private static final long SHUTDOWN_WAIT_STEP_IN_MILLIS = 100;
+    private static final int MIN_PARTITION_QUEUE_SIZE = 10;
+    private static final int MAX_PARTITION_QUEUE_SIZE = 1000;
 
     private ProcessorHelper() {
     }
 
     public static <T> ExecutorService createProcessors(int threadCount, BlockingQueue<T> queue, Consumer<T> consumer, String name) {
-        ThreadFactory factory = new ThreadFactoryBuilder().setNameFormat(name + "-%d").build();
+        ThreadFactory factory = VirtualThreads.createThreadFactory(name);
         ExecutorService result = Executors.newFixedThreadPool(threadCount, factory);
         for (int i = 0; i < threadCount; i++) {
 
@@ -49,6 +56,44 @@ public class ProcessorHelper {
         return result;
     }
 
+    /**
+     * Create processors that handle items with the same key in the order in
+     * which they were put on the queue. A dispatcher thread takes items from
+     * the queue and routes them, by the hash of their key, to one of
+     * threadCount partitions. Each partition has its own queue and a single
+     * worker thread, so items with the same key are never handled in
+     * parallel, while items with different keys are spread over all workers.
+     *
+     * @param <T> The type of the items on the queue.
+     * @param threadCount The number of worker threads.
+     * @param queue The queue to take items from.
+     * @param keyFunction The function that determines the key of an item.
+     * Items for which the key is null are spread over the partitions without
+     * ordering guarantees.
+     * @param consumer The consumer that handles the items.
+     * @param name The name of the processors, used for the thread names.
+     * @return The executor service running the processors.
+     */
+    public static <T> ExecutorService createOrderedProcessors(int threadCount, BlockingQueue<T> queue, Function<T, Object> keyFunction, Consumer<T> consumer, String name) {
+        if (threadCount <= 1) {
+            // A single worker already handles all items in order.
+            return createProcessors(1, queue, consumer, name);
+        }
+        long capacity = (long) queue.size() + queue.remainingCapacity();
+        int partitionQueueSize = (int) Math.max(MIN_PARTITION_QUEUE_SIZE, Math.min(MAX_PARTITION_QUEUE_SIZE, capacity / threadCount));
+        List<BlockingQueue<T>> partitions = new ArrayList<>(threadCount);
+        for (int i = 0; i < threadCount; i++) {
+            partitions.add(new ArrayBlockingQueue<>(partitionQueueSize));
+        }
+        ThreadFactory factory = VirtualThreads.createThreadFactory(name);
+        PartitionedExecutor result = new PartitionedExecutor(threadCount + 1, factory, partitions);
+        result.submit(new Dispatcher<>(queue, partitions, keyFunction, name + "-Dispatcher"));
+        for (int i = 0; i < threadCount; i++) {
+            result.submit(new Processor<>(partitions.get(i), consumer, name));
+        }
+        return result;
+    }
+
     public static void shutdownProcessors(ExecutorService executorService, BlockingQueue<?> queue, long timeout, TimeUnit timeUnit) {
         if (executorService != null) {
             executorService.shutdown();
@@ -58,7 +103,7 @@ public class ProcessorHelper {
              * empty.
              */
             try {
-                while (queue != null && !queue.isEmpty() && timeoutInMillis > 0) {
+                while (timeoutInMillis > 0 && !isDrained(executorService, queue)) {
                     Thread.sleep(SHUTDOWN_WAIT_STEP_IN_MILLIS);
                     timeoutInMillis -= SHUTDOWN_WAIT_STEP_IN_MILLIS;
                 }
@@ -73,6 +118,82 @@ public class ProcessorHelper {
         }
     }
 
+    private static boolean isDrained(ExecutorService executorService, BlockingQueue<?> queue) {
+        if (queue != null && !queue.isEmpty()) {
+            return false;
+        }
+        if (executorService instanceof PartitionedExecutor) {
+            for (BlockingQueue<?> partition : ((PartitionedExecutor) executorService).partitions) {
+                if (!partition.isEmpty()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A fixed thread pool that knows the partition queues of its processors,
+     * so shutdown can wait for those to be empty too.
+     */
+    private static class PartitionedExecutor extends ThreadPoolExecutor {
+
+        private final List<? extends BlockingQueue<?>> partitions;
+
+        private PartitionedExecutor(int threadCount, ThreadFactory factory, List<? extends BlockingQueue<?>> partitions) {
+            super(threadCount, threadCount, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), factory);
+            this.partitions = partitions;
+        }
+    }
+
+    private static class Dispatcher<T> implements Runnable {
+
+        private static final Logger LOGGER = LoggerFactory.getLogger(Dispatcher.class);
+        private final BlockingQueue<T> queue;
+        private final List<BlockingQueue<T>> partitions;
+        private final Function<T, Object> keyFunction;
+        private final String name;
+        private int nextUnkeyed = 0;
+
+        private Dispatcher(BlockingQueue<T> queue, List<BlockingQueue<T>> partitions, Function<T, Object> keyFunction, String name) {
+            this.queue = queue;
+            this.partitions = partitions;
+            this.keyFunction = keyFunction;
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+            LOGGER.debug("starting {}-Thread", name);
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    T event = queue.take();
+                    partitions.get(partitionFor(event)).put(event);
+                } catch (InterruptedException ex) {
+                    LOGGER.debug("{} interrupted", name);
+                    LOGGER.trace(name + " interrupted", ex);
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            LOGGER.debug("exiting {}-Thread", name);
+        }
+
+        private int partitionFor(T event) {
+            Object key = null;
+            try {
+                key = keyFunction.apply(event);
+            } catch (Exception ex) {
+                LOGGER.warn("Exception determining key in " + name, ex);
+            }
+            if (key == null) {
+                nextUnkeyed = (nextUnkeyed + 1) % partitions.size();
+                return nextUnkeyed;
+            }
+            return Math.floorMod(key.hashCode(), partitions.size());
+        }
+    }
+
     private static class Processor<T> implements Runnable {
 
         private static final Logger LOGGER = LoggerFactory.getLogger(Processor.class);
@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.util;
+
+import de.fraunhofer.iosb.ilt.sta.metrics.Metrics;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Puts items on a bounded queue, applying the configured policy when the queue
+ * is full.
+ *
+ * @author scf
+ * @param <T> The type of the items on the queue.
+ */
+public class QueueOverflowHandler<T> {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueueOverflowHandler.class);
+    /**
+     * The minimum time between two log messages about dropped items.
+     */
+    private static final long DROP_LOG_INTERVAL_MILLIS = 10_000;
+    private static final long SPILL_WAIT_STEP_IN_MILLIS = 100;
+
+    /**
+     * The things that can be done when the queue is full.
+     */
+    public enum Policy {
+        /**
+         * Drop the item, and count the number of dropped items.
+         */
+        DROP,
+        /**
+         * Block the sending thread until there is space on the queue, or a
+         * timeout is reached. After the timeout the item is dropped.
+         */
+        BLOCK,
+        /**
+         * Write the item to a memory-mapped file. Items are moved back to the
+         * queue when space becomes available. When the file is full, the item
+         * is dropped.
+         */
+        SPILL;
+
+        public static Policy fromString(String input) {
+            try {
+                return valueOf(input.trim().toUpperCase());
+            } catch (IllegalArgumentException exc) {
+                throw new IllegalArgumentException("Unknown queue overflow policy: " + input, exc);
+            }
+        }
+    }
+
+    /**
+     * Turns items into bytes and back, for storing them in the spill file.
+     *
+     * @param <T> The type of the items.
+     */
+    public interface Codec<T> {
+
+        public byte[] encode(T item) throws IOException;
+
+        public T decode(byte[] data) throws IOException;
+    }
+
+    private final BlockingQueue<T> queue;
+    private final String name;
+    private final Policy policy;
+    private final long blockTimeoutMillis;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong spilledCount = new AtomicLong();
+    private long lastDropLog = 0;
+    private long droppedAtLastLog = 0;
+
+    private Codec<T> codec;
+    private MappedRingBuffer spillBuffer;
+    private Thread spillDrainer;
+    private final Object spillLock = new Object();
+    /**
+     * The number of items that are in the spill file, or taken from the spill
+     * file but not yet on the queue. As long as this is not 0, new items also
+     * go to the spill file, to keep the order intact.
+     */
+    private int spillPending = 0;
+
+    /**
+     * Create a new handler for the given queue.
+     *
+     * @param queue The queue to put items on.
+     * @param name The name of the queue, used in log messages and the name of
+     * the spill file.
+     * @param policy The policy to apply when the queue is full.
+     * @param blockTimeoutMillis The time to block when the policy is BLOCK.
+     */
+    public QueueOverflowHandler(BlockingQueue<T> queue, String name, Policy policy, long blockTimeoutMillis) {
+        this.queue = queue;
+        this.name = name;
+        this.policy = policy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        if (policy == Policy.SPILL) {
+            throw new IllegalArgumentException("Use the spill constructor for the SPILL policy.");
+        }
+        registerMetrics();
+    }
+
+    /**
+     * Create a new handler for the given queue, that spills to disk.
+     *
+     * @param queue The queue to put items on.
+     * @param name The name of the queue, used in log messages and the name of
+     * the spill file.
+     * @param codec The codec used to store items in the spill file.
+     * @param spillDirectory The directory to create the spill file in.
+     * @param spillSize The size of the spill file in bytes.
+     * @throws IOException If the spill file could not be created.
+     */
+    public QueueOverflowHandler(BlockingQueue<T> queue, String name, Codec<T> codec, String spillDirectory, int spillSize) throws IOException {
+        this.queue = queue;
+        this.name = name;
+        this.policy = Policy.SPILL;
+        this.blockTimeoutMillis = 0;
+        this.codec = codec;
+        Path spillFile = Paths.get(spillDirectory, "FROST-" + name + "-" + UUID.randomUUID() + ".spill");
+        spillBuffer = new MappedRingBuffer(spillFile, spillSize);
+        LOGGER.info("Queue {} spills to {} ({} bytes).", name, spillFile, spillSize);
+        spillDrainer = new Thread(this::drainSpill, name + "-SpillDrainer");
+        spillDrainer.setDaemon(true);
+        spillDrainer.start();
+        registerMetrics();
+    }
+
+    private void registerMetrics() {
+        Metrics.gauge("frost_queue_size", "Number of items waiting on the queue.", queue::size, "queue", name);
+        Metrics.gauge("frost_queue_spill_size", "Number of items waiting in the spill file of the queue.", this::getSpillSize, "queue", name);
+        Metrics.counter("frost_queue_dropped_total", "Number of items dropped because the queue was full.", this::getDroppedCount, "queue", name);
+        Metrics.counter("frost_queue_spilled_total", "Number of items written to the spill file of the queue.", this::getSpilledCount, "queue", name);
+    }
+
+    /**
+     * Create a new handler for the given queue. If the policy is SPILL, but the
+     * spill file can not be created, the BLOCK policy is used instead.
+     *
+     * @param <T> The type of the items on the queue.
+     * @param queue The queue to put items on.
+     * @param name The name of the queue, used in log messages and the name of
+     * the spill file.
+     * @param policy The policy to apply when the queue is full.
+     * @param blockTimeoutMillis The time to block when the policy is BLOCK.
+     * @param codec The codec used to store items in the spill file.
+     * @param spillDirectory The directory to create the spill file in.
+     * @param spillSize The size of the spill file in bytes.
+     * @return a new handler.
+     */
+    public static <T> QueueOverflowHandler<T> create(BlockingQueue<T> queue, String name, Policy policy, long blockTimeoutMillis, Codec<T> codec, String spillDirectory, int spillSize) {
+        if (policy == Policy.SPILL) {
+            try {
+                return new QueueOverflowHandler<>(queue, name, codec, spillDirectory, spillSize);
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.error("Failed to create spill file for queue " + name + ", using policy BLOCK instead.", ex);
+                return new QueueOverflowHandler<>(queue, name, Policy.BLOCK, blockTimeoutMillis);
+            }
+        }
+        return new QueueOverflowHandler<>(queue, name, policy, blockTimeoutMillis);
+    }
+
+    /**
+     * Convert the configured spill size, in megabytes, to bytes. The spill
+     * file is mapped into memory as a whole, so it must be smaller than 2 GB.
+     *
+     * @param megabytes The spill size in megabytes.
+     * @return The spill size in bytes.
+     * @throws IllegalArgumentException If the size is not between 1 and 2047
+     * megabytes.
+     */
+    public static int spillSizeInBytes(int megabytes) {
+        long bytes = megabytes * 1024L * 1024L;
+        if (megabytes < 1 || bytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Spill size must be between 1 and 2047 MB, not " + megabytes + ".");
+        }
+        return (int) bytes;
+    }
+
+    /**
+     * Offer the item to the queue, applying the overflow policy if the queue
+     * is full.
+     *
+     * @param item The item to put on the queue.
+     * @return false if the item was dropped.
+     */
+    public boolean offer(T item) {
+        switch (policy) {
+            case BLOCK:
+                return offerBlocking(item);
+
+            case SPILL:
+                return offerSpilling(item);
+
+            case DROP:
+            default:
+                if (queue.offer(item)) {
+                    return true;
+                }
+                countDropped();
+                return false;
+        }
+    }
+
+    private boolean offerBlocking(T item) {
+        try {
+            if (queue.offer(item, blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException ex) {
+            LOGGER.debug("Interrupted while waiting for space on queue {}.", name);
+            Thread.currentThread().interrupt();
+        }
+        countDropped();
+        return false;
+    }
+
+    private boolean offerSpilling(T item) {
+        synchronized (spillLock) {
+            if (spillPending == 0 && queue.offer(item)) {
+                return true;
+            }
+            try {
+                if (spillBuffer.offer(codec.encode(item))) {
+                    spillPending++;
+                    spilledCount.incrementAndGet();
+                    spillLock.notifyAll();
+                    return true;
+                }
+            } catch (IOException ex) {
+                LOGGER.error("Failed to encode item for spill file of queue " + name, ex);
+            }
+        }
+        countDropped();
+        return false;
+    }
+
+    private void drainSpill() {
+        LOGGER.debug("starting {}-SpillDrainer", name);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                byte[] data;
+                synchronized (spillLock) {
+                    while (spillBuffer.isEmpty()) {
+                        spillLock.wait();
+                    }
+                    data = spillBuffer.poll();
+                }
+                try {
+                    queue.put(codec.decode(data));
+                } catch (IOException ex) {
+                    LOGGER.error("Failed to decode item from spill file of queue " + name, ex);
+                    countDropped();
+                } finally {
+                    synchronized (spillLock) {
+                        spillPending--;
+                        spillLock.notifyAll();
+                    }
+                }
+            } catch (InterruptedException ex) {
+                LOGGER.debug("{}-SpillDrainer interrupted", name);
+                Thread.currentThread().interrupt();
+            }
+        }
+        LOGGER.debug("exiting {}-SpillDrainer", name);
+    }
+
+    private void countDropped() {
+        long total = droppedCount.incrementAndGet();
+        long now = System.currentTimeMillis();
+        synchronized (droppedCount) {
+            if (now - lastDropLog < DROP_LOG_INTERVAL_MILLIS) {
+                return;
+            }
+            LOGGER.error("Queue {} is full, dropped {} messages ({} in total) using policy {}. Increase the queue size to allow a bigger buffer, or increase the worker pool size to empty the buffer quicker.",
+                    name, total - droppedAtLastLog, total, policy);
+            lastDropLog = now;
+            droppedAtLastLog = total;
+        }
+    }
+
+    /**
+     * @return The policy applied when the queue is full.
+     */
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return The total number of items dropped since start.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * @return The total number of items written to the spill file since start.
+     */
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    /**
+     * @return The number of items currently in the spill file.
+     */
+    public int getSpillSize() {
+        if (spillBuffer == null) {
+            return 0;
+        }
+        return spillBuffer.size();
+    }
+
+    /**
+     * @return true if there are no items waiting in the spill file.
+     */
+    public boolean isSpillEmpty() {
+        synchronized (spillLock) {
+            return spillPending == 0;
+        }
+    }
+
+    /**
+     * Stop the spill drainer and remove the spill file. Waits for the given
+     * time for the spill file to be drained to the queue. Items left in the
+     * spill file after that are lost.
+     *
+     * @param timeout The maximum time to wait for the spill file to drain.
+     * @param timeUnit The unit of the timeout.
+     */
+    public void stop(long timeout, TimeUnit timeUnit) {
+        long deadline = System.currentTimeMillis() + timeUnit.toMillis(timeout);
+        synchronized (spillLock) {
+            try {
+                while (spillPending > 0 && System.currentTimeMillis() < deadline) {
+                    spillLock.wait(SPILL_WAIT_STEP_IN_MILLIS);
+                }
+            } catch (InterruptedException ex) {
+                LOGGER.debug("Interrupted while waiting for spill file of queue {} to drain.", name);
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (spillDrainer != null) {
+            spillDrainer.interrupt();
+        }
+        if (spillBuffer != null) {
+            try {
+                spillBuffer.close();
+            } catch (IOException ex) {
+                LOGGER.error("Failed to close spill file of queue " + name, ex);
+            }
+        }
+    }
+
+}
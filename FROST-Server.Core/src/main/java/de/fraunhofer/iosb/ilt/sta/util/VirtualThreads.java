@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates threads for the worker pools of the server. When virtual threads
+ * are enabled and the JVM supports them (Java 21 and up), virtual threads are
+ * used, otherwise normal platform threads.
+ *
+ * Since the server is compiled for Java 8, the virtual thread API is accessed
+ * through reflection.
+ *
+ * @author scf
+ */
+public class VirtualThreads {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static Method ofVirtual;
+    private static Method builderName;
+    private static Method builderFactory;
+    private static Method newThreadPerTaskExecutor;
+    private static boolean supported;
+    private static boolean enabled = false;
+
+    static {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            supported = true;
+        } catch (ClassNotFoundException | NoSuchMethodException | RuntimeException ex) {
+            supported = false;
+        }
+    }
+
+    private VirtualThreads() {
+        // Utility class.
+    }
+
+    /**
+     * Enable or disable virtual threads, depending on the given settings.
+     *
+     * @param settings The settings to read the configuration from.
+     */
+    public static synchronized void init(CoreSettings settings) {
+        setEnabled(settings.isVirtualThreads());
+    }
+
+    /**
+     * Enable or disable virtual threads. Only affects threads created after
+     * the call.
+     *
+     * @param enable Flag indicating virtual threads should be used.
+     */
+    public static synchronized void setEnabled(boolean enable) {
+        if (enable && !supported) {
+            LOGGER.warn("Virtual threads requested, but not supported by this JVM ({}). Using platform threads.", System.getProperty("java.version"));
+            enabled = false;
+            return;
+        }
+        if (enable) {
+            LOGGER.info("Using virtual threads.");
+        }
+        enabled = enable;
+    }
+
+    /**
+     * @return true if the JVM supports virtual threads.
+     */
+    public static boolean isSupported() {
+        return supported;
+    }
+
+    /**
+     * @return true if virtual threads are enabled and supported.
+     */
+    public static synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Create a thread factory for the given name. The threads are named
+     * name-0, name-1, etc.
+     *
+     * @param name The base name of the threads.
+     * @return A factory for virtual threads if these are enabled, or for
+     * platform threads otherwise.
+     */
+    public static ThreadFactory createThreadFactory(String name) {
+        if (isEnabled()) {
+            try {
+                Object builder = ofVirtual.invoke(null);
+                builder = builderName.invoke(builder, name + "-", 0L);
+                return (ThreadFactory) builderFactory.invoke(builder);
+            } catch (IllegalAccessException | InvocationTargetException ex) {
+                LOGGER.error("Failed to create virtual thread factory, using platform threads.", ex);
+            }
+        }
+        return new ThreadFactoryBuilder().setNameFormat(name + "-%d").build();
+    }
+
+    /**
+     * Create an executor that starts a new virtual thread for each task.
+     *
+     * @param name The base name of the threads.
+     * @return The executor, or null if virtual threads are not enabled.
+     */
+    public static ExecutorService createTaskExecutor(String name) {
+        if (!isEnabled()) {
+            return null;
+        }
+        try {
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, createThreadFactory(name));
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            LOGGER.error("Failed to create virtual thread executor.", ex);
+            return null;
+        }
+    }
+}
@@ -46,6 +46,7 @@ import de.fraunhofer.iosb.ilt.sta.model.core.IdString;
 import de.fraunhofer.iosb.ilt.sta.path.EntityType;
 import de.fraunhofer.iosb.ilt.sta.util.TestHelper;
 import java.io.IOException;
+import java.io.StringReader;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -714,6 +715,49 @@ public class EntityParserTest {
         assertEquals(expectedResult, result);
     }
 
+    @Test
+    public void readObservationDataArrayStreaming_Success() throws IOException {
+        String json = "[\n"
+                + "  {\n"
+                + "    \"Datastream\": {\"@iot.id\": 1},\n"
+                + "    \"components\": [\"phenomenonTime\", \"result\"],\n"
+                + "    \"dataArray@iot.count\": 2,\n"
+                + "    \"dataArray\": [\n"
+                + "      [\"2010-12-23T10:20:00-0700\", 20],\n"
+                + "      [\"2010-12-23T10:21:00-0700\", 30]\n"
+                + "    ]\n"
+                + "  },\n"
+                + "  {\n"
+                + "    \"dataArray\": [\n"
+                + "      [\"2010-12-23T10:20:00-0700\", 65]\n"
+                + "    ],\n"
+                + "    \"components\": [\"phenomenonTime\", \"result\"],\n"
+                + "    \"MultiDatastream\": {\"@iot.id\": 2}\n"
+                + "  }\n"
+                + "]";
+        List<String> components = new ArrayList<>();
+        components.add("phenomenonTime");
+        components.add("result");
+
+        DataArrayValue dav1 = new DataArrayValue(new DatastreamBuilder().setId(new IdLong(1L)).build(), components);
+        dav1.getDataArray().add(Arrays.asList(new Object[]{"2010-12-23T10:20:00-0700", 20}));
+        dav1.getDataArray().add(Arrays.asList(new Object[]{"2010-12-23T10:21:00-0700", 30}));
+        DataArrayValue dav2 = new DataArrayValue(new MultiDatastreamBuilder().setId(new IdLong(2L)).build(), components);
+        dav2.getDataArray().add(Arrays.asList(new Object[]{"2010-12-23T10:20:00-0700", 65}));
+        List<DataArrayValue> expectedResult = new ArrayList<>();
+        expectedResult.add(dav1);
+        expectedResult.add(dav2);
+
+        List<DataArrayValue> result = new ArrayList<>();
+        entityParser.parseObservationDataArray(new StringReader(json), (header, row) -> {
+            if (result.isEmpty() || result.get(result.size() - 1) != header) {
+                result.add(header);
+            }
+            header.getDataArray().add(row);
+        });
+        assertEquals(expectedResult, result);
+    }
+
     @Test
     public void readObservedProperty_Basic_Success() throws IOException {
         String json = "{\n"
@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.metrics;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author scf
+ */
+public class MetricsTest {
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(false);
+    }
+
+    private static String output() {
+        StringWriter writer = new StringWriter();
+        Metrics.write(new PrintWriter(writer));
+        return writer.toString();
+    }
+
+    @Test
+    public void testCounter() {
+        Counter counter = Metrics.counter("test_counter_total", "A test counter.", "queue", "a\"b");
+        counter.increment();
+        counter.add(2);
+        Assert.assertSame(counter, Metrics.counter("test_counter_total", "A test counter.", "queue", "a\"b"));
+        String output = output();
+        Assert.assertTrue(output.contains("# HELP test_counter_total A test counter.\n# TYPE test_counter_total counter\n"));
+        Assert.assertTrue(output.contains("test_counter_total{queue=\"a\\\"b\"} 3\n"));
+    }
+
+    @Test
+    public void testHistogram() {
+        Histogram histogram = Metrics.histogram("test_size_bytes", "A test histogram.", new double[]{10, 100});
+        histogram.observe(5);
+        histogram.observe(50);
+        histogram.observe(500);
+        String output = output();
+        Assert.assertTrue(output.contains("test_size_bytes_bucket{le=\"10.0\"} 1\n"));
+        Assert.assertTrue(output.contains("test_size_bytes_bucket{le=\"100.0\"} 2\n"));
+        Assert.assertTrue(output.contains("test_size_bytes_bucket{le=\"+Inf\"} 3\n"));
+        Assert.assertTrue(output.contains("test_size_bytes_sum 555\n"));
+        Assert.assertTrue(output.contains("test_size_bytes_count 3\n"));
+    }
+
+    @Test
+    public void testTimerOnlyRecordsWhenEnabled() {
+        Timer timer = Metrics.timer("test_duration_seconds", "A test timer.", "type", "READ");
+        Metrics.setEnabled(false);
+        timer.record(Metrics.start());
+        Assert.assertEquals(0, timer.getCount());
+        Metrics.setEnabled(true);
+        timer.record(Metrics.start());
+        Assert.assertEquals(1, timer.getCount());
+        Assert.assertTrue(output().contains("test_duration_seconds_count{type=\"READ\"} 1\n"));
+    }
+
+    @Test
+    public void testGaugeSourceIsReplaced() {
+        Metrics.gauge("test_queue_size", "A test gauge.", () -> 1, "queue", "q");
+        Metrics.gauge("test_queue_size", "A test gauge.", () -> 7, "queue", "q");
+        Assert.assertTrue(output().contains("test_queue_size{queue=\"q\"} 7\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTypeConflict() {
+        Metrics.counter("test_conflict", "A test counter.");
+        Metrics.timer("test_conflict", "A test timer.");
+    }
+}
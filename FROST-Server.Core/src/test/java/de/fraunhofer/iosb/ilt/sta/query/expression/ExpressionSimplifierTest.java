@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.query.expression;
+
+import de.fraunhofer.iosb.ilt.sta.parser.query.QueryParser;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author scf
+ */
+public class ExpressionSimplifierTest {
+
+    private static String simplify(String filter) {
+        Expression expression = QueryParser.parseQuery("$filter=" + filter).getFilter();
+        return ExpressionSimplifier.simplify(expression).toUrl();
+    }
+
+    @Test
+    public void testFoldConstants() {
+        Assert.assertEquals("(result gt 5)", simplify("result gt 2 add 3"));
+        Assert.assertEquals("(result eq 2019)", simplify("result eq year(2019-10-21T12:00:00Z)"));
+        Assert.assertEquals("true", simplify("3 gt 2"));
+        Assert.assertEquals("(result eq (1 eq 1.0))", simplify("result eq (1 eq 1.0)"));
+    }
+
+    @Test
+    public void testFoldTimesInUtc() {
+        Assert.assertEquals("false", simplify("hour(2019-10-21T12:00:00+02:00) eq 12"));
+        Assert.assertEquals("true", simplify("hour(2019-10-21T12:00:00+02:00) eq 10"));
+        Assert.assertEquals("true", simplify("day(2019-10-21T01:00:00+02:00) eq 20"));
+        Assert.assertEquals("true", simplify("2019-10-21T12:00:00+02:00 eq 2019-10-21T10:00:00Z"));
+    }
+
+    @Test
+    public void testNotFoldDifferentFromDatabase() {
+        // The database rounds halves away from zero, java rounds them up.
+        Assert.assertEquals("(round(-2.5) eq -3.0)", simplify("round(-2.5) eq -3.0"));
+        // The database raises an error for these.
+        Assert.assertEquals("((2147483647 add 1) gt 0)", simplify("2147483647 add 1 gt 0"));
+        Assert.assertEquals("((-2147483648 sub 1) lt 0)", simplify("-2147483648 sub 1 lt 0"));
+        Assert.assertEquals("((65536 mul 65536) gt 0)", simplify("65536 mul 65536 gt 0"));
+        Assert.assertEquals("((1 div 0) gt 0)", simplify("1 div 0 gt 0"));
+        Assert.assertEquals("((1.0 div 0.0) gt 0)", simplify("1.0 div 0.0 gt 0"));
+    }
+
+    @Test
+    public void testNotFoldNow() {
+        Assert.assertEquals("(phenomenonTime lt now())", simplify("phenomenonTime lt now()"));
+    }
+
+    @Test
+    public void testBooleanConstants() {
+        Assert.assertEquals("(result gt 5)", simplify("result gt 5 and 3 gt 2"));
+        Assert.assertEquals("false", simplify("result gt 5 and 3 lt 2"));
+        Assert.assertEquals("true", simplify("result gt 5 or 3 gt 2"));
+        Assert.assertEquals("(result gt 5)", simplify("result gt 5 or 3 lt 2"));
+    }
+
+    @Test
+    public void testDoubleNot() {
+        Assert.assertEquals("(result gt 5)", simplify("not (not (result gt 5))"));
+        Assert.assertEquals("( not ((result gt 5)))", simplify("not (result gt 5)"));
+    }
+
+    @Test
+    public void testDuplicates() {
+        Assert.assertEquals("(result gt 5)", simplify("result gt 5 and result gt 5"));
+        Assert.assertEquals("((result gt 5) and (id eq 1))", simplify("result gt 5 and id eq 1 and result gt 5"));
+    }
+
+    @Test
+    public void testRanges() {
+        Assert.assertEquals("((result gt 5) and (result lt 10))", simplify("result gt 3 and result gt 5 and result lt 10 and result le 12"));
+        Assert.assertEquals("((result ge 3) or (result le 12))", simplify("result ge 3 or result gt 5 or result lt 10 or result le 12"));
+        Assert.assertEquals("(result gt 5)", simplify("result ge 5 and result gt 5"));
+        Assert.assertEquals("(result ge 5)", simplify("result ge 5 or result gt 5"));
+        Assert.assertEquals("(phenomenonTime gt 2019-10-21T12:00:00.000Z)", simplify("phenomenonTime gt 2019-10-21T12:00:00Z and phenomenonTime gt 2018-10-21T12:00:00Z"));
+        Assert.assertEquals("((result gt 5) and (id gt 3))", simplify("result gt 5 and id gt 3"));
+        Assert.assertEquals("((result gt 5) and (result gt 'a'))", simplify("result gt 5 and result gt 'a'"));
+    }
+
+}
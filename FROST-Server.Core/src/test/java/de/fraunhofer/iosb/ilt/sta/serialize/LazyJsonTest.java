@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.serialize;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import de.fraunhofer.iosb.ilt.sta.json.deserialize.EntityParser;
+import de.fraunhofer.iosb.ilt.sta.json.serialize.EntityFormatter;
+import de.fraunhofer.iosb.ilt.sta.model.Location;
+import de.fraunhofer.iosb.ilt.sta.model.Observation;
+import de.fraunhofer.iosb.ilt.sta.model.Thing;
+import de.fraunhofer.iosb.ilt.sta.model.builder.LocationBuilder;
+import de.fraunhofer.iosb.ilt.sta.model.builder.ObservationBuilder;
+import de.fraunhofer.iosb.ilt.sta.model.builder.ThingBuilder;
+import de.fraunhofer.iosb.ilt.sta.model.core.IdLong;
+import de.fraunhofer.iosb.ilt.sta.model.ext.LazyJsonMap;
+import de.fraunhofer.iosb.ilt.sta.model.ext.LazyJsonValue;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the lazily parsed JSON values.
+ *
+ * @author scf
+ */
+public class LazyJsonTest {
+
+    @Test
+    public void testUnparsedWrittenVerbatim() throws IOException {
+        String properties = "{\"owner\": \"John Doe\", \"precise\": 1.000000000000000000001}";
+        LazyJsonMap map = LazyJsonMap.fromJson(properties);
+        Thing thing = new ThingBuilder()
+                .setId(new IdLong(1))
+                .setName("Oven")
+                .setProperties(map)
+                .build();
+        String json = EntityFormatter.writeEntity(thing);
+        Assert.assertTrue(json.contains(properties));
+        Assert.assertEquals(properties, map.getRawJson());
+    }
+
+    @Test
+    public void testParsedOnAccess() throws IOException {
+        LazyJsonMap map = LazyJsonMap.fromJson("{\"owner\": \"John Doe\", \"color\": \"Silver\"}");
+        Assert.assertFalse(map.isEmpty());
+        Assert.assertNotNull(map.getRawJson());
+        Assert.assertEquals("John Doe", map.get("owner"));
+        Assert.assertNull(map.getRawJson());
+
+        map.put("color", "Black");
+        Thing thing = new ThingBuilder()
+                .setId(new IdLong(1))
+                .setName("Oven")
+                .setProperties(map)
+                .build();
+        JsonNode tree = EntityFormatter.getObjectMapper().readTree(EntityFormatter.writeEntity(thing));
+        Assert.assertEquals("Black", tree.get("properties").get("color").asText());
+    }
+
+    @Test
+    public void testEmpty() {
+        Assert.assertTrue(LazyJsonMap.fromJson(" { } ").isEmpty());
+        Assert.assertFalse(LazyJsonMap.fromJson("{\"a\": 1}").isEmpty());
+        Assert.assertNull(LazyJsonMap.fromJson(null));
+        Thing thing = new ThingBuilder().setProperties(LazyJsonMap.fromJson("{}")).build();
+        Assert.assertNull(thing.getProperties());
+    }
+
+    @Test
+    public void testEquals() {
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("a", 1);
+        Assert.assertEquals(LazyJsonMap.fromJson("{\"a\": 1}"), LazyJsonMap.fromJson("{\"a\": 1}"));
+        Assert.assertEquals(LazyJsonMap.fromJson("{\"a\": 1}"), LazyJsonMap.fromJson("{\"a\":1}"));
+        Assert.assertEquals(expected, LazyJsonMap.fromJson("{\"a\": 1}"));
+        Assert.assertEquals(LazyJsonMap.fromJson("{\"a\": 1}"), expected);
+        Assert.assertEquals(Arrays.asList(1, 2), LazyJsonValue.fromJson("[1, 2]").getParsed());
+        Assert.assertEquals(LazyJsonValue.fromJson("[1, 2]"), LazyJsonValue.fromJson("[1,2]"));
+    }
+
+    @Test
+    public void testTreeConversion() {
+        Observation observation = new ObservationBuilder()
+                .setId(new IdLong(1))
+                .setResult(LazyJsonValue.fromJson("[1, 2, 3]"))
+                .setParameters(LazyJsonMap.fromJson("{\"a\": {\"b\": 1}}"))
+                .build();
+        JsonNode tree = EntityFormatter.getObjectMapper().valueToTree(observation);
+        Assert.assertTrue(tree.get("result").isArray());
+        Assert.assertEquals(3, tree.get("result").size());
+        Assert.assertEquals(1, tree.get("parameters").get("a").get("b").asInt());
+    }
+
+    @Test
+    public void testLocationWrittenVerbatim() throws IOException {
+        String geoJson = "{\"type\":\"Point\",\"coordinates\":[8.4259727,49.0145794]}";
+        Location location = new LocationBuilder()
+                .setId(new IdLong(1))
+                .setName("Office")
+                .setEncodingType("application/vnd.geo+json")
+                .setLocation(new LazyJsonValue(geoJson))
+                .build();
+        String json = EntityFormatter.writeEntity(location);
+        Assert.assertTrue(json.contains(geoJson));
+
+        LazyJsonValue parsed = new LazyJsonValue(geoJson);
+        parsed.getParsed();
+        location.setLocation(parsed);
+        JsonNode tree = EntityParser.getSimpleObjectMapper().readTree(EntityFormatter.writeEntity(location));
+        Assert.assertEquals("Point", tree.get("location").get("type").asText());
+        Assert.assertEquals(2, tree.get("location").get("coordinates").size());
+    }
+
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.service;
+
+import de.fraunhofer.iosb.ilt.sta.messagebus.EntityChangedMessage;
+import de.fraunhofer.iosb.ilt.sta.model.Datastream;
+import de.fraunhofer.iosb.ilt.sta.model.Observation;
+import de.fraunhofer.iosb.ilt.sta.model.core.IdLong;
+import de.fraunhofer.iosb.ilt.sta.parser.path.PathParser;
+import de.fraunhofer.iosb.ilt.sta.parser.query.QueryParser;
+import de.fraunhofer.iosb.ilt.sta.path.EntityType;
+import de.fraunhofer.iosb.ilt.sta.query.Query;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author scf
+ */
+public class EntityVersionsTest {
+
+    private EntityVersions versions;
+
+    @Before
+    public void setUp() {
+        versions = new EntityVersions(1000);
+    }
+
+    private String etag(String path, String query) {
+        Query parsedQuery = QueryParser.parseQuery(query);
+        return versions.toETag(versions.getVersion(PathParser.parsePath("", path), parsedQuery));
+    }
+
+    @Test
+    public void testEntityVersion() {
+        String thing1 = etag("/Things(1)", null);
+        String thing2 = etag("/Things(2)", null);
+        String things = etag("/Things", null);
+        versions.bump(EntityType.THING, 1L);
+        Assert.assertNotEquals(thing1, etag("/Things(1)", null));
+        Assert.assertEquals(thing2, etag("/Things(2)", null));
+        Assert.assertNotEquals(things, etag("/Things", null));
+    }
+
+    @Test
+    public void testDependencies() {
+        String expand = etag("/Things(1)", "$expand=Datastreams");
+        String filter = etag("/Things", "$filter=Datastreams/name eq 'a'");
+        String nav = etag("/Things(1)/Datastreams", null);
+        String plain = etag("/Things(1)", null);
+        versions.bump(EntityType.DATASTREAM, 5L);
+        Assert.assertNotEquals(expand, etag("/Things(1)", "$expand=Datastreams"));
+        Assert.assertNotEquals(filter, etag("/Things", "$filter=Datastreams/name eq 'a'"));
+        Assert.assertNotEquals(nav, etag("/Things(1)/Datastreams", null));
+        Assert.assertEquals(plain, etag("/Things(1)", null));
+    }
+
+    @Test
+    public void testObservationChangesDatastream() {
+        String datastream6 = etag("/Datastreams(6)", null);
+        String datastream5 = etag("/Datastreams(5)", null);
+        String multiDatastream6 = etag("/MultiDatastreams(6)", null);
+        Observation observation = new Observation(new IdLong(100));
+        observation.setDatastream(new Datastream(new IdLong(6)));
+        versions.messageReceived(new EntityChangedMessage()
+                .setEventType(EntityChangedMessage.Type.CREATE)
+                .setEntity(observation));
+        Assert.assertNotEquals(datastream6, etag("/Datastreams(6)", null));
+        Assert.assertEquals(datastream5, etag("/Datastreams(5)", null));
+        Assert.assertEquals(multiDatastream6, etag("/MultiDatastreams(6)", null));
+    }
+
+    @Test
+    public void testEvictedVersionDoesNotGoBack() {
+        versions = new EntityVersions(10);
+        String thing1 = etag("/Things(1)", null);
+        versions.bump(EntityType.THING, 1L);
+        String changed = etag("/Things(1)", null);
+        for (long id = 2; id < 1000; id++) {
+            versions.bump(EntityType.THING, id);
+        }
+        String evicted = etag("/Things(1)", null);
+        Assert.assertNotEquals(thing1, evicted);
+        Assert.assertNotEquals(changed, evicted);
+    }
+
+    @Test
+    public void testMatches() {
+        String etag = "W/\"abc-1\"";
+        Assert.assertTrue(EntityVersions.matches(etag, etag));
+        Assert.assertTrue(EntityVersions.matches("\"x\", \"abc-1\"", etag));
+        Assert.assertTrue(EntityVersions.matches("*", etag));
+        Assert.assertFalse(EntityVersions.matches("W/\"abc-2\"", etag));
+        Assert.assertFalse(EntityVersions.matches(null, etag));
+    }
+
+    @Test
+    public void testExpireChangesAllVersions() {
+        String thing1 = etag("/Things(1)", null);
+        String things = etag("/Things", null);
+        versions.expire();
+        Assert.assertNotEquals(thing1, etag("/Things(1)", null));
+        Assert.assertNotEquals(things, etag("/Things", null));
+    }
+
+    @Test
+    public void testNotModifiedSince() {
+        String lastModified = "Mon, 21 Oct 2019 10:00:00 GMT";
+        Assert.assertTrue(EntityVersions.notModifiedSince(lastModified, lastModified));
+        Assert.assertTrue(EntityVersions.notModifiedSince("Mon, 21 Oct 2019 10:00:01 GMT", lastModified));
+        Assert.assertFalse(EntityVersions.notModifiedSince("Mon, 21 Oct 2019 09:59:59 GMT", lastModified));
+        Assert.assertFalse(EntityVersions.notModifiedSince("yesterday", lastModified));
+        Assert.assertFalse(EntityVersions.notModifiedSince(null, lastModified));
+        Assert.assertFalse(EntityVersions.notModifiedSince(lastModified, null));
+    }
+
+    @Test
+    public void testLastModifiedOnlyWhenStable() {
+        long now = System.currentTimeMillis();
+        Assert.assertFalse(EntityVersions.hasStableTime(new EntityVersions.Version(1, now + 1000)));
+        Assert.assertTrue(EntityVersions.hasStableTime(new EntityVersions.Version(1, now - 1000)));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.service;
+
+import de.fraunhofer.iosb.ilt.sta.messagebus.EntityChangedMessage;
+import de.fraunhofer.iosb.ilt.sta.model.Datastream;
+import de.fraunhofer.iosb.ilt.sta.model.Observation;
+import de.fraunhofer.iosb.ilt.sta.model.Thing;
+import de.fraunhofer.iosb.ilt.sta.model.core.IdLong;
+import de.fraunhofer.iosb.ilt.sta.parser.path.PathParser;
+import de.fraunhofer.iosb.ilt.sta.parser.query.QueryParser;
+import de.fraunhofer.iosb.ilt.sta.path.NavigationProperty;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author scf
+ */
+public class ResponseCacheTest {
+
+    private ResponseCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ResponseCache(1, 0);
+    }
+
+    private static ServiceRequest request(String path, String query) {
+        return new ServiceRequestBuilder()
+                .withRequestType(RequestType.READ)
+                .withUrlPath(path)
+                .withUrlQuery(query)
+                .build();
+    }
+
+    private ResponseCache.Ticket prepare(String path, String query) {
+        return cache.prepare(request(path, query), PathParser.parsePath("", path), QueryParser.parseQuery(query));
+    }
+
+    private void store(String path, String query) {
+        cache.put(prepare(path, query), new ServiceResponse<>(200, null, null, path));
+    }
+
+    private boolean isCached(String path, String query) {
+        return cache.get(request(path, query)) != null;
+    }
+
+    private static EntityChangedMessage observationCreated(long datastreamId) {
+        Observation observation = new Observation(new IdLong(100));
+        observation.setDatastream(new Datastream(new IdLong(datastreamId)));
+        return new EntityChangedMessage()
+                .setEventType(EntityChangedMessage.Type.CREATE)
+                .setEntity(observation);
+    }
+
+    @Test
+    public void testPreciseInvalidation() {
+        store("/Datastreams(5)/Observations", null);
+        store("/Datastreams(6)/Observations", null);
+        store("/Datastreams(6)", null);
+        store("/Datastreams(5)", null);
+        store("/Things(1)", "$expand=Datastreams");
+        store("/Observations", "$top=2");
+        cache.messageReceived(observationCreated(6));
+        Assert.assertTrue(isCached("/Datastreams(5)/Observations", null));
+        Assert.assertTrue(isCached("/Datastreams(5)", null));
+        Assert.assertFalse(isCached("/Datastreams(6)/Observations", null));
+        Assert.assertFalse(isCached("/Datastreams(6)", null));
+        Assert.assertFalse(isCached("/Things(1)", "$expand=Datastreams"));
+        Assert.assertFalse(isCached("/Observations", "$top=2"));
+    }
+
+    @Test
+    public void testMovedEntityInvalidatesAllAnchors() {
+        store("/Things(1)", "$expand=Datastreams");
+        store("/Things(2)/Datastreams", null);
+        store("/Things(3)", null);
+        store("/Sensors", null);
+        Datastream datastream = new Datastream(new IdLong(6));
+        datastream.setThing(new Thing(new IdLong(2)));
+        cache.messageReceived(new EntityChangedMessage()
+                .setEventType(EntityChangedMessage.Type.UPDATE)
+                .setEntity(datastream)
+                .addNpField(NavigationProperty.THING));
+        Assert.assertFalse(isCached("/Things(1)", "$expand=Datastreams"));
+        Assert.assertFalse(isCached("/Things(2)/Datastreams", null));
+        Assert.assertTrue(isCached("/Things(3)", null));
+        Assert.assertTrue(isCached("/Sensors", null));
+    }
+
+    @Test
+    public void testStaleEntryIsReplaced() {
+        store("/Observations", "$top=2");
+        cache.messageReceived(observationCreated(6));
+        Assert.assertFalse(isCached("/Observations", "$top=2"));
+        store("/Observations", "$top=2");
+        Assert.assertTrue(isCached("/Observations", "$top=2"));
+    }
+
+    @Test
+    public void testChangeDuringRequestIsNotCached() {
+        ResponseCache.Ticket ticket = prepare("/Datastreams(6)/Observations", null);
+        cache.messageReceived(observationCreated(6));
+        cache.put(ticket, new ServiceResponse<>(200, null, null, "old"));
+        Assert.assertFalse(isCached("/Datastreams(6)/Observations", null));
+    }
+
+    @Test
+    public void testKeyIgnoresParameterOrder() {
+        store("/Things", "$top=1&$skip=2");
+        Assert.assertTrue(isCached("/Things", "$skip=2&$top=1"));
+        Assert.assertEquals(1, cache.getHitCount());
+    }
+}
@@ -3,11 +3,14 @@ package de.fraunhofer.iosb.ilt.sta.settings;
 import de.fraunhofer.iosb.ilt.sta.messagebus.MqttMessageBus;
 import static de.fraunhofer.iosb.ilt.sta.messagebus.MqttMessageBus.TAG_MAX_IN_FLIGHT;
 import static de.fraunhofer.iosb.ilt.sta.messagebus.MqttMessageBus.TAG_MQTT_BROKER;
+import static de.fraunhofer.iosb.ilt.sta.messagebus.MqttMessageBus.TAG_OVERFLOW_POLICY;
+import static de.fraunhofer.iosb.ilt.sta.messagebus.MqttMessageBus.TAG_OVERFLOW_TIMEOUT;
 import static de.fraunhofer.iosb.ilt.sta.messagebus.MqttMessageBus.TAG_QOS_LEVEL;
 import static de.fraunhofer.iosb.ilt.sta.messagebus.MqttMessageBus.TAG_RECV_QUEUE_SIZE;
 import static de.fraunhofer.iosb.ilt.sta.messagebus.MqttMessageBus.TAG_RECV_WORKER_COUNT;
 import static de.fraunhofer.iosb.ilt.sta.messagebus.MqttMessageBus.TAG_SEND_QUEUE_SIZE;
 import static de.fraunhofer.iosb.ilt.sta.messagebus.MqttMessageBus.TAG_SEND_WORKER_COUNT;
+import static de.fraunhofer.iosb.ilt.sta.messagebus.MqttMessageBus.TAG_SPILL_SIZE;
 import static de.fraunhofer.iosb.ilt.sta.messagebus.MqttMessageBus.TAG_TOPIC_NAME;
 import java.util.HashSet;
 import java.util.Map;
@@ -103,12 +106,18 @@ public class ConfigDefaultsTest {
         tags.add(TAG_MAX_IN_FLIGHT);
         tags.add(TAG_MQTT_BROKER);
         tags.add(TAG_TOPIC_NAME);
+        tags.add(TAG_OVERFLOW_POLICY);
+        tags.add(TAG_OVERFLOW_TIMEOUT);
+        tags.add(TAG_SPILL_SIZE);
         assertTrue(tags.equals(b.configTags()));
 
         // Test configDefaults
         Map<String, String> configDefaults = b.configDefaults();
         assertEquals("tcp://127.0.0.1:1884", configDefaults.get(TAG_MQTT_BROKER));
         assertEquals("FROST-Bus", configDefaults.get(TAG_TOPIC_NAME));
+        assertEquals("DROP", configDefaults.get(TAG_OVERFLOW_POLICY));
+        assertEquals("1000", configDefaults.get(TAG_OVERFLOW_TIMEOUT));
+        assertEquals("64", configDefaults.get(TAG_SPILL_SIZE));
         assertEquals("2", configDefaults.get(TAG_SEND_WORKER_COUNT));
         assertEquals("2", configDefaults.get(TAG_RECV_WORKER_COUNT));
         assertEquals("100", configDefaults.get(TAG_SEND_QUEUE_SIZE));
@@ -175,11 +184,17 @@ public class ConfigDefaultsTest {
         tags.add(TAG_MAX_IN_FLIGHT);
         tags.add(TAG_MQTT_BROKER);
         tags.add(TAG_TOPIC_NAME);
+        tags.add(TAG_OVERFLOW_POLICY);
+        tags.add(TAG_OVERFLOW_TIMEOUT);
+        tags.add(TAG_SPILL_SIZE);
         assertTrue(tags.equals(ConfigUtils.getConfigTags(c)));
         // Test configDefaults
         Map<String, String> configDefaults = ConfigUtils.getConfigDefaults(c);
         assertEquals("tcp://127.0.0.1:1884", configDefaults.get(TAG_MQTT_BROKER));
         assertEquals("FROST-Bus", configDefaults.get(TAG_TOPIC_NAME));
+        assertEquals("DROP", configDefaults.get(TAG_OVERFLOW_POLICY));
+        assertEquals("1000", configDefaults.get(TAG_OVERFLOW_TIMEOUT));
+        assertEquals("64", configDefaults.get(TAG_SPILL_SIZE));
         assertEquals("2", configDefaults.get(TAG_SEND_WORKER_COUNT));
         assertEquals("2", configDefaults.get(TAG_RECV_WORKER_COUNT));
         assertEquals("100", configDefaults.get(TAG_SEND_QUEUE_SIZE));
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.util;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author scf
+ */
+public class JwtVerifierTest {
+
+    private static final String ISSUER = "http://localhost/auth/realms/test";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private KeyPair keyPair;
+    private String kid;
+    private final AtomicInteger loadCount = new AtomicInteger();
+    private JwtVerifier verifier;
+
+    @Before
+    public void setUp() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+        kid = "key1";
+        loadCount.set(0);
+        verifier = new JwtVerifier(ISSUER, "frost", false, this::jwks, 3600, 0, 100, 0);
+    }
+
+    private String jwks() {
+        loadCount.incrementAndGet();
+        RSAPublicKey key = (RSAPublicKey) keyPair.getPublic();
+        return "{\"keys\":[{\"kid\":\"" + kid + "\",\"kty\":\"RSA\",\"alg\":\"RS256\",\"use\":\"sig\""
+                + ",\"n\":\"" + ENCODER.encodeToString(key.getModulus().toByteArray())
+                + "\",\"e\":\"" + ENCODER.encodeToString(key.getPublicExponent().toByteArray()) + "\"}]}";
+    }
+
+    private String token(String issuer, long expiresIn) throws GeneralSecurityException {
+        return token(issuer, expiresIn, "Bearer", "frost", "\"account\"");
+    }
+
+    private String token(String issuer, long expiresIn, String type, String azp, String aud) throws GeneralSecurityException {
+        long now = System.currentTimeMillis() / 1000;
+        String header = "{\"alg\":\"RS256\",\"typ\":\"JWT\",\"kid\":\"" + kid + "\"}";
+        String payload = "{\"iss\":\"" + issuer + "\",\"sub\":\"1234\",\"preferred_username\":\"alice\""
+                + ",\"typ\":\"" + type + "\",\"azp\":\"" + azp + "\",\"aud\":" + aud
+                + ",\"exp\":" + (now + expiresIn)
+                + ",\"realm_access\":{\"roles\":[\"read\"]}"
+                + ",\"resource_access\":{\"frost\":{\"roles\":[\"create\"]},\"other\":{\"roles\":[\"admin\"]}}}";
+        String content = ENCODER.encodeToString(header.getBytes(StringHelper.UTF8))
+                + "." + ENCODER.encodeToString(payload.getBytes(StringHelper.UTF8));
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(content.getBytes(StringHelper.UTF8));
+        return content + "." + ENCODER.encodeToString(signature.sign());
+    }
+
+    @Test
+    public void testValidToken() throws GeneralSecurityException {
+        JwtVerifier.Claims claims = verifier.verify(token(ISSUER, 60));
+        Assert.assertNotNull(claims);
+        Assert.assertEquals("alice", claims.getUserName());
+        Assert.assertTrue(claims.getRoles().contains("read"));
+        Assert.assertFalse(claims.getRoles().contains("create"));
+        Assert.assertFalse(claims.getRoles().contains("admin"));
+    }
+
+    @Test
+    public void testResourceRoleMappings() throws GeneralSecurityException {
+        verifier = new JwtVerifier(ISSUER, "frost", true, this::jwks, 3600, 0, 100, 0);
+        JwtVerifier.Claims claims = verifier.verify(token(ISSUER, 60));
+        Assert.assertNotNull(claims);
+        Assert.assertFalse(claims.getRoles().contains("read"));
+        Assert.assertTrue(claims.getRoles().contains("create"));
+        Assert.assertFalse(claims.getRoles().contains("admin"));
+    }
+
+    @Test
+    public void testAudience() throws GeneralSecurityException {
+        Assert.assertNotNull(verifier.verify(token(ISSUER, 60, "Bearer", "other", "[\"account\",\"frost\"]")));
+        Assert.assertNotNull(verifier.verify(token(ISSUER, 60, "Bearer", "other", "\"frost\"")));
+    }
+
+    @Test
+    public void testWrongTypeIsRejected() throws GeneralSecurityException {
+        Assert.assertNull(verifier.verify(token(ISSUER, 60, "ID", "frost", "\"frost\"")));
+    }
+
+    @Test
+    public void testOtherClientIsRejected() throws GeneralSecurityException {
+        Assert.assertNull(verifier.verify(token(ISSUER, 60, "Bearer", "other", "\"account\"")));
+        Assert.assertNull(verifier.verify(token(ISSUER, 60, "Bearer", "other", "[\"account\",\"other\"]")));
+    }
+
+    @Test
+    public void testInvalidTokens() throws GeneralSecurityException {
+        Assert.assertNull(verifier.verify(token(ISSUER, -60)));
+        Assert.assertNull(verifier.verify(token("http://other/realm", 60)));
+        String valid = token(ISSUER, 60);
+        String tampered = valid.substring(0, valid.length() - 4) + (valid.endsWith("AAAA") ? "BBBB" : "AAAA");
+        Assert.assertNull(verifier.verify(tampered));
+        Assert.assertNull(verifier.verify("user:password"));
+    }
+
+    @Test
+    public void testKeyRotation() throws GeneralSecurityException {
+        Assert.assertNotNull(verifier.verify(token(ISSUER, 60)));
+        Assert.assertEquals(1, loadCount.get());
+        setUpRotatedKey();
+        Assert.assertNotNull(verifier.verify(token(ISSUER, 60)));
+        Assert.assertEquals(2, loadCount.get());
+    }
+
+    private void setUpRotatedKey() throws GeneralSecurityException {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        keyPair = generator.generateKeyPair();
+        kid = "key2";
+    }
+
+    @Test
+    public void testVerifiedTokensAreCached() throws GeneralSecurityException {
+        String token = token(ISSUER, 60);
+        JwtVerifier.Claims first = verifier.verify(token);
+        Assert.assertSame(first, verifier.verify(token));
+        Assert.assertEquals(1, loadCount.get());
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author scf
+ */
+public class MappedRingBufferTest {
+
+    private Path file;
+    private MappedRingBuffer buffer;
+
+    @Before
+    public void setUp() throws IOException {
+        file = Files.createTempFile("FROST-test", ".spill");
+        buffer = new MappedRingBuffer(file, 32);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        buffer.close();
+    }
+
+    @Test
+    public void testFifo() {
+        Assert.assertTrue(buffer.isEmpty());
+        Assert.assertTrue(buffer.offer(new byte[]{1, 2}));
+        Assert.assertTrue(buffer.offer(new byte[]{3}));
+        Assert.assertEquals(2, buffer.size());
+        Assert.assertArrayEquals(new byte[]{1, 2}, buffer.poll());
+        Assert.assertArrayEquals(new byte[]{3}, buffer.poll());
+        Assert.assertNull(buffer.poll());
+        Assert.assertEquals(0, buffer.getUsedBytes());
+    }
+
+    @Test
+    public void testFullAndWrap() {
+        // Each record takes 4 header bytes + 8 data bytes.
+        byte[] a = new byte[]{1, 1, 1, 1, 1, 1, 1, 1};
+        byte[] b = new byte[]{2, 2, 2, 2, 2, 2, 2, 2};
+        byte[] c = new byte[]{3, 3, 3, 3, 3, 3, 3, 3};
+        Assert.assertTrue(buffer.offer(a));
+        Assert.assertTrue(buffer.offer(b));
+        Assert.assertFalse(buffer.offer(c));
+        Assert.assertArrayEquals(a, buffer.poll());
+        // 8 bytes left at the end, so c has to wrap to the start.
+        Assert.assertTrue(buffer.offer(c));
+        Assert.assertArrayEquals(b, buffer.poll());
+        Assert.assertArrayEquals(c, buffer.poll());
+        Assert.assertTrue(buffer.isEmpty());
+        Assert.assertFalse(buffer.offer(new byte[40]));
+    }
+
+    @Test
+    public void testSpillKeepsOrder() throws IOException, InterruptedException {
+        BlockingQueue<Integer> queue = new ArrayBlockingQueue<>(2);
+        QueueOverflowHandler.Codec<Integer> codec = new QueueOverflowHandler.Codec<Integer>() {
+            @Override
+            public byte[] encode(Integer item) {
+                return new byte[]{item.byteValue()};
+            }
+
+            @Override
+            public Integer decode(byte[] data) {
+                return (int) data[0];
+            }
+        };
+        QueueOverflowHandler<Integer> handler = new QueueOverflowHandler<>(queue, "test", codec, file.getParent().toString(), 1024);
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(handler.offer(i));
+        }
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(Integer.valueOf(i), queue.poll(1, TimeUnit.SECONDS));
+        }
+        handler.stop(1, TimeUnit.SECONDS);
+        Assert.assertTrue(handler.isSpillEmpty());
+        Assert.assertEquals(0, handler.getDroppedCount());
+    }
+
+    @Test
+    public void testSpillSizeInBytes() {
+        Assert.assertEquals(64 * 1024 * 1024, QueueOverflowHandler.spillSizeInBytes(64));
+        Assert.assertEquals(2047 * 1024 * 1024, QueueOverflowHandler.spillSizeInBytes(2047));
+        for (int megabytes : new int[]{0, 2048, 4096}) {
+            try {
+                QueueOverflowHandler.spillSizeInBytes(megabytes);
+                Assert.fail("Expected an exception for " + megabytes + " MB.");
+            } catch (IllegalArgumentException ex) {
+                // Expected.
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author scf
+ */
+public class ProcessorHelperTest {
+
+    private static final int KEY_COUNT = 7;
+    private static final int ITEM_COUNT = 1000;
+
+    @Test
+    public void testOrderedProcessorsKeepOrderPerKey() throws InterruptedException {
+        BlockingQueue<int[]> queue = new ArrayBlockingQueue<>(100);
+        Map<Integer, List<Integer>> received = new HashMap<>();
+        for (int key = 0; key < KEY_COUNT; key++) {
+            received.put(key, new ArrayList<>());
+        }
+        CountDownLatch done = new CountDownLatch(ITEM_COUNT);
+        ExecutorService service = ProcessorHelper.createOrderedProcessors(
+                4,
+                queue,
+                item -> item[0],
+                item -> {
+                    List<Integer> list = received.get(item[0]);
+                    synchronized (list) {
+                        list.add(item[1]);
+                    }
+                    done.countDown();
+                },
+                "test");
+        for (int i = 0; i < ITEM_COUNT; i++) {
+            queue.put(new int[]{i % KEY_COUNT, i});
+        }
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        ProcessorHelper.shutdownProcessors(service, queue, 1, TimeUnit.SECONDS);
+
+        for (List<Integer> list : received.values()) {
+            for (int i = 1; i < list.size(); i++) {
+                Assert.assertTrue("Items out of order: " + list, list.get(i - 1) < list.get(i));
+            }
+        }
+    }
+}
@@ -19,12 +19,16 @@ package de.fraunhofer.iosb.ilt.frostserver.http.common;
 
 import com.google.common.base.Strings;
 import de.fraunhofer.iosb.ilt.sta.messagebus.MessageBusFactory;
+import de.fraunhofer.iosb.ilt.sta.metrics.Metrics;
 import de.fraunhofer.iosb.ilt.sta.persistence.PersistenceManagerFactory;
+import de.fraunhofer.iosb.ilt.sta.service.EntityVersions;
+import de.fraunhofer.iosb.ilt.sta.service.ResponseCache;
 import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
 import static de.fraunhofer.iosb.ilt.sta.settings.CoreSettings.TAG_CORE_SETTINGS;
 import de.fraunhofer.iosb.ilt.sta.settings.Settings;
 import de.fraunhofer.iosb.ilt.sta.util.AuthProvider;
 import de.fraunhofer.iosb.ilt.sta.util.GitVersionInfo;
+import de.fraunhofer.iosb.ilt.sta.util.VirtualThreads;
 import java.util.EnumSet;
 import java.util.Enumeration;
 import java.util.Properties;
@@ -76,11 +80,15 @@ public abstract class AbstractContextListener implements ServletContextListener
 
             initCoreSettings(context);
             context.setAttribute(TAG_CORE_SETTINGS, coreSettings);
+            VirtualThreads.init(coreSettings);
+            Metrics.init(coreSettings);
 
             setUpCorsFilter(context, coreSettings);
 
             PersistenceManagerFactory.init(coreSettings);
             MessageBusFactory.init(coreSettings);
+            EntityVersions.init(coreSettings);
+            ResponseCache.init(coreSettings);
 
             setupAuthFilter(context, coreSettings);
         }
@@ -107,6 +115,7 @@ public abstract class AbstractContextListener implements ServletContextListener
                 String filterName = "CorsFilter";
 
                 FilterRegistration.Dynamic corsFilter = servletContext.addFilter(filterName, "org.apache.catalina.filters.CorsFilter");
+                corsFilter.setAsyncSupported(true);
                 corsFilter.addMappingForUrlPatterns(EnumSet.of(DispatcherType.REQUEST, DispatcherType.FORWARD), true, "/*");
 
                 String allowedOrigins = httpSettings.get(CoreSettings.TAG_CORS_ALLOWED_ORIGINS, CoreSettings.class);
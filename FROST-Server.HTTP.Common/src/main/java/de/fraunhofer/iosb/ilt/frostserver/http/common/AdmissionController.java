@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.frostserver.http.common;
+
+import de.fraunhofer.iosb.ilt.sta.settings.ConfigDefaults;
+import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
+import de.fraunhofer.iosb.ilt.sta.settings.Settings;
+import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueBoolean;
+import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueInt;
+import de.fraunhofer.iosb.ilt.sta.util.UrlHelper;
+import de.fraunhofer.iosb.ilt.sta.util.VirtualThreads;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of requests that are handled at the same time. Requests
+ * are divided in categories, each with their own limit on the number of
+ * active requests, and on the number of requests waiting to become active.
+ * Requests that do not fit in the waiting queue are rejected, so the server
+ * sheds load early, instead of letting all requests slow down.
+ *
+ * @author scf
+ */
+public class AdmissionController implements ConfigDefaults {
+
+    @DefaultValueBoolean(false)
+    public static final String TAG_ENABLE = "admission.enable";
+    @DefaultValueInt(5)
+    public static final String TAG_RETRY_AFTER = "admission.retryAfter";
+    @DefaultValueInt(50)
+    public static final String TAG_READ_MAX_ACTIVE = "admission.read.maxActive";
+    @DefaultValueInt(200)
+    public static final String TAG_READ_QUEUE_SIZE = "admission.read.queueSize";
+    @DefaultValueInt(20)
+    public static final String TAG_WRITE_MAX_ACTIVE = "admission.write.maxActive";
+    @DefaultValueInt(100)
+    public static final String TAG_WRITE_QUEUE_SIZE = "admission.write.queueSize";
+    @DefaultValueInt(4)
+    public static final String TAG_BATCH_MAX_ACTIVE = "admission.batch.maxActive";
+    @DefaultValueInt(20)
+    public static final String TAG_BATCH_QUEUE_SIZE = "admission.batch.queueSize";
+    @DefaultValueInt(8)
+    public static final String TAG_EXPENSIVE_MAX_ACTIVE = "admission.expensive.maxActive";
+    @DefaultValueInt(20)
+    public static final String TAG_EXPENSIVE_QUEUE_SIZE = "admission.expensive.queueSize";
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdmissionController.class);
+    /**
+     * Matches the $expand parameter name, at the start of the query or after
+     * another parameter.
+     */
+    private static final Pattern EXPAND_PARAMETER = Pattern.compile("(^|&)\\$expand=", Pattern.CASE_INSENSITIVE);
+    /**
+     * Matches calls to spatial functions, like st_within( or geo.distance(.
+     */
+    private static final Pattern SPATIAL_FUNCTION = Pattern.compile("\\b(st_|geo\\.)\\w+\\s*\\(", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * The categories of requests, each with their own limits.
+     */
+    public enum Category {
+        /**
+         * Normal GET requests.
+         */
+        READ,
+        /**
+         * POST, PUT, PATCH and DELETE requests.
+         */
+        WRITE,
+        /**
+         * $batch requests.
+         */
+        BATCH,
+        /**
+         * GET requests that are likely to be expensive, like those with an
+         * $expand or a spatial filter.
+         */
+        EXPENSIVE
+    }
+
+    private final Map<Category, ThreadPoolExecutor> executors = new EnumMap<>(Category.class);
+    private final Map<Category, AtomicLong> rejected = new EnumMap<>(Category.class);
+    private final int retryAfter;
+
+    public AdmissionController(CoreSettings coreSettings) {
+        Settings httpSettings = coreSettings.getHttpSettings();
+        retryAfter = httpSettings.getInt(TAG_RETRY_AFTER, getClass());
+        addCategory(Category.READ,
+                httpSettings.getInt(TAG_READ_MAX_ACTIVE, getClass()),
+                httpSettings.getInt(TAG_READ_QUEUE_SIZE, getClass()));
+        addCategory(Category.WRITE,
+                httpSettings.getInt(TAG_WRITE_MAX_ACTIVE, getClass()),
+                httpSettings.getInt(TAG_WRITE_QUEUE_SIZE, getClass()));
+        addCategory(Category.BATCH,
+                httpSettings.getInt(TAG_BATCH_MAX_ACTIVE, getClass()),
+                httpSettings.getInt(TAG_BATCH_QUEUE_SIZE, getClass()));
+        addCategory(Category.EXPENSIVE,
+                httpSettings.getInt(TAG_EXPENSIVE_MAX_ACTIVE, getClass()),
+                httpSettings.getInt(TAG_EXPENSIVE_QUEUE_SIZE, getClass()));
+    }
+
+    /**
+     * Checks if admission control is enabled in the given settings.
+     *
+     * @param coreSettings The settings to check.
+     * @return true if admission control is enabled.
+     */
+    public static boolean isEnabled(CoreSettings coreSettings) {
+        return coreSettings.getHttpSettings().getBoolean(TAG_ENABLE, AdmissionController.class);
+    }
+
+    private void addCategory(Category category, int maxActive, int queueSize) {
+        if (maxActive < 1) {
+            throw new IllegalArgumentException("maxActive for " + category + " must be at least 1.");
+        }
+        BlockingQueue<Runnable> queue;
+        if (queueSize > 0) {
+            queue = new ArrayBlockingQueue<>(queueSize);
+        } else {
+            queue = new SynchronousQueue<>();
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                maxActive,
+                maxActive,
+                60, TimeUnit.SECONDS,
+                queue,
+                VirtualThreads.createThreadFactory("Http" + category),
+                new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        executors.put(category, executor);
+        rejected.put(category, new AtomicLong());
+        LOGGER.info("Admission control for {} requests: {} active, {} waiting.", category, maxActive, queueSize);
+    }
+
+    /**
+     * Determine the category of a request.
+     *
+     * @param method The HTTP method of the request.
+     * @param pathInfo The path of the request, relative to the servlet.
+     * @param query The query string of the request, may be null.
+     * @return The category of the request.
+     */
+    public static Category categorise(String method, String pathInfo, String query) {
+        switch (method) {
+            case "GET":
+            case "HEAD":
+            case "OPTIONS":
+                if (isExpensive(query)) {
+                    return Category.EXPENSIVE;
+                }
+                return Category.READ;
+
+            case "POST":
+                if ("/$batch".equals(pathInfo)) {
+                    return Category.BATCH;
+                }
+                return Category.WRITE;
+
+            default:
+                return Category.WRITE;
+        }
+    }
+
+    private static boolean isExpensive(String query) {
+        if (query == null) {
+            return false;
+        }
+        String decoded;
+        try {
+            decoded = UrlHelper.urlDecode(query);
+        } catch (IllegalArgumentException ex) {
+            // Malformed escapes, the request will fail later anyway.
+            decoded = query;
+        }
+        return EXPAND_PARAMETER.matcher(decoded).find()
+                || SPATIAL_FUNCTION.matcher(decoded).find();
+    }
+
+    /**
+     * Run the given task when there is room for it in the given category.
+     *
+     * @param category The category of the request.
+     * @param task The task that handles the request.
+     * @return false if the request was rejected, because too many requests of
+     * this category are waiting.
+     */
+    public boolean submit(Category category, Runnable task) {
+        try {
+            executors.get(category).execute(task);
+            return true;
+        } catch (RejectedExecutionException ex) {
+            long count = rejected.get(category).incrementAndGet();
+            LOGGER.debug("Rejected {} request, {} in total.", category, count);
+            return false;
+        }
+    }
+
+    /**
+     * @return The number of seconds clients should wait before retrying a
+     * rejected request.
+     */
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+
+    /**
+     * @param category The category to get the count for.
+     * @return The number of rejected requests in the given category.
+     */
+    public long getRejectedCount(Category category) {
+        return rejected.get(category).get();
+    }
+
+    /**
+     * Stop accepting requests. Requests that are already accepted are still
+     * handled.
+     */
+    public void stop() {
+        for (ThreadPoolExecutor executor : executors.values()) {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.frostserver.http.common;
+
+import com.google.common.base.Strings;
+import de.fraunhofer.iosb.ilt.sta.parser.path.PathParser;
+import de.fraunhofer.iosb.ilt.sta.parser.query.QueryParser;
+import de.fraunhofer.iosb.ilt.sta.path.ResourcePath;
+import de.fraunhofer.iosb.ilt.sta.persistence.PersistenceManager;
+import de.fraunhofer.iosb.ilt.sta.persistence.PersistenceManagerFactory;
+import de.fraunhofer.iosb.ilt.sta.query.Query;
+import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
+import static de.fraunhofer.iosb.ilt.sta.settings.CoreSettings.TAG_CORE_SETTINGS;
+import de.fraunhofer.iosb.ilt.sta.util.UrlHelper;
+import java.io.IOException;
+import java.io.PrintWriter;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shows the execution plan of the database query for a SensorThings URL, as
+ * given in the url parameter. For example:
+ * <pre>
+ * /Explain?url=/v1.0/Things?$filter=name eq 'x'
+ * </pre> The query is executed to get the plan, and the transaction is
+ * rolled back afterwards. Only available to admin users, and therefore not
+ * available at all when no auth provider is configured.
+ *
+ * @author scf
+ */
+@WebServlet(name = "ExplainQuery", urlPatterns = {"/Explain"})
+public class ExplainQuery extends HttpServlet {
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExplainQuery.class);
+    private static final String DESCRIPTION = "Query plan servlet.";
+    private static final String PARAM_URL = "url";
+
+    /**
+     * Handles the HTTP <code>GET</code> method.
+     *
+     * @param request servlet request
+     * @param response servlet response
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) {
+        CoreSettings coreSettings = (CoreSettings) request.getServletContext().getAttribute(TAG_CORE_SETTINGS);
+        String authProvider = coreSettings.getAuthSettings().get(CoreSettings.TAG_AUTH_PROVIDER, CoreSettings.class);
+        if (Strings.isNullOrEmpty(authProvider)) {
+            sendError(response, 403, "The query plan is only available when authentication is enabled.");
+            return;
+        }
+        PersistenceManagerFactory.init(coreSettings);
+        try {
+            String url = request.getParameter(PARAM_URL);
+            if (Strings.isNullOrEmpty(url)) {
+                response.sendError(400, "Parameter " + PARAM_URL + " is required.");
+                return;
+            }
+            String versionPath = "/" + coreSettings.getApiVersion();
+            int start = url.indexOf(versionPath);
+            String relativeUrl = start < 0 ? url : url.substring(start + versionPath.length());
+            String urlPath = relativeUrl;
+            String urlQuery = null;
+            int queryStart = relativeUrl.indexOf('?');
+            if (queryStart >= 0) {
+                urlPath = relativeUrl.substring(0, queryStart);
+                urlQuery = UrlHelper.urlDecode(relativeUrl.substring(queryStart + 1));
+            }
+            String plan = explain(coreSettings, UrlHelper.urlDecode(urlPath), urlQuery);
+            response.setContentType("text/plain;charset=UTF-8");
+            try (PrintWriter out = response.getWriter()) {
+                out.println(plan);
+            }
+        } catch (IllegalArgumentException exc) {
+            LOGGER.debug("Failed to explain query.", exc);
+            sendError(response, 400, exc.getMessage());
+        } catch (UnsupportedOperationException exc) {
+            LOGGER.debug("Failed to explain query.", exc);
+            sendError(response, 501, exc.getMessage());
+        } catch (IllegalStateException exc) {
+            LOGGER.error("Failed to explain query.", exc);
+            sendError(response, 500, exc.getMessage());
+        } catch (IOException exc) {
+            LOGGER.error("Error writing output to client", exc);
+        }
+    }
+
+    private String explain(CoreSettings coreSettings, String urlPath, String urlQuery) {
+        PersistenceManager pm = PersistenceManagerFactory.getInstance().create();
+        try {
+            ResourcePath path;
+            try {
+                path = PathParser.parsePath(pm.getIdManager(), coreSettings.getServiceRootUrl(), urlPath);
+            } catch (IllegalStateException exc) {
+                // An invalid id, a problem of the request.
+                throw new IllegalArgumentException(exc.getMessage(), exc);
+            }
+            Query query = QueryParser.parseQuery(urlQuery, coreSettings);
+            query.validate(path);
+            return pm.explain(path, query);
+        } finally {
+            pm.rollbackAndClose();
+        }
+    }
+
+    private static void sendError(HttpServletResponse response, int code, String message) {
+        try {
+            response.sendError(code, message);
+        } catch (IOException exc) {
+            LOGGER.error("Error writing output to client", exc);
+        }
+    }
+
+    /**
+     * Returns a short description of the servlet.
+     *
+     * @return a String containing servlet description
+     */
+    @Override
+    public String getServletInfo() {
+        return DESCRIPTION;
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.frostserver.http.common;
+
+import de.fraunhofer.iosb.ilt.sta.settings.ConfigDefaults;
+import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
+import de.fraunhofer.iosb.ilt.sta.settings.Settings;
+import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueBoolean;
+import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueInt;
+import de.fraunhofer.iosb.ilt.sta.util.StringHelper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Gzip compression of responses, for clients that accept it.
+ *
+ * @author scf
+ */
+public class ResponseCompression implements ConfigDefaults {
+
+    @DefaultValueBoolean(false)
+    public static final String TAG_ENABLE = "compression.enable";
+    @DefaultValueInt(1024)
+    public static final String TAG_MIN_SIZE = "compression.minSize";
+
+    public static final String GZIP = "gzip";
+    private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+    private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+    private static final String HEADER_VARY = "Vary";
+
+    private final boolean enabled;
+    private final int minSize;
+
+    public ResponseCompression(CoreSettings coreSettings) {
+        Settings httpSettings = coreSettings.getHttpSettings();
+        enabled = httpSettings.getBoolean(TAG_ENABLE, getClass());
+        minSize = httpSettings.getInt(TAG_MIN_SIZE, getClass());
+    }
+
+    /**
+     * @return true if compression is enabled.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Checks if the client accepts gzip encoding.
+     *
+     * @param request The request to check.
+     * @return true if compression is enabled, and the client accepts gzip.
+     */
+    public boolean accepts(HttpServletRequest request) {
+        return enabled && acceptsGzip(request.getHeader(HEADER_ACCEPT_ENCODING));
+    }
+
+    /**
+     * Checks if a response of the given size should be compressed.
+     *
+     * @param request The request to check.
+     * @param size The (estimated) size of the response.
+     * @return true if the response should be compressed.
+     */
+    public boolean shouldCompress(HttpServletRequest request, int size) {
+        return size >= minSize && accepts(request);
+    }
+
+    /**
+     * Checks if the given Accept-Encoding header allows gzip. An explicit gzip
+     * coding takes precedence over the * wildcard, regardless of the order.
+     *
+     * @param acceptEncoding The value of the Accept-Encoding header.
+     * @return true if gzip is acceptable.
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean gzipAccepted = null;
+        Boolean wildcardAccepted = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if (GZIP.equalsIgnoreCase(name)) {
+                gzipAccepted = !hasZeroQuality(parts);
+            } else if ("*".equals(name)) {
+                wildcardAccepted = !hasZeroQuality(parts);
+            }
+        }
+        if (gzipAccepted != null) {
+            return gzipAccepted;
+        }
+        return wildcardAccepted != null && wildcardAccepted;
+    }
+
+    /**
+     * Checks if the parameters of a coding contain a q-value of 0. A q-value
+     * that can not be parsed counts as 0.
+     *
+     * @param parts The coding, split on ';'. The first element is the name of
+     * the coding, the others are the parameters.
+     * @return true if the coding has a q-value of 0.
+     */
+    static boolean hasZeroQuality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String[] param = parts[i].split("=", 2);
+            if (param.length == 2 && "q".equalsIgnoreCase(param[0].trim())) {
+                try {
+                    return Double.parseDouble(param[1].trim()) <= 0;
+                } catch (NumberFormatException ex) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Set the Vary header, so caches know the response depends on the
+     * Accept-Encoding of the request.
+     *
+     * @param response The response to set the header on.
+     */
+    public void setVary(HttpServletResponse response) {
+        if (enabled) {
+            response.addHeader(HEADER_VARY, HEADER_ACCEPT_ENCODING);
+        }
+    }
+
+    /**
+     * Write the already formatted data to the response, gzip-compressed. This
+     * only saves bandwidth, not memory, since the uncompressed data is
+     * already in memory as a whole.
+     *
+     * @param response The response to write to.
+     * @param data The data to write.
+     * @throws IOException If writing fails.
+     */
+    public void writeCompressed(HttpServletResponse response, String data) throws IOException {
+        try (Writer writer = compressedWriter(response)) {
+            writer.write(data);
+        }
+    }
+
+    /**
+     * Write data that is already gzip-compressed, for instance from a cache.
+     *
+     * @param response The response to write to.
+     * @param gzipped The compressed data.
+     * @throws IOException If writing fails.
+     */
+    public void writePrecompressed(HttpServletResponse response, byte[] gzipped) throws IOException {
+        response.setHeader(HEADER_CONTENT_ENCODING, GZIP);
+        response.setContentLength(gzipped.length);
+        OutputStream out = response.getOutputStream();
+        out.write(gzipped);
+        out.flush();
+    }
+
+    /**
+     * Create a Writer that compresses everything written to it, for responses
+     * that are generated while they are written, like $batch responses. The
+     * Writer must be closed to finish the response.
+     *
+     * @param response The response to write to.
+     * @return A Writer that writes gzip-compressed data to the response.
+     * @throws IOException If the output stream can not be opened.
+     */
+    public Writer compressedWriter(HttpServletResponse response) throws IOException {
+        response.setHeader(HEADER_CONTENT_ENCODING, GZIP);
+        return new OutputStreamWriter(new GZIPOutputStream(response.getOutputStream()), StringHelper.UTF8);
+    }
+
+    /**
+     * Compress the given data, so it can be cached and sent with
+     * writePrecompressed.
+     *
+     * @param data The data to compress.
+     * @return The gzip-compressed data.
+     * @throws IOException If compressing fails.
+     */
+    public static byte[] compress(String data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.max(64, data.length() / 8));
+        try (Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), StringHelper.UTF8)) {
+            writer.write(data);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -18,8 +18,9 @@
 package de.fraunhofer.iosb.ilt.frostserver.http.common;
 
 import com.google.common.base.Strings;
-import de.fraunhofer.iosb.ilt.frostserver.http.common.multipart.BatchProcessor;
+import de.fraunhofer.iosb.ilt.frostserver.http.common.multipart.BatchPartPipeline;
 import de.fraunhofer.iosb.ilt.frostserver.http.common.multipart.MixedContent;
+import de.fraunhofer.iosb.ilt.sta.json.serialize.EntityFormatter;
 import de.fraunhofer.iosb.ilt.sta.service.RequestType;
 import de.fraunhofer.iosb.ilt.sta.service.Service;
 import de.fraunhofer.iosb.ilt.sta.service.ServiceRequest;
@@ -28,9 +29,16 @@ import de.fraunhofer.iosb.ilt.sta.service.ServiceResponse;
 import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
 import static de.fraunhofer.iosb.ilt.sta.settings.CoreSettings.TAG_CORE_SETTINGS;
 import de.fraunhofer.iosb.ilt.sta.util.UrlHelper;
-import java.io.BufferedReader;
+import de.fraunhofer.iosb.ilt.sta.util.VirtualThreads;
 import java.io.IOException;
-import java.util.stream.Collectors;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.annotation.MultipartConfig;
 import javax.servlet.annotation.WebInitParam;
@@ -48,6 +56,7 @@ import org.slf4j.LoggerFactory;
 @WebServlet(
         name = "STA1.0",
         urlPatterns = {"/v1.0", "/v1.0/*"},
+        asyncSupported = true,
         initParams = {
             @WebInitParam(name = "readonly", value = "false")
         }
@@ -62,6 +71,62 @@ public class ServletV1P0 extends HttpServlet {
     private static final String ENCODING = "UTF-8";
     public static final String JSON_PATCH_CONTENT_TYPE = "application/json-patch+json";
 
+    /**
+     * The executor that runs requests on virtual threads, or null if requests
+     * are handled on the container thread.
+     */
+    private ExecutorService requestExecutor;
+    /**
+     * Limits the number of concurrent requests, or null if there is no limit.
+     */
+    private AdmissionController admissionController;
+    /**
+     * The executor for parallel read parts of batch requests, or null if
+     * batch parts are executed in order.
+     */
+    private ExecutorService batchExecutor;
+    private int batchMaxParallel;
+    /**
+     * Compresses responses for clients that accept it, or null if not
+     * initialised.
+     */
+    private ResponseCompression compression;
+
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        CoreSettings coreSettings = (CoreSettings) getServletContext().getAttribute(TAG_CORE_SETTINGS);
+        if (coreSettings != null && AdmissionController.isEnabled(coreSettings)) {
+            admissionController = new AdmissionController(coreSettings);
+        } else {
+            requestExecutor = VirtualThreads.createTaskExecutor("HttpRequest");
+        }
+        if (coreSettings != null) {
+            compression = new ResponseCompression(coreSettings);
+            batchMaxParallel = coreSettings.getHttpSettings().getInt(BatchPartPipeline.TAG_BATCH_MAX_PARALLEL, BatchPartPipeline.class);
+            if (batchMaxParallel > 1) {
+                batchExecutor = Executors.newFixedThreadPool(batchMaxParallel, VirtualThreads.createThreadFactory("BatchPart"));
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (admissionController != null) {
+            admissionController.stop();
+            admissionController = null;
+        }
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+            requestExecutor = null;
+        }
+        if (batchExecutor != null) {
+            batchExecutor.shutdown();
+            batchExecutor = null;
+        }
+        super.destroy();
+    }
+
     private void processGetRequest(HttpServletRequest request, HttpServletResponse response) {
         response.setContentType("application/json");
         response.setCharacterEncoding(ENCODING);
@@ -111,25 +176,47 @@ public class ServletV1P0 extends HttpServlet {
         executeService(RequestType.DELETE, request, response);
     }
 
+    /**
+     * Handles a batch request. Each part is executed as soon as it is parsed,
+     * and its response is written directly, so neither the request nor the
+     * response has to be held in memory as a whole. Consecutive read parts
+     * are executed in parallel.
+     */
     private void processBatchRequest(HttpServletRequest request, HttpServletResponse response) {
         CoreSettings coreSettings = (CoreSettings) request.getServletContext().getAttribute(TAG_CORE_SETTINGS);
         Service service = new Service(coreSettings);
 
-        MixedContent multipartMixedData = new MixedContent(false);
-        multipartMixedData.parse(request);
-        MixedContent resultContent = BatchProcessor.processMultipartMixed(service, multipartMixedData);
-        sendMixedResponse(resultContent, response);
-    }
-
-    private void sendMixedResponse(MixedContent multipartMixedData, HttpServletResponse httpResponse) {
-        httpResponse.setStatus(200);
-        multipartMixedData.getHeaders().entrySet().forEach(x -> httpResponse.setHeader(x.getKey(), x.getValue()));
-        try {
-            httpResponse.setCharacterEncoding(ENCODING);
-            httpResponse.getWriter().write(multipartMixedData.getContent(false));
-        } catch (IOException ex) {
+        MixedContent resultContent = new MixedContent(false);
+        response.setStatus(200);
+        resultContent.getHeaders().entrySet().forEach(x -> response.setHeader(x.getKey(), x.getValue()));
+        response.setCharacterEncoding(ENCODING);
+        if (compression != null) {
+            compression.setVary(response);
+        }
+        boolean compress = compression != null && compression.accepts(request);
+        try (Writer writer = compress ? compression.compressedWriter(response) : response.getWriter()) {
+            BatchPartPipeline pipeline = new BatchPartPipeline(
+                    service,
+                    () -> new Service(coreSettings),
+                    batchExecutor,
+                    batchMaxParallel,
+                    part -> resultContent.writePart(writer, part));
+            MixedContent multipartMixedData = new MixedContent(false);
+            multipartMixedData.setPartListener(part -> {
+                try {
+                    pipeline.accept(part);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+            multipartMixedData.parse(request);
+            pipeline.finish();
+            resultContent.writeEnd(writer);
+        } catch (IOException | UncheckedIOException ex) {
             LOGGER.error("Error writing HTTP result", ex);
-            httpResponse.setStatus(500);
+            if (!response.isCommitted()) {
+                response.setStatus(500);
+            }
         }
     }
 
@@ -137,10 +224,10 @@ public class ServletV1P0 extends HttpServlet {
         try {
             CoreSettings coreSettings = (CoreSettings) request.getServletContext().getAttribute(TAG_CORE_SETTINGS);
             Service service = new Service(coreSettings);
-            sendResponse(service.execute(serviceRequestFromHttpRequest(request, requestType)), response);
+            sendResponse(service.execute(serviceRequestFromHttpRequest(request, requestType)), request, response);
         } catch (Exception exc) {
             LOGGER.error("", exc);
-            sendResponse(new ServiceResponse(500, exc.getMessage()), response);
+            sendResponse(new ServiceResponse(500, exc.getMessage()), request, response);
         }
     }
 
@@ -164,11 +251,13 @@ public class ServletV1P0 extends HttpServlet {
                 .withUrlQuery(request.getQueryString() != null
                         ? UrlHelper.urlDecode(request.getQueryString())
                         : null)
-                .withContent(readRequestData(request.getReader()))
+                .withContent(request.getReader())
+                .withIfNoneMatch(request.getHeader("If-None-Match"))
+                .withIfModifiedSince(request.getHeader("If-Modified-Since"))
                 .build();
     }
 
-    private void sendResponse(ServiceResponse<?> serviceResponse, HttpServletResponse httpResponse) {
+    private void sendResponse(ServiceResponse<?> serviceResponse, HttpServletRequest httpRequest, HttpServletResponse httpResponse) {
         httpResponse.setStatus(serviceResponse.getCode());
         serviceResponse.getHeaders().entrySet().forEach(x -> httpResponse.setHeader(x.getKey(), x.getValue()));
         try {
@@ -176,9 +265,17 @@ public class ServletV1P0 extends HttpServlet {
                     && serviceResponse.getCode() < 300
                     && serviceResponse.getResultFormatted() != null
                     && !serviceResponse.getResultFormatted().isEmpty()) {
+                String result = serviceResponse.getResultFormatted();
                 httpResponse.setContentType("application/json");
                 httpResponse.setCharacterEncoding(ENCODING);
-                httpResponse.getWriter().write(serviceResponse.getResultFormatted());
+                if (compression != null) {
+                    compression.setVary(httpResponse);
+                }
+                if (compression != null && compression.shouldCompress(httpRequest, result.length())) {
+                    writeCompressed(serviceResponse, httpResponse);
+                } else {
+                    httpResponse.getWriter().write(result);
+                }
 
             } else if (serviceResponse.getMessage() != null
                     && !serviceResponse.getMessage().isEmpty()) {
@@ -190,6 +287,25 @@ public class ServletV1P0 extends HttpServlet {
         }
     }
 
+    /**
+     * Write the result compressed. If the response has a store for encoded
+     * results, for instance because it is cached, the compressed result is
+     * taken from, or put in that store.
+     */
+    private void writeCompressed(ServiceResponse<?> serviceResponse, HttpServletResponse httpResponse) throws IOException {
+        Map<String, byte[]> encodedResults = serviceResponse.getEncodedResults();
+        if (encodedResults == null) {
+            compression.writeCompressed(httpResponse, serviceResponse.getResultFormatted());
+            return;
+        }
+        byte[] gzipped = encodedResults.get(ResponseCompression.GZIP);
+        if (gzipped == null) {
+            gzipped = ResponseCompression.compress(serviceResponse.getResultFormatted());
+            encodedResults.put(ResponseCompression.GZIP, gzipped);
+        }
+        compression.writePrecompressed(httpResponse, gzipped);
+    }
+
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response) {
         processGetRequest(request, response);
@@ -226,14 +342,79 @@ public class ServletV1P0 extends HttpServlet {
 
     @Override
     protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        if (admissionController != null) {
+            serviceAdmitted(request, response);
+            return;
+        }
+        if (requestExecutor == null) {
+            dispatch(request, response);
+            return;
+        }
+        // Free the container thread, and let a virtual thread block on the
+        // database instead.
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(0);
+        try {
+            requestExecutor.execute(() -> dispatchAsync(asyncContext, request, response));
+        } catch (RejectedExecutionException ex) {
+            LOGGER.debug("Executor rejected request, handling on container thread.", ex);
+            try {
+                dispatch(request, response);
+            } finally {
+                asyncContext.complete();
+            }
+        }
+    }
+
+    private void serviceAdmitted(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        AdmissionController.Category category = AdmissionController.categorise(
+                request.getMethod(),
+                request.getPathInfo(),
+                request.getQueryString());
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(0);
+        if (!admissionController.submit(category, () -> dispatchAsync(asyncContext, request, response))) {
+            try {
+                sendTooBusy(response);
+            } finally {
+                asyncContext.complete();
+            }
+        }
+    }
+
+    /**
+     * Send a 503 response, with a JSON body describing the error.
+     */
+    private void sendTooBusy(HttpServletResponse response) throws IOException {
+        response.setStatus(503);
+        response.setHeader("Retry-After", Integer.toString(admissionController.getRetryAfter()));
+        response.setContentType("application/json");
+        response.setCharacterEncoding(ENCODING);
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("code", 503);
+        error.put("type", "error");
+        error.put("message", "Server too busy, try again later.");
+        response.getWriter().write(EntityFormatter.writeObject(error));
+    }
+
+    private void dispatchAsync(AsyncContext asyncContext, HttpServletRequest request, HttpServletResponse response) {
+        try {
+            dispatch(request, response);
+        } catch (ServletException | IOException | RuntimeException ex) {
+            LOGGER.error("Exception handling request.", ex);
+            if (!response.isCommitted()) {
+                response.setStatus(500);
+            }
+        } finally {
+            asyncContext.complete();
+        }
+    }
+
+    private void dispatch(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
         if ("PATCH".equals(request.getMethod())) {
             doPatch(request, response);
             return;
         }
         super.service(request, response);
     }
-
-    private String readRequestData(BufferedReader reader) {
-        return reader.lines().collect(Collectors.joining("\n"));
-    }
 }
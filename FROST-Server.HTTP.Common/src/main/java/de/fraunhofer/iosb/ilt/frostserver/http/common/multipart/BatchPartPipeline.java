@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.frostserver.http.common.multipart;
+
+import de.fraunhofer.iosb.ilt.sta.service.RequestType;
+import de.fraunhofer.iosb.ilt.sta.service.Service;
+import de.fraunhofer.iosb.ilt.sta.settings.ConfigDefaults;
+import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueInt;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executes the parts of a batch request as they are parsed, and writes the
+ * responses in the order of the request.
+ *
+ * Consecutive read requests outside of changesets are independent, and are
+ * executed in parallel, each with their own Service. All other parts are
+ * executed in order on the main Service, after all earlier parts are done, so
+ * reads never overtake a write that came before them.
+ *
+ * @author scf
+ */
+public class BatchPartPipeline implements ConfigDefaults {
+
+    /**
+     * The maximum number of independent read parts of batch requests that are
+     * executed in parallel.
+     */
+    @DefaultValueInt(4)
+    public static final String TAG_BATCH_MAX_PARALLEL = "batch.maxParallel";
+
+    /**
+     * Writes a response part.
+     */
+    public interface PartWriter {
+
+        public void write(Part part) throws IOException;
+    }
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchPartPipeline.class);
+
+    private final Service service;
+    private final Supplier<Service> serviceFactory;
+    private final ExecutorService executor;
+    private final int maxParallel;
+    private final PartWriter writer;
+    private final Deque<Future<Part>> pending = new ArrayDeque<>();
+
+    /**
+     * Creates a new pipeline.
+     *
+     * @param service The service used for parts that are executed in order.
+     * @param serviceFactory Creates a new Service for each parallel read.
+     * @param executor The executor to run parallel reads on. If null, all
+     * parts are executed in order.
+     * @param maxParallel The maximum number of reads of this request that are
+     * executed at the same time.
+     * @param writer The writer for the response parts.
+     */
+    public BatchPartPipeline(Service service, Supplier<Service> serviceFactory, ExecutorService executor, int maxParallel, PartWriter writer) {
+        this.service = service;
+        this.serviceFactory = serviceFactory;
+        this.executor = executor;
+        this.maxParallel = maxParallel;
+        this.writer = writer;
+    }
+
+    /**
+     * Execute the given part, or schedule it for execution.
+     *
+     * @param part The part to execute.
+     * @throws IOException If writing a response fails.
+     */
+    public void accept(Part part) throws IOException {
+        if (executor != null && maxParallel > 1 && isIndependentRead(part)) {
+            while (pending.size() >= maxParallel) {
+                writeNext();
+            }
+            pending.add(submit(part));
+            writeDone();
+            return;
+        }
+        writeAll();
+        Part responsePart = BatchProcessor.processPart(service, part);
+        if (responsePart != null) {
+            writer.write(responsePart);
+        }
+    }
+
+    /**
+     * Wait for all scheduled parts to finish, and write their responses.
+     *
+     * @throws IOException If writing a response fails.
+     */
+    public void finish() throws IOException {
+        writeAll();
+    }
+
+    private Future<Part> submit(Part part) {
+        try {
+            return executor.submit(() -> BatchProcessor.processPart(serviceFactory.get(), part));
+        } catch (RejectedExecutionException ex) {
+            LOGGER.debug("Executor rejected batch part, executing directly.", ex);
+            return CompletableFuture.completedFuture(BatchProcessor.processPart(serviceFactory.get(), part));
+        }
+    }
+
+    private static boolean isIndependentRead(Part part) {
+        Content content = part.getContent();
+        if (!(content instanceof HttpContent)) {
+            return false;
+        }
+        HttpContent httpContent = (HttpContent) content;
+        if (httpContent.isParseFailed()) {
+            return false;
+        }
+        try {
+            RequestType type = httpContent.getRequestType();
+            return type == RequestType.READ || type == RequestType.GET_CAPABILITIES;
+        } catch (RuntimeException ex) {
+            // Let the normal processing deal with it.
+            return false;
+        }
+    }
+
+    /**
+     * Write the responses of the parts at the head of the queue that are
+     * done, without waiting.
+     */
+    private void writeDone() throws IOException {
+        while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+            writeNext();
+        }
+    }
+
+    private void writeAll() throws IOException {
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        Future<Part> next = pending.removeFirst();
+        Part responsePart;
+        try {
+            responsePart = next.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for batch part.", ex);
+        } catch (ExecutionException ex) {
+            LOGGER.error("Failed to execute batch part.", ex);
+            HttpContent error = new HttpContent();
+            error.setStatusLine(Headers.generateStatusLine(500));
+            error.setExecuteFailed(true);
+            responsePart = new Part(false).setContent(error);
+        }
+        if (responsePart != null) {
+            writer.write(responsePart);
+        }
+    }
+}
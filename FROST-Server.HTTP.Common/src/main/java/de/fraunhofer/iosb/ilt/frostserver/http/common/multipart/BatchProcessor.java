@@ -134,21 +134,38 @@ public class BatchProcessor {
     public static MixedContent processMultipartMixed(Service service, MixedContent multipartMixedData) {
         MixedContent mixedResponse = new MixedContent(false);
         for (Part part : multipartMixedData.getParts()) {
-            LOGGER.debug("Part: {}", part);
-            Content content = part.getContent();
-            if (content instanceof MixedContent) {
-                MixedContent changset = (MixedContent) content;
-                Content changesetResponse = processChangeset(service, changset);
-                mixedResponse.addPart(new Part(false).setContent(changesetResponse));
-            } else if (content instanceof HttpContent) {
-                HttpContent httpContent = (HttpContent) content;
-                HttpContent httpResponse = processHttpRequest(service, httpContent, false);
-                mixedResponse.addPart(new Part(false).setContent(httpResponse));
-            } else {
-                LOGGER.warn("Invalid multipart-part type: {}", content.getClass().getName());
+            Part responsePart = processPart(service, part);
+            if (responsePart != null) {
+                mixedResponse.addPart(responsePart);
             }
         }
         return mixedResponse;
     }
 
+    /**
+     * Process a single top-level part of a batch request.
+     *
+     * @param service The service to use to execute the requests.
+     * @param part The part to process.
+     * @return The response part, or null if the part was not valid.
+     */
+    public static Part processPart(Service service, Part part) {
+        LOGGER.debug("Part: {}", part);
+        Content content = part.getContent();
+        if (content instanceof MixedContent) {
+            MixedContent changset = (MixedContent) content;
+            Content changesetResponse = processChangeset(service, changset);
+            return new Part(false).setContent(changesetResponse);
+        } else if (content instanceof HttpContent) {
+            HttpContent httpContent = (HttpContent) content;
+            HttpContent httpResponse = processHttpRequest(service, httpContent, false);
+            return new Part(false).setContent(httpResponse);
+        } else if (content == null) {
+            LOGGER.warn("Empty multipart-part.");
+        } else {
+            LOGGER.warn("Invalid multipart-part type: {}", content.getClass().getName());
+        }
+        return null;
+    }
+
 }
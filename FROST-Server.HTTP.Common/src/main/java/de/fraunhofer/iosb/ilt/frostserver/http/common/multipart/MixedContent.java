@@ -20,11 +20,13 @@ package de.fraunhofer.iosb.ilt.frostserver.http.common.multipart;
 import com.google.common.base.Strings;
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.servlet.http.HttpServletRequest;
@@ -81,11 +83,36 @@ public class MixedContent implements Content {
     private State state = State.PREAMBLE;
     private IsFinished finished = IsFinished.UNFINISHED;
     private Part currentPart;
+    /**
+     * If set, parsed parts are handed to this listener as soon as they are
+     * complete, instead of being collected in the parts list.
+     */
+    private Consumer<Part> partListener;
 
     public MixedContent(boolean isChangeSet) {
         this.isChangeSet = isChangeSet;
     }
 
+    /**
+     * Set a listener that gets each part as soon as it is parsed. Parts handed
+     * to the listener are not kept, so they do not show up in getParts().
+     *
+     * @param partListener The listener that gets the parsed parts.
+     * @return this.
+     */
+    public MixedContent setPartListener(Consumer<Part> partListener) {
+        this.partListener = partListener;
+        return this;
+    }
+
+    private void addParsedPart(Part part) {
+        if (partListener == null) {
+            parts.add(part);
+        } else {
+            partListener.accept(part);
+        }
+    }
+
     public boolean parse(HttpServletRequest request) {
         BufferedReader reader = null;
         try {
@@ -176,14 +203,14 @@ public class MixedContent implements Content {
         if (checkBoundary && boundaryPart.equals(line.trim())) {
             LOGGER.debug("{}Found new part", logIndent);
             currentPart.stripLastNewline();
-            parts.add(currentPart);
+            addParsedPart(currentPart);
             currentPart = new Part(isChangeSet).setLogIndent(logIndent + "  ");
             setState(State.PARTCONTENT);
 
         } else if (checkBoundary && boundaryEnd.equals(line.trim())) {
             LOGGER.debug("{}Found end of multipart content", logIndent);
             currentPart.stripLastNewline();
-            parts.add(currentPart);
+            addParsedPart(currentPart);
             currentPart = null;
             finishParsing();
 
@@ -191,7 +218,7 @@ public class MixedContent implements Content {
             currentPart.appendLine(line);
             if (currentPart.isFinished() == IsFinished.FINISHED) {
                 LOGGER.debug("{}Part declared done", logIndent);
-                parts.add(currentPart);
+                addParsedPart(currentPart);
                 currentPart = null;
                 setState(State.PARTDONE);
             }
@@ -283,6 +310,41 @@ public class MixedContent implements Content {
         return content.toString();
     }
 
+    /**
+     * Write the given part to the writer, in the same format as getContent
+     * uses, without adding it to this MixedContent. Together with writeEnd,
+     * this allows writing a multipart response part by part.
+     *
+     * @param writer The writer to write to.
+     * @param part The part to write.
+     * @throws IOException If writing fails.
+     */
+    public void writePart(Writer writer, Part part) throws IOException {
+        if (boundary == null) {
+            generateBoundary();
+        }
+        writer.write('\n');
+        writer.write(boundaryPart);
+        writer.write('\n');
+        writer.write(part.getContent().getContent(true));
+        writer.flush();
+    }
+
+    /**
+     * Write the end boundary to the writer.
+     *
+     * @param writer The writer to write to.
+     * @throws IOException If writing fails.
+     */
+    public void writeEnd(Writer writer) throws IOException {
+        if (boundary == null) {
+            generateBoundary();
+        }
+        writer.write('\n');
+        writer.write(boundaryEnd);
+        writer.flush();
+    }
+
     @Override
     public Map<String, String> getHeaders() {
         if (boundary == null) {
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.frostserver.http.common;
+
+import de.fraunhofer.iosb.ilt.frostserver.http.common.AdmissionController.Category;
+import static de.fraunhofer.iosb.ilt.frostserver.http.common.AdmissionController.categorise;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author scf
+ */
+public class AdmissionControllerTest {
+
+    @Test
+    public void testCategoriseReads() {
+        Assert.assertEquals(Category.READ, categorise("GET", "/Things", null));
+        Assert.assertEquals(Category.READ, categorise("GET", "/Things", "$count=true"));
+        Assert.assertEquals(Category.READ, categorise("GET", "/Things", "$top=10&$count=true"));
+        Assert.assertEquals(Category.READ, categorise("GET", "/Things", "$filter=properties/expand eq 'a'"));
+        Assert.assertEquals(Category.READ, categorise("HEAD", "/Things", null));
+    }
+
+    @Test
+    public void testCategoriseExpand() {
+        Assert.assertEquals(Category.EXPENSIVE, categorise("GET", "/Things", "$expand=Datastreams"));
+        Assert.assertEquals(Category.EXPENSIVE, categorise("GET", "/Things", "$top=2&$expand=Datastreams"));
+        Assert.assertEquals(Category.EXPENSIVE, categorise("GET", "/Things", "$EXPAND=Datastreams"));
+    }
+
+    @Test
+    public void testCategoriseEncodedQuery() {
+        Assert.assertEquals(Category.EXPENSIVE, categorise("GET", "/Things", "%24expand=Datastreams"));
+        Assert.assertEquals(Category.EXPENSIVE, categorise("GET", "/Things", "$filter=geo%2Edistance(location,geography'POINT(8 49)')%20lt%201"));
+        Assert.assertEquals(Category.EXPENSIVE, categorise("GET", "/Things", "$filter=st_within(location,geography'POINT(8 49)')"));
+        Assert.assertEquals(Category.READ, categorise("GET", "/Things", "%24count=true"));
+    }
+
+    @Test
+    public void testCategoriseWrites() {
+        Assert.assertEquals(Category.BATCH, categorise("POST", "/$batch", null));
+        Assert.assertEquals(Category.WRITE, categorise("POST", "/Things", null));
+        Assert.assertEquals(Category.WRITE, categorise("PATCH", "/Things(1)", null));
+        Assert.assertEquals(Category.WRITE, categorise("DELETE", "/Things(1)", null));
+    }
+}
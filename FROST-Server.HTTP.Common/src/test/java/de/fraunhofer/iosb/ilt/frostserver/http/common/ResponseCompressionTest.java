@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.frostserver.http.common;
+
+import static de.fraunhofer.iosb.ilt.frostserver.http.common.ResponseCompression.acceptsGzip;
+import static de.fraunhofer.iosb.ilt.frostserver.http.common.ResponseCompression.hasZeroQuality;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author scf
+ */
+public class ResponseCompressionTest {
+
+    @Test
+    public void testAcceptsGzip() {
+        Assert.assertFalse(acceptsGzip(null));
+        Assert.assertFalse(acceptsGzip(""));
+        Assert.assertFalse(acceptsGzip("identity"));
+        Assert.assertFalse(acceptsGzip("deflate, br"));
+        Assert.assertTrue(acceptsGzip("gzip"));
+        Assert.assertTrue(acceptsGzip("GZIP"));
+        Assert.assertTrue(acceptsGzip("deflate, gzip;q=0.5"));
+        Assert.assertTrue(acceptsGzip("*"));
+        Assert.assertFalse(acceptsGzip("gzip;q=0"));
+        Assert.assertFalse(acceptsGzip("gzip; q=0.000"));
+        Assert.assertFalse(acceptsGzip("*;q=0"));
+    }
+
+    @Test
+    public void testAcceptsGzipExplicitBeatsWildcard() {
+        Assert.assertTrue(acceptsGzip("*;q=0, gzip"));
+        Assert.assertTrue(acceptsGzip("gzip, *;q=0"));
+        Assert.assertFalse(acceptsGzip("gzip;q=0, *"));
+        Assert.assertFalse(acceptsGzip("*, gzip;q=0"));
+    }
+
+    @Test
+    public void testHasZeroQuality() {
+        Assert.assertFalse(hasZeroQuality(new String[]{"gzip"}));
+        Assert.assertFalse(hasZeroQuality(new String[]{"gzip", "q=1"}));
+        Assert.assertFalse(hasZeroQuality(new String[]{"gzip", " q = 0.1"}));
+        Assert.assertFalse(hasZeroQuality(new String[]{"gzip", "level=0"}));
+        Assert.assertTrue(hasZeroQuality(new String[]{"gzip", "q=0"}));
+        Assert.assertTrue(hasZeroQuality(new String[]{"gzip", "Q=0.0"}));
+        Assert.assertTrue(hasZeroQuality(new String[]{"gzip", "q=abc"}));
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.frostserver.http.common.multipart;
+
+import de.fraunhofer.iosb.ilt.sta.messagebus.InternalMessageBus;
+import de.fraunhofer.iosb.ilt.sta.persistence.AbstractPersistenceManager;
+import de.fraunhofer.iosb.ilt.sta.service.Service;
+import de.fraunhofer.iosb.ilt.sta.service.ServiceRequest;
+import de.fraunhofer.iosb.ilt.sta.service.ServiceResponse;
+import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author scf
+ */
+public class BatchPartPipelineTest {
+
+    private ExecutorService executor;
+    private RecordingService service;
+    private List<String> responses;
+    private BatchPartPipeline pipeline;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        Properties properties = new Properties();
+        properties.setProperty(CoreSettings.TAG_SERVICE_ROOT_URL, "http://localhost:8080/FROST-Server");
+        properties.setProperty(CoreSettings.TAG_TEMP_PATH, System.getProperty("java.io.tmpdir"));
+        properties.setProperty(CoreSettings.PREFIX_BUS + "busImplementationClass", InternalMessageBus.class.getName());
+        // The Service needs a loadable class, but never creates an instance.
+        properties.setProperty(CoreSettings.PREFIX_PERSISTENCE + "persistenceManagerImplementationClass", AbstractPersistenceManager.class.getName());
+        service = new RecordingService(new CoreSettings(properties));
+        responses = new ArrayList<>();
+        pipeline = new BatchPartPipeline(service, () -> service, executor, 4, this::writePart);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testResponseOrder() throws IOException {
+        pipeline.accept(createPart("GET", "/v1.0/Things(1)?delay=200"));
+        pipeline.accept(createPart("GET", "/v1.0/Things(2)"));
+        pipeline.accept(createPart("GET", "/v1.0/Things(3)?delay=100"));
+        pipeline.accept(createPart("GET", "/v1.0/Things(4)"));
+        pipeline.finish();
+        Assert.assertEquals(
+                Arrays.asList(
+                        "/Things(1)?delay=200",
+                        "/Things(2)",
+                        "/Things(3)?delay=100",
+                        "/Things(4)"),
+                responses);
+    }
+
+    @Test
+    public void testWriteIsBarrier() throws IOException {
+        pipeline.accept(createPart("GET", "/v1.0/Things(1)?delay=200"));
+        pipeline.accept(createPart("POST", "/v1.0/Things?delay=100"));
+        pipeline.accept(createPart("GET", "/v1.0/Things(2)"));
+        pipeline.finish();
+        Assert.assertEquals(
+                Arrays.asList(
+                        "/Things(1)?delay=200",
+                        "/Things?delay=100",
+                        "/Things(2)"),
+                responses);
+
+        List<String> events = service.getEvents();
+        Assert.assertTrue(
+                "Write started before earlier read finished: " + events,
+                events.indexOf("end /Things(1)?delay=200") < events.indexOf("start /Things?delay=100"));
+        Assert.assertTrue(
+                "Read started before earlier write finished: " + events,
+                events.indexOf("end /Things?delay=100") < events.indexOf("start /Things(2)"));
+    }
+
+    private void writePart(Part part) {
+        HttpContent content = (HttpContent) part.getContent();
+        responses.add(content.getData());
+    }
+
+    private static Part createPart(String method, String url) {
+        HttpContent content = new HttpContent();
+        content.parseLine("Content-Type: application/http");
+        content.parseLine("");
+        content.parseLine(method + " " + url + " HTTP/1.1");
+        content.parseLine("");
+        return new Part(false).setContent(content);
+    }
+
+    /**
+     * A Service that does not execute requests, but records when they start
+     * and end, and returns the url as result. The query parameter delay makes
+     * the request take the given number of milliseconds.
+     */
+    private static class RecordingService extends Service {
+
+        private final List<String> events = Collections.synchronizedList(new ArrayList<>());
+
+        public RecordingService(CoreSettings settings) {
+            super(settings);
+        }
+
+        @Override
+        public <T> ServiceResponse<T> execute(ServiceRequest request) {
+            String url = request.getUrl();
+            events.add("start " + url);
+            int delayIdx = url.indexOf("delay=");
+            if (delayIdx >= 0) {
+                sleep(Long.parseLong(url.substring(delayIdx + 6)));
+            }
+            events.add("end " + url);
+            return new ServiceResponse<>(200, "OK", null, url);
+        }
+
+        public List<String> getEvents() {
+            synchronized (events) {
+                return new ArrayList<>(events);
+            }
+        }
+
+        private static void sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
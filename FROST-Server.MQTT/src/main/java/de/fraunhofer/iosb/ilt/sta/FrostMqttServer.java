@@ -23,6 +23,7 @@ import de.fraunhofer.iosb.ilt.sta.persistence.PersistenceManagerFactory;
 import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
 import de.fraunhofer.iosb.ilt.sta.util.GitVersionInfo;
 import de.fraunhofer.iosb.ilt.sta.util.StringHelper;
+import de.fraunhofer.iosb.ilt.sta.util.VirtualThreads;
 import java.io.BufferedReader;
 import java.io.FileInputStream;
 import java.io.IOException;
@@ -67,6 +68,7 @@ public class FrostMqttServer {
 
     public void start() {
         addShutdownHook();
+        VirtualThreads.init(coreSettings);
         PersistenceManagerFactory.init(coreSettings);
         MessageBusFactory.init(coreSettings);
         MqttManager.init(coreSettings);
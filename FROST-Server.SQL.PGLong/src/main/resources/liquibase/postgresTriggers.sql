@@ -62,6 +62,8 @@ create or replace function datastreams_update_insert()
 $BODY$
 declare
 "DS_ROW" "DATASTREAMS"%rowtype;
+"FOI_GEOM" geometry;
+"COVERED" boolean := false;
 begin
 
 select * into "DS_ROW" from "DATASTREAMS" where "DATASTREAMS"."ID"=NEW."DATASTREAM_ID";
@@ -79,7 +81,25 @@ if (NEW."RESULT_TIME" > "DS_ROW"."RESULT_TIME_END" or "DS_ROW"."RESULT_TIME_END"
     update "DATASTREAMS" set "RESULT_TIME_END" = NEW."RESULT_TIME" where "DATASTREAMS"."ID" = "DS_ROW"."ID";
 end if;
 
-update "DATASTREAMS" SET "OBSERVED_AREA" = ST_ConvexHull(ST_Collect("OBSERVED_AREA", (select "GEOM" from "FEATURES" where "ID"=NEW."FEATURE_ID"))) where "DATASTREAMS"."ID"=NEW."DATASTREAM_ID";
+-- Only recompute the hull when the feature is not already inside it.
+-- ST_Covers does not accept geometry collections on older PostGIS versions,
+-- and fails on invalid geometries and mixed SRIDs. Those cases are checked
+-- beforehand, since catching the error would need a subtransaction for every
+-- insert. In those cases the hull is recomputed.
+select "GEOM" into "FOI_GEOM" from "FEATURES" where "ID"=NEW."FEATURE_ID";
+if ("FOI_GEOM" is not null) then
+    if ("DS_ROW"."OBSERVED_AREA" is not null
+            and GeometryType("FOI_GEOM") <> 'GEOMETRYCOLLECTION'
+            and GeometryType("DS_ROW"."OBSERVED_AREA") <> 'GEOMETRYCOLLECTION'
+            and ST_SRID("FOI_GEOM") = ST_SRID("DS_ROW"."OBSERVED_AREA")
+            and ST_IsValid("FOI_GEOM")
+            and ST_IsValid("DS_ROW"."OBSERVED_AREA")) then
+        "COVERED" := ST_Covers("DS_ROW"."OBSERVED_AREA", "FOI_GEOM");
+    end if;
+    if (not "COVERED") then
+        update "DATASTREAMS" SET "OBSERVED_AREA" = ST_ConvexHull(ST_Collect("OBSERVED_AREA", "FOI_GEOM")) where "DATASTREAMS"."ID"=NEW."DATASTREAM_ID";
+    end if;
+end if;
 
 return new;
 END
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.persistence.postgres.longid;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.dsl.NumberPath;
+import com.querydsl.sql.SQLBindings;
+import com.querydsl.sql.SQLQuery;
+import de.fraunhofer.iosb.ilt.sta.parser.path.PathParser;
+import de.fraunhofer.iosb.ilt.sta.parser.query.QueryParser;
+import de.fraunhofer.iosb.ilt.sta.persistence.postgres.PathSqlBuilderImp;
+import de.fraunhofer.iosb.ilt.sta.settings.CoreSettings;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the SQL generated for resource paths. No database connection is
+ * needed, since the queries are not executed.
+ *
+ * @author scf
+ */
+public class PathSqlBuilderLongTest {
+
+    private CoreSettings settings;
+    private PostgresPersistenceManagerLong pm;
+
+    @Before
+    public void setUp() {
+        settings = new CoreSettings();
+        pm = new PostgresPersistenceManagerLong();
+        pm.init(settings);
+    }
+
+    private SQLBindings bindingsFor(String path, String query) {
+        PathSqlBuilderImp<NumberPath<Long>, Long> psb = new PathSqlBuilderImp<>(pm.getPropertyResolver());
+        SQLQuery<Tuple> sqlQuery = psb.buildFor(
+                PathParser.parsePath(pm.getIdManager(), "", path),
+                QueryParser.parseQuery(query, settings),
+                pm.createQueryFactory(),
+                settings.getPersistenceSettings());
+        return sqlQuery.getSQL();
+    }
+
+    private String sqlFor(String path, String query) {
+        return bindingsFor(path, query).getSQL().toLowerCase();
+    }
+
+    private static int count(String haystack, String needle) {
+        int count = 0;
+        for (int idx = haystack.indexOf(needle); idx >= 0; idx = haystack.indexOf(needle, idx + 1)) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testMultiDatastreamObservedPropertiesAreDistinct() {
+        Assert.assertTrue(sqlFor("/MultiDatastreams(1)/ObservedProperties", "").startsWith("select distinct "));
+    }
+
+    @Test
+    public void testToOnePathsAreNotDistinct() {
+        Assert.assertFalse(sqlFor("/Datastreams(1)/ObservedProperty", "").contains("distinct"));
+        Assert.assertFalse(sqlFor("/Things(1)/Datastreams", "").contains("distinct"));
+    }
+
+    @Test
+    public void testFilterOnRelatedEntitiesUsesExists() {
+        String sql = sqlFor("/Things", "$filter=Datastreams/name eq 'a'");
+        Assert.assertFalse(sql.contains("distinct"));
+        Assert.assertTrue(sql.contains("exists"));
+    }
+
+    @Test
+    public void testNestedCustomPropertySelectsSubObject() {
+        SQLBindings sql = bindingsFor("/Things(1)/properties/a/b", "");
+        String text = sql.getSQL().toLowerCase();
+        Assert.assertEquals(2, count(text, "jsonb_build_object("));
+        Assert.assertTrue(text.contains("#> array[?::text, ?::text]"));
+        List<Object> bindings = sql.getNullFriendlyBindings();
+        Assert.assertTrue(bindings.contains("a"));
+        Assert.assertTrue(bindings.contains("b"));
+    }
+
+    @Test
+    public void testCustomPropertyIsCutAtArrayIndex() {
+        SQLBindings sql = bindingsFor("/Things(1)/properties/a[0]/b", "");
+        String text = sql.getSQL().toLowerCase();
+        Assert.assertEquals(1, count(text, "jsonb_build_object("));
+        List<Object> bindings = sql.getNullFriendlyBindings();
+        Assert.assertTrue(bindings.contains("a"));
+        Assert.assertFalse(bindings.contains("b"));
+    }
+
+    @Test
+    public void testMissingCustomPropertyGivesEmptyObject() {
+        String sql = sqlFor("/Things(1)/properties/a", "");
+        Assert.assertTrue(sql.contains("case when "));
+        Assert.assertTrue(sql.contains(" is null then '{}' else "));
+    }
+
+    @Test
+    public void testTrailingArrayIndexSelectsEnclosingProperty() {
+        String sql = sqlFor("/Things(1)/properties/a[0]", "");
+        Assert.assertEquals(1, count(sql, "jsonb_build_object("));
+        Assert.assertTrue(sql.contains("#> array[?::text]"));
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.persistence.postgres;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.querydsl.core.Tuple;
+import de.fraunhofer.iosb.ilt.sta.messagebus.EntityChangedMessage;
+import de.fraunhofer.iosb.ilt.sta.messagebus.MessageBusFactory;
+import de.fraunhofer.iosb.ilt.sta.messagebus.MessageListener;
+import de.fraunhofer.iosb.ilt.sta.metrics.Counter;
+import de.fraunhofer.iosb.ilt.sta.metrics.Metrics;
+import de.fraunhofer.iosb.ilt.sta.model.core.Entity;
+import de.fraunhofer.iosb.ilt.sta.model.core.Id;
+import de.fraunhofer.iosb.ilt.sta.path.EntityType;
+import de.fraunhofer.iosb.ilt.sta.settings.ConfigDefaults;
+import de.fraunhofer.iosb.ilt.sta.settings.Settings;
+import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueInt;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the database rows of the small, rarely changing, entity types that
+ * are often expanded: Things, Sensors, ObservedProperties, Locations and
+ * FeaturesOfInterest. Rows are removed when a message on the message bus
+ * indicates that the entity changed.
+ *
+ * The rows are cached, not the entities, since entities are changed while
+ * they are formatted. Each request creates its own entity from the row.
+ *
+ * @author scf
+ */
+public class EntityCache implements MessageListener, ConfigDefaults {
+
+    /**
+     * The maximum number of cached rows. 0 disables the cache.
+     */
+    @DefaultValueInt(0)
+    public static final String TAG_ENTITY_CACHE_SIZE = "entityCacheSize";
+    /**
+     * The maximum time, in seconds, a row is kept, as a safeguard against
+     * lost messages. 0 for no limit.
+     */
+    @DefaultValueInt(300)
+    public static final String TAG_ENTITY_CACHE_MAX_AGE = "entityCacheMaxAge";
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(EntityCache.class);
+    private static final Counter HITS = Metrics.counter("frost_entity_cache_hits_total", "Number of expanded entities read from the entity cache.");
+    private static final Counter MISSES = Metrics.counter("frost_entity_cache_misses_total", "Number of expanded entities not found in the entity cache.");
+    private static final Set<EntityType> CACHED_TYPES = EnumSet.of(
+            EntityType.THING,
+            EntityType.SENSOR,
+            EntityType.OBSERVEDPROPERTY,
+            EntityType.LOCATION,
+            EntityType.FEATUREOFINTEREST);
+
+    private static EntityCache instance;
+
+    /**
+     * The key of a row. The id is used as String, since ids decoded from the
+     * message bus may have a different class than the ones from the database.
+     */
+    private static class Key {
+
+        private final EntityType type;
+        private final String id;
+
+        public Key(EntityType type, String id) {
+            this.type = type;
+            this.id = id;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, id);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return type == other.type && Objects.equals(id, other.id);
+        }
+    }
+
+    private final Cache<Key, Tuple> rows;
+    /**
+     * The number of changes seen, per entity type.
+     */
+    private final Map<EntityType, AtomicLong> changeCounts = new EnumMap<>(EntityType.class);
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maxSize The maximum number of cached rows.
+     * @param maxAge The maximum time, in seconds, a row is kept. 0 for no
+     * limit.
+     */
+    public EntityCache(int maxSize, int maxAge) {
+        for (EntityType type : CACHED_TYPES) {
+            changeCounts.put(type, new AtomicLong());
+        }
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+                .maximumSize(maxSize);
+        if (maxAge > 0) {
+            builder.expireAfterWrite(maxAge, TimeUnit.SECONDS);
+        }
+        rows = builder.build();
+    }
+
+    /**
+     * Start caching, if enabled in the given (persistence) settings. If the
+     * message bus is not initialised yet, nothing happens, and the next call
+     * tries again.
+     *
+     * @param customSettings The settings to read the configuration from.
+     */
+    public static synchronized void init(Settings customSettings) {
+        if (instance != null) {
+            return;
+        }
+        int maxSize = customSettings.getInt(TAG_ENTITY_CACHE_SIZE, EntityCache.class);
+        if (maxSize <= 0) {
+            return;
+        }
+        EntityCache cache = new EntityCache(maxSize, customSettings.getInt(TAG_ENTITY_CACHE_MAX_AGE, EntityCache.class));
+        try {
+            MessageBusFactory.getMessageBus().addMessageListener(cache);
+        } catch (IllegalStateException ex) {
+            // Without messages the cache can not be kept valid.
+            LOGGER.debug("Message bus not initialised, not caching entities yet.", ex);
+            return;
+        }
+        instance = cache;
+        LOGGER.info("Caching up to {} Things, Sensors, ObservedProperties, Locations and FeaturesOfInterest.", maxSize);
+    }
+
+    /**
+     * @return The instance, or null if entities are not cached.
+     */
+    public static synchronized EntityCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * @param type The entity type to check.
+     * @return true if entities of the given type are cached.
+     */
+    public static boolean isCached(EntityType type) {
+        return CACHED_TYPES.contains(type);
+    }
+
+    /**
+     * Get the row of the given entity, loading it if it is not cached. A
+     * loaded row is not cached if an entity of the same type changed while it
+     * was loaded, since it may be older than that change.
+     *
+     * @param type The type of the entity.
+     * @param id The id of the entity.
+     * @param loader The loader used to fetch the row from the database.
+     * @return The row, or null if the loader did not find it.
+     */
+    public Tuple get(EntityType type, Id id, Supplier<Tuple> loader) {
+        Key key = new Key(type, id.getValue().toString());
+        Tuple row = rows.getIfPresent(key);
+        if (row != null) {
+            HITS.increment();
+            return row;
+        }
+        MISSES.increment();
+        AtomicLong changeCount = changeCounts.get(type);
+        long before = changeCount.get();
+        row = loader.get();
+        if (row == null || changeCount.get() != before) {
+            return row;
+        }
+        rows.put(key, row);
+        if (changeCount.get() != before) {
+            // A change may have been processed before the row was stored.
+            rows.invalidate(key);
+        }
+        return row;
+    }
+
+    @Override
+    public void messageReceived(EntityChangedMessage message) {
+        EntityType type = message.getEntityType();
+        AtomicLong changeCount = type == null ? null : changeCounts.get(type);
+        if (changeCount == null) {
+            return;
+        }
+        changeCount.incrementAndGet();
+        Entity entity = message.getEntity();
+        Id id = entity == null ? null : entity.getId();
+        if (id == null) {
+            rows.asMap().keySet().removeIf(k -> k.type == type);
+        } else {
+            rows.invalidate(new Key(type, id.getValue().toString()));
+        }
+    }
+
+    /**
+     * Remove all rows.
+     */
+    public void clear() {
+        rows.invalidateAll();
+    }
+
+    /**
+     * @return The (approximate) number of cached rows.
+     */
+    public long size() {
+        return rows.size();
+    }
+}
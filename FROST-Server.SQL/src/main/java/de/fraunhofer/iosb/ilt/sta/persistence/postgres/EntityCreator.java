@@ -21,9 +21,13 @@ import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.mysema.commons.lang.CloseableIterator;
 import com.querydsl.core.Tuple;
 import com.querydsl.sql.SQLQuery;
+import de.fraunhofer.iosb.ilt.sta.metrics.Metrics;
+import de.fraunhofer.iosb.ilt.sta.metrics.Timer;
 import de.fraunhofer.iosb.ilt.sta.model.core.Entity;
 import de.fraunhofer.iosb.ilt.sta.model.core.EntitySet;
+import de.fraunhofer.iosb.ilt.sta.model.core.Id;
 import de.fraunhofer.iosb.ilt.sta.model.core.NavigableElement;
+import de.fraunhofer.iosb.ilt.sta.model.ext.LazyJsonValue;
 import de.fraunhofer.iosb.ilt.sta.path.CustomPropertyArrayIndex;
 import de.fraunhofer.iosb.ilt.sta.path.CustomPropertyPathElement;
 import de.fraunhofer.iosb.ilt.sta.path.EntityPathElement;
@@ -53,10 +57,16 @@ public class EntityCreator implements ResourcePathVisitor {
      * The logger for this class.
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(EntityCreator.class);
+    private static final Timer EXECUTE_TIMER = Metrics.timer("frost_sql_execute_seconds", "Time spent executing SQL queries.");
+    private static final Timer CREATE_TIMER = Metrics.timer("frost_entity_create_seconds", "Time spent creating entities from query results.");
     private final PostgresPersistenceManager pm;
     private final ResourcePath path;
     private final Query query;
     private final SQLQuery<Tuple> sqlQuery;
+    /**
+     * The size of the data loaded for this request.
+     */
+    private final DataSize dataSize = new DataSize();
     private Object resultObject;
     /**
      * If resultObject is a property or sub-property, and we are not using
@@ -95,7 +105,9 @@ public class EntityCreator implements ResourcePathVisitor {
     @Override
     public void visit(EntityPathElement element) {
         sqlQuery.limit(2);
+        long startTime = Metrics.start();
         List<Tuple> results = sqlQuery.fetch();
+        EXECUTE_TIMER.record(startTime);
         if (results.size() > 1) {
             throw new IllegalStateException("Expecting an element, yet more than 1 result. Got " + results.size() + " results.");
         }
@@ -105,7 +117,9 @@ public class EntityCreator implements ResourcePathVisitor {
 
         EntityFactory factory;
         factory = pm.getEntityFactories().getFactoryFor(element.getEntityType());
-        Entity entity = factory.create(results.get(0), query, new DataSize());
+        startTime = Metrics.start();
+        Entity entity = factory.create(results.get(0), query, dataSize);
+        CREATE_TIMER.record(startTime);
 
         if (entity == null) {
             throw new IllegalStateException("Failed to create an entity from result set.");
@@ -163,7 +177,10 @@ public class EntityCreator implements ResourcePathVisitor {
             }
         }
         if (existing == null || !existing.isExportObject()) {
-            child = pm.get(ePath, subQuery);
+            child = getCachedEntity(firstNp, existing, subQuery);
+            if (child == null) {
+                child = pm.get(ePath, subQuery, false);
+            }
             entity.setProperty(firstNp, child);
         } else if (existing instanceof EntitySet) {
             expandEntitySet((EntitySet) existing, subQuery);
@@ -172,6 +189,23 @@ public class EntityCreator implements ResourcePathVisitor {
         }
     }
 
+    /**
+     * Get a to-one related entity from the entity cache, if the expand does
+     * not need more than the plain entity.
+     *
+     * @return The entity, or null if it can not be taken from the cache.
+     */
+    private Entity getCachedEntity(NavigationProperty np, NavigableElement existing, Query subQuery) {
+        if (np.isSet || !(existing instanceof Entity) || !EntityCache.isCached(np.type)) {
+            return null;
+        }
+        Id id = ((Entity) existing).getId();
+        if (id == null || !subQuery.getSelect().isEmpty() || !subQuery.getExpand().isEmpty() || subQuery.getFilter() != null) {
+            return null;
+        }
+        return pm.getEntityFactories().getCachedEntity(pm, np.type, id, subQuery, dataSize);
+    }
+
     private void expandEntitySet(EntitySet entitySet, Query subQuery) {
         for (Object subEntity : entitySet) {
             if (subEntity instanceof Entity) {
@@ -193,7 +227,9 @@ public class EntityCreator implements ResourcePathVisitor {
         if (LOGGER.isTraceEnabled()) {
             LOGGER.trace("Query: {}", sqlQuery.getSQL().getSQL());
         }
+        long startTime = Metrics.start();
         CloseableIterator<Tuple> results = sqlQuery.iterate();
+        EXECUTE_TIMER.record(startTime);
         if (LOGGER.isDebugEnabled()) {
             long end = System.currentTimeMillis();
             LOGGER.debug("Query executed in {} ms.", end - start);
@@ -210,7 +246,9 @@ public class EntityCreator implements ResourcePathVisitor {
         if (query.isCountOrDefault()) {
             SQLQuery<Tuple> countQuery = sqlQuery.clone();
             countQuery.select(factory.getPrimaryKey());
+            startTime = Metrics.start();
             int count = (int) countQuery.fetchCount();
+            EXECUTE_TIMER.record(startTime);
             entitySet.setCount(count);
         }
 
@@ -248,6 +286,9 @@ public class EntityCreator implements ResourcePathVisitor {
         if (resultObject instanceof Map) {
             Map map = (Map) resultObject;
             Object inner = map.get(entityName);
+            if (inner instanceof LazyJsonValue) {
+                inner = ((LazyJsonValue) inner).getParsed();
+            }
             if (inner instanceof Map) {
                 map = (Map) inner;
                 if (map.containsKey(name)) {
@@ -272,6 +313,9 @@ public class EntityCreator implements ResourcePathVisitor {
         if (resultObject instanceof Map) {
             Map map = (Map) resultObject;
             Object inner = map.get(entityName);
+            if (inner instanceof LazyJsonValue) {
+                inner = ((LazyJsonValue) inner).getParsed();
+            }
             Object propertyValue = null;
             if (inner instanceof ArrayNode && ((ArrayNode) inner).size() > index) {
                 propertyValue = ((ArrayNode) inner).get(index);
@@ -34,6 +34,8 @@ import com.querydsl.sql.SQLQueryFactory;
 import de.fraunhofer.iosb.ilt.sta.json.deserialize.EntityParser;
 import de.fraunhofer.iosb.ilt.sta.json.deserialize.custom.GeoJsonDeserializier;
 import de.fraunhofer.iosb.ilt.sta.json.serialize.GeoJsonSerializer;
+import de.fraunhofer.iosb.ilt.sta.metrics.Metrics;
+import de.fraunhofer.iosb.ilt.sta.metrics.Timer;
 import de.fraunhofer.iosb.ilt.sta.model.Datastream;
 import de.fraunhofer.iosb.ilt.sta.model.FeatureOfInterest;
 import de.fraunhofer.iosb.ilt.sta.model.MultiDatastream;
@@ -116,6 +118,8 @@ public class EntityFactories<I extends SimpleExpression<J> & Path<J>, J> {
      * The logger for this class.
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(EntityFactories.class);
+    private static final Timer FETCH_TIMER = Metrics.timer("frost_sql_fetch_seconds", "Time spent fetching rows from SQL query results.");
+    private static final Timer CREATE_TIMER = Metrics.timer("frost_entity_create_seconds", "Time spent creating entities from query results.");
     private static ObjectMapper formatter;
 
     public final IdManager<J> idManager;
@@ -169,19 +173,37 @@ public class EntityFactories<I extends SimpleExpression<J> & Path<J>, J> {
         int count = 0;
         DataSize size = new DataSize();
         int top = query.getTopOrDefault();
-        while (tuples.hasNext()) {
-            Tuple tuple = tuples.next();
-            entitySet.add(factory.create(tuple, query, size));
-            count++;
-            if (count >= top) {
-                return entitySet;
+        boolean timed = Metrics.isEnabled();
+        long fetchNanos = 0;
+        long createNanos = 0;
+        try {
+            while (true) {
+                long fetchStart = timed ? System.nanoTime() : 0;
+                if (!tuples.hasNext()) {
+                    return entitySet;
+                }
+                Tuple tuple = tuples.next();
+                long createStart = timed ? System.nanoTime() : 0;
+                entitySet.add(factory.create(tuple, query, size));
+                if (timed) {
+                    fetchNanos += createStart - fetchStart;
+                    createNanos += System.nanoTime() - createStart;
+                }
+                count++;
+                if (count >= top) {
+                    return entitySet;
+                }
+                if (size.getDataSize() > maxDataSize) {
+                    LOGGER.debug("Size limit reached: {} > {}.", size.getDataSize(), maxDataSize);
+                    return entitySet;
+                }
             }
-            if (size.getDataSize() > maxDataSize) {
-                LOGGER.debug("Size limit reached: {} > {}.", size.getDataSize(), maxDataSize);
-                return entitySet;
+        } finally {
+            if (timed) {
+                FETCH_TIMER.recordNanos(fetchNanos);
+                CREATE_TIMER.recordNanos(createNanos);
             }
         }
-        return entitySet;
     }
 
     /**
@@ -200,6 +222,37 @@ public class EntityFactories<I extends SimpleExpression<J> & Path<J>, J> {
         return (EntityFactory<T, I, J>) factory;
     }
 
+    /**
+     * Get the entity with the given type and id through the
+     * {@link EntityCache}. Only used for plain entities: the query must not
+     * have a $select, $filter or $expand.
+     *
+     * @param pm The persistence manager to load the entity with, if it is not
+     * cached.
+     * @param type The type of the entity.
+     * @param id The id of the entity.
+     * @param query The query to create the entity with.
+     * @param dataSize The size of the data loaded for the request, increased
+     * by the size of the entity.
+     * @return The entity, or null if the cache is disabled, entities of the
+     * type are not cached, or the entity does not exist.
+     */
+    public Entity getCachedEntity(PostgresPersistenceManager<I, J> pm, EntityType type, Id id, Query query, DataSize dataSize) {
+        EntityCache cache = EntityCache.getInstance();
+        if (cache == null || !EntityCache.isCached(type)) {
+            return null;
+        }
+        Tuple row = cache.get(type, id, () -> {
+            PathSqlBuilder psb = new PathSqlBuilderImp(pm.getPropertyResolver());
+            SQLQuery<Tuple> sqlQuery = psb.buildFor(type, id, pm.createQueryFactory(), pm.getCoreSettings().getPersistenceSettings());
+            return sqlQuery.fetchFirst();
+        });
+        if (row == null) {
+            return null;
+        }
+        return getFactoryFor(type).create(row, query, dataSize);
+    }
+
     public J getIdFromTuple(Tuple t, I path) {
         return t.get(path);
     }
@@ -0,0 +1,123 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.persistence.postgres;
+
+import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.core.types.dsl.StringPath;
+import com.querydsl.spatial.GeometryPath;
+import de.fraunhofer.iosb.ilt.sta.settings.ConfigDefaults;
+import de.fraunhofer.iosb.ilt.sta.settings.Settings;
+import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValue;
+import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueInt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decides how the geometries of Locations and FeaturesOfInterest are read
+ * from the database.
+ *
+ * In the default TEXT mode, the stored GeoJSON text is read and written to the
+ * response as stored. In GEOJSON mode, PostGIS renders the GEOM column with
+ * ST_AsGeoJSON, with a limited number of decimal digits and, optionally,
+ * simplified. Geometries that are not stored in the GEOM column, and
+ * GeoJSON Features, always come from the text column.
+ *
+ * @author scf
+ */
+public class GeometryReader implements ConfigDefaults {
+
+    /**
+     * The way geometries are read, TEXT or GEOJSON.
+     */
+    @DefaultValue("TEXT")
+    public static final String TAG_GEOMETRY_READ_MODE = "geometryReadMode";
+    /**
+     * The maximum number of decimal digits in coordinates, in GEOJSON mode.
+     */
+    @DefaultValueInt(9)
+    public static final String TAG_GEOJSON_PRECISION = "geoJsonPrecision";
+    /**
+     * The tolerance used to simplify lines and polygons, in the units of the
+     * coordinate reference system, in GEOJSON mode. 0 disables simplification.
+     */
+    @DefaultValue("0")
+    public static final String TAG_GEOJSON_SIMPLIFY_TOLERANCE = "geoJsonSimplifyTolerance";
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(GeometryReader.class);
+
+    public static enum ReadMode {
+        TEXT,
+        GEOJSON
+    }
+
+    private static ReadMode readMode = ReadMode.TEXT;
+    private static int precision = 9;
+    private static double simplifyTolerance = 0;
+
+    private GeometryReader() {
+        // Utility class.
+    }
+
+    /**
+     * Read the configuration from the given (persistence) settings.
+     *
+     * @param customSettings The settings to read the configuration from.
+     */
+    public static synchronized void init(Settings customSettings) {
+        String mode = customSettings.get(TAG_GEOMETRY_READ_MODE, GeometryReader.class);
+        try {
+            readMode = ReadMode.valueOf(mode.trim().toUpperCase());
+        } catch (IllegalArgumentException ex) {
+            LOGGER.error("Unknown {}: {}, using TEXT.", TAG_GEOMETRY_READ_MODE, mode);
+            readMode = ReadMode.TEXT;
+        }
+        precision = customSettings.getInt(TAG_GEOJSON_PRECISION, GeometryReader.class);
+        simplifyTolerance = Double.parseDouble(customSettings.get(TAG_GEOJSON_SIMPLIFY_TOLERANCE, GeometryReader.class));
+    }
+
+    public static ReadMode getReadMode() {
+        return readMode;
+    }
+
+    /**
+     * Get the expression to select to read a geometry. The same expression is
+     * used to get the value from the result tuple, so both the query builder
+     * and the entity factories must use this method.
+     *
+     * @param text The path of the column holding the geometry as text.
+     * @param geom The path of the PostGIS geometry column.
+     * @return The expression that reads the geometry as GeoJSON text.
+     */
+    public static Expression<String> readExpression(StringPath text, GeometryPath<?> geom) {
+        if (readMode == ReadMode.TEXT) {
+            return text;
+        }
+        Expression<?> geometry = geom;
+        if (simplifyTolerance > 0) {
+            geometry = Expressions.template(Object.class, "ST_SimplifyPreserveTopology({0}, {1})", geom, simplifyTolerance);
+        }
+        return Expressions.stringTemplate(
+                "CASE WHEN {0} IS NULL OR {1} LIKE '{\"type\":\"Feature\"%' THEN {1} ELSE ST_AsGeoJSON({2}, {3}) END",
+                geom, text, geometry, precision);
+    }
+
+}
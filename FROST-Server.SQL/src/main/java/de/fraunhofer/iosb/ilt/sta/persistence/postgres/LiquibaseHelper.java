@@ -18,12 +18,18 @@
 package de.fraunhofer.iosb.ilt.sta.persistence.postgres;
 
 import static de.fraunhofer.iosb.ilt.sta.persistence.postgres.PostgresPersistenceManager.LOGGER;
+import de.fraunhofer.iosb.ilt.sta.settings.ConfigDefaults;
+import de.fraunhofer.iosb.ilt.sta.settings.Settings;
+import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueBoolean;
 import de.fraunhofer.iosb.ilt.sta.util.UpgradeFailedException;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import liquibase.Contexts;
 import liquibase.Liquibase;
 import liquibase.database.Database;
@@ -38,17 +44,42 @@ import liquibase.resource.ClassLoaderResourceAccessor;
  *
  * @author scf
  */
-public class LiquibaseHelper {
+public class LiquibaseHelper implements ConfigDefaults {
+
+    /**
+     * Flag indicating the changelogs should create spatial (GiST) indexes on
+     * the geometry columns.
+     */
+    @DefaultValueBoolean(true)
+    public static final String TAG_SPATIAL_INDEXES = "spatialIndexes";
 
     private LiquibaseHelper() {
         // Utility class, should not be instantiated.
     }
 
+    /**
+     * Create the changelog parameters for the entity tables, from the given
+     * (persistence) settings.
+     *
+     * @param customSettings The settings to read the parameters from.
+     * @return The changelog parameters.
+     */
+    public static Map<String, Object> createChangelogParameters(Settings customSettings) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put(TAG_SPATIAL_INDEXES, Boolean.toString(customSettings.getBoolean(TAG_SPATIAL_INDEXES, LiquibaseHelper.class)));
+        return parameters;
+    }
+
     public static String checkForUpgrades(Connection connection, String liquibaseChangelogFilename) {
+        return checkForUpgrades(connection, liquibaseChangelogFilename, Collections.emptyMap());
+    }
+
+    public static String checkForUpgrades(Connection connection, String liquibaseChangelogFilename, Map<String, Object> parameters) {
         StringWriter out = new StringWriter();
         try {
             Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
             Liquibase liquibase = new liquibase.Liquibase(liquibaseChangelogFilename, new ClassLoaderResourceAccessor(), database);
+            setParameters(liquibase, parameters);
             liquibase.update(new Contexts(), out);
             database.commit();
             database.close();
@@ -69,9 +100,14 @@ public class LiquibaseHelper {
     }
 
     public static boolean doUpgrades(Connection connection, String liquibaseChangelogFilename, Writer out) throws UpgradeFailedException, IOException {
+        return doUpgrades(connection, liquibaseChangelogFilename, Collections.emptyMap(), out);
+    }
+
+    public static boolean doUpgrades(Connection connection, String liquibaseChangelogFilename, Map<String, Object> parameters, Writer out) throws UpgradeFailedException, IOException {
         try {
             Database database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
             Liquibase liquibase = new liquibase.Liquibase(liquibaseChangelogFilename, new ClassLoaderResourceAccessor(), database);
+            setParameters(liquibase, parameters);
             liquibase.update(new Contexts());
             database.commit();
             database.close();
@@ -93,4 +129,10 @@ public class LiquibaseHelper {
         return true;
     }
 
+    private static void setParameters(Liquibase liquibase, Map<String, Object> parameters) {
+        for (Map.Entry<String, Object> entry : parameters.entrySet()) {
+            liquibase.setChangeLogParameter(entry.getKey(), entry.getValue());
+        }
+    }
+
 }
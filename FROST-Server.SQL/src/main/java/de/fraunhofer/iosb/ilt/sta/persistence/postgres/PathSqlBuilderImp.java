@@ -18,13 +18,21 @@
 package de.fraunhofer.iosb.ilt.sta.persistence.postgres;
 
 import com.querydsl.core.Tuple;
+import com.querydsl.core.types.ConstantImpl;
 import com.querydsl.core.types.Expression;
+import com.querydsl.core.types.ExpressionUtils;
 import com.querydsl.core.types.Path;
+import com.querydsl.core.types.Predicate;
 import com.querydsl.core.types.SubQueryExpression;
 import com.querydsl.core.types.dsl.ComparableExpressionBase;
+import com.querydsl.core.types.dsl.Expressions;
+import com.querydsl.sql.RelationalPath;
+import com.querydsl.sql.SQLExpressions;
 import com.querydsl.sql.SQLQuery;
 import com.querydsl.sql.SQLQueryFactory;
 import com.querydsl.sql.dml.SQLDeleteClause;
+import de.fraunhofer.iosb.ilt.sta.metrics.Metrics;
+import de.fraunhofer.iosb.ilt.sta.metrics.Timer;
 import de.fraunhofer.iosb.ilt.sta.model.core.Id;
 import de.fraunhofer.iosb.ilt.sta.path.CustomPropertyArrayIndex;
 import de.fraunhofer.iosb.ilt.sta.path.CustomPropertyPathElement;
@@ -53,7 +61,10 @@ import de.fraunhofer.iosb.ilt.sta.persistence.postgres.relationalpaths.QCollecti
 import de.fraunhofer.iosb.ilt.sta.query.Expand;
 import de.fraunhofer.iosb.ilt.sta.query.OrderBy;
 import de.fraunhofer.iosb.ilt.sta.query.Query;
+import de.fraunhofer.iosb.ilt.sta.query.expression.ExpressionSimplifier;
+import de.fraunhofer.iosb.ilt.sta.query.expression.constant.BooleanConstant;
 import de.fraunhofer.iosb.ilt.sta.settings.PersistenceSettings;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
@@ -75,6 +86,7 @@ public class PathSqlBuilderImp<I extends ComparableExpressionBase<J> & Path<J>,
      * The logger for this class.
      */
     private static final Logger LOGGER = LoggerFactory.getLogger(PathSqlBuilderImp.class);
+    private static final Timer BUILD_TIMER = Metrics.timer("frost_sql_build_seconds", "Time spent building SQL queries.");
     private static final String DO_NOT_KNOW_HOW_TO_JOIN = "Do not know how to join";
     /**
      * The prefix used for table aliases. The main entity is always
@@ -92,6 +104,19 @@ public class PathSqlBuilderImp<I extends ComparableExpressionBase<J> & Path<J>,
     private int aliasNr = 0;
     private boolean isFilter = false;
     private boolean needsDistinct = false;
+    /**
+     * The sub query holding the joins needed by the filter. The filter is
+     * added to the main query as an EXISTS on this sub query, so joining
+     * to-many relations does not duplicate the rows of the main table.
+     */
+    private SQLQuery<Integer> filterQuery;
+    /**
+     * When the path ends in a custom property, like
+     * /Things(1)/properties/a/b, the JSON property and the keys [a, b]. Only
+     * that part of the JSON is fetched.
+     */
+    private EntityProperty jsonProperty;
+    private final List<String> jsonPath = new ArrayList<>();
 
     public PathSqlBuilderImp(PropertyResolver<I, J> propertyResolver) {
         this.propertyResolver = propertyResolver;
@@ -100,21 +125,34 @@ public class PathSqlBuilderImp<I extends ComparableExpressionBase<J> & Path<J>,
 
     @Override
     public synchronized SQLQuery<Tuple> buildFor(EntityType entityType, Id id, SQLQueryFactory sqlQueryFactory, PersistenceSettings settings) {
+        long startTime = Metrics.start();
         selectedProperties = Collections.emptySet();
         sqlQuery = sqlQueryFactory.select();
         lastPath.clear();
         aliasNr = 0;
         queryEntityType(entityType, id, lastPath);
+        BUILD_TIMER.record(startTime);
         return sqlQuery;
     }
 
     @Override
     public synchronized SQLQuery<Tuple> buildFor(ResourcePath path, Query query, SQLQueryFactory sqlQueryFactory, PersistenceSettings settings) {
+        long startTime = Metrics.start();
         findSelectedProperties(query);
+        if (path.isRef()) {
+            // Only the selfLinks are returned.
+            selectedProperties.clear();
+            selectedProperties.add(EntityProperty.ID);
+        }
+        jsonProperty = null;
+        jsonPath.clear();
 
         sqlQuery = sqlQueryFactory.select();
         lastPath.clear();
         aliasNr = 0;
+        isFilter = false;
+        needsDistinct = false;
+        filterQuery = null;
 
         int count = path.size();
         for (int i = count - 1; i >= 0; i--) {
@@ -124,6 +162,7 @@ public class PathSqlBuilderImp<I extends ComparableExpressionBase<J> & Path<J>,
 
         addOrderAndFilter(query, settings);
 
+        BUILD_TIMER.record(startTime);
         return sqlQuery;
     }
 
@@ -155,9 +194,14 @@ public class PathSqlBuilderImp<I extends ComparableExpressionBase<J> & Path<J>,
                 handler.addOrderbyToQuery(ob, sqlQuery);
             }
             isFilter = true;
-            de.fraunhofer.iosb.ilt.sta.query.expression.Expression filter = query.getFilter();
-            if (filter != null) {
-                handler.addFilterToQuery(filter, sqlQuery);
+            de.fraunhofer.iosb.ilt.sta.query.expression.Expression filter = ExpressionSimplifier.simplify(query.getFilter());
+            if (filter != null && !new BooleanConstant(true).equals(filter)) {
+                Predicate predicate = handler.filterToPredicate(filter);
+                if (filterQuery == null) {
+                    sqlQuery.where(predicate);
+                } else {
+                    sqlQuery.where(filterQuery.where(predicate).exists());
+                }
             }
             if (settings.getAlwaysOrderbyId()) {
                 sqlQuery.orderBy(mainTable.getIdPath().asc());
@@ -202,6 +246,23 @@ public class PathSqlBuilderImp<I extends ComparableExpressionBase<J> & Path<J>,
         }
     }
 
+    /**
+     * Join the given table. When building the filter, the join is added to
+     * the filter sub query instead of the main query.
+     *
+     * @param target The table to join.
+     * @param on The join condition.
+     */
+    private void innerJoin(RelationalPath<?> target, Predicate on) {
+        if (!isFilter) {
+            sqlQuery.innerJoin(target).on(on);
+        } else if (filterQuery == null) {
+            filterQuery = SQLExpressions.selectOne().from(target).where(on);
+        } else {
+            filterQuery.innerJoin(target).on(on);
+        }
+    }
+
     @Override
     public void visit(EntityPathElement element) {
         queryEntityType(element.getEntityType(), element.getId(), lastPath);
@@ -216,16 +277,76 @@ public class PathSqlBuilderImp<I extends ComparableExpressionBase<J> & Path<J>,
     public void visit(PropertyPathElement element) {
         selectedProperties.add(element.getProperty());
         selectedProperties.add(EntityProperty.ID);
+        if (element.getProperty() == EntityProperty.PROPERTIES || element.getProperty() == EntityProperty.PARAMETERS) {
+            jsonProperty = (EntityProperty) element.getProperty();
+        } else {
+            jsonPath.clear();
+        }
     }
 
     @Override
     public void visit(CustomPropertyPathElement element) {
-        // noting to do for custom properties.
+        // The path is visited back to front.
+        jsonPath.add(0, element.getName());
     }
 
     @Override
     public void visit(CustomPropertyArrayIndex element) {
-        // noting to do for custom properties.
+        // Only fetch the JSON up to the first array.
+        jsonPath.clear();
+    }
+
+    /**
+     * Get the expressions to select for the main table. When the path ends in
+     * a custom property, the JSON column is replaced by an object that only
+     * contains that property, under the same name.
+     *
+     * @param qPath The main table.
+     * @return The expressions to select.
+     */
+    @SuppressWarnings("unchecked")
+    private Expression<?>[] selectExpressions(Path<?> qPath) {
+        Expression<?>[] expressions = propertyResolver.getExpressions(qPath, selectedProperties);
+        if (jsonProperty == null || jsonPath.isEmpty()) {
+            return expressions;
+        }
+        Expression<?> column = propertyResolver.expressionForProperty(jsonProperty, qPath);
+        for (int i = 0; i < expressions.length; i++) {
+            if (column.equals(expressions[i]) && column instanceof Path) {
+                expressions[i] = ExpressionUtils.as(jsonSubObject(column), (Path<String>) column);
+            }
+        }
+        return expressions;
+    }
+
+    /**
+     * Creates an expression that builds a JSON object that only contains the
+     * given jsonPath: {"a":{"b":value}}, as text. If the path does not exist,
+     * the object is empty, so the property is reported as not found.
+     */
+    private Expression<String> jsonSubObject(Expression<?> column) {
+        int count = jsonPath.size();
+        Object[] args = new Object[count + 1];
+        args[0] = column;
+        StringBuilder pathArray = new StringBuilder("ARRAY[");
+        StringBuilder template = new StringBuilder();
+        StringBuilder value = new StringBuilder("{0}::jsonb");
+        for (int i = 1; i <= count; i++) {
+            args[i] = ConstantImpl.create(jsonPath.get(i - 1));
+            if (i > 1) {
+                pathArray.append(", ");
+            }
+            pathArray.append('{').append(i).append("}::text");
+            template.append("jsonb_build_object({").append(i).append("}::text, ");
+            value.append("->{").append(i).append("}::text");
+        }
+        pathArray.append(']');
+        template.append(value);
+        for (int i = 0; i < count; i++) {
+            template.append(')');
+        }
+        String caseTemplate = "CASE WHEN {0}::jsonb #> " + pathArray + " IS NULL THEN '{}' ELSE " + template + "::text END";
+        return Expressions.stringTemplate(caseTemplate, args);
     }
 
     @Override
@@ -296,31 +417,28 @@ public class PathSqlBuilderImp<I extends ComparableExpressionBase<J> & Path<J>,
         AbstractQDatastreams<? extends AbstractQDatastreams, I, J> qDataStreams = qCollection.qDatastreams.newWithAlias(alias);
         boolean added = true;
         if (last.getType() == null) {
-            sqlQuery.select(propertyResolver.getExpressions(qDataStreams, selectedProperties));
+            sqlQuery.select(selectExpressions(qDataStreams));
             sqlQuery.from(qDataStreams);
         } else {
             switch (last.getType()) {
                 case THING:
                     AbstractQThings<?, I, J> qThings = (AbstractQThings<?, I, J>) last.getqPath();
-                    sqlQuery.innerJoin(qDataStreams).on(qDataStreams.getThingId().eq(qThings.getId()));
-                    needsDistinct = true;
+                    innerJoin(qDataStreams, qDataStreams.getThingId().eq(qThings.getId()));
                     break;
 
                 case OBSERVATION:
                     AbstractQObservations<?, I, J> qObservations = (AbstractQObservations<?, I, J>) last.getqPath();
-                    sqlQuery.innerJoin(qDataStreams).on(qDataStreams.getId().eq(qObservations.getDatastreamId()));
+                    innerJoin(qDataStreams, qDataStreams.getId().eq(qObservations.getDatastreamId()));
                     break;
 
                 case SENSOR:
                     AbstractQSensors<?, I, J> qSensors = (AbstractQSensors<?, I, J>) last.getqPath();
-                    sqlQuery.innerJoin(qDataStreams).on(qDataStreams.getSensorId().eq(qSensors.getId()));
-                    needsDistinct = true;
+                    innerJoin(qDataStreams, qDataStreams.getSensorId().eq(qSensors.getId()));
                     break;
 
                 case OBSERVEDPROPERTY:
                     AbstractQObsProperties<?, I, J> qObsProperties = (AbstractQObsProperties<?, I, J>) last.getqPath();
-                    sqlQuery.innerJoin(qDataStreams).on(qDataStreams.getObsPropertyId().eq(qObsProperties.getId()));
-                    needsDistinct = true;
+                    innerJoin(qDataStreams, qDataStreams.getObsPropertyId().eq(qObsProperties.getId()));
                     break;
 
                 case DATASTREAM:
@@ -348,36 +466,32 @@ public class PathSqlBuilderImp<I extends ComparableExpressionBase<J> & Path<J>,
         AbstractQMultiDatastreams<? extends AbstractQMultiDatastreams, I, J> qMultiDataStreams = qCollection.qMultiDatastreams.newWithAlias(alias);
         boolean added = true;
         if (last.getType() == null) {
-            sqlQuery.select(propertyResolver.getExpressions(qMultiDataStreams, selectedProperties));
+            sqlQuery.select(selectExpressions(qMultiDataStreams));
             sqlQuery.from(qMultiDataStreams);
         } else {
             switch (last.getType()) {
                 case THING:
                     AbstractQThings<?, I, J> qThings = (AbstractQThings<?, I, J>) last.getqPath();
-                    sqlQuery.innerJoin(qMultiDataStreams).on(qMultiDataStreams.getThingId().eq(qThings.getId()));
-                    needsDistinct = true;
+                    innerJoin(qMultiDataStreams, qMultiDataStreams.getThingId().eq(qThings.getId()));
                     break;
 
                 case OBSERVATION:
                     AbstractQObservations<?, I, J> qObservations = (AbstractQObservations<?, I, J>) last.getqPath();
-                    sqlQuery.innerJoin(qMultiDataStreams).on(qMultiDataStreams.getId().eq(qObservations.getMultiDatastreamId()));
+                    innerJoin(qMultiDataStreams, qMultiDataStreams.getId().eq(qObservations.getMultiDatastreamId()));
                     break;
 
                 case SENSOR:
                     AbstractQSensors<?, I, J> qSensors = (AbstractQSensors<?, I, J>) last.getqPath();
-                    sqlQuery.innerJoin(qMultiDataStreams).on(qMultiDataStreams.getSensorId().eq(qSensors.getId()));
-                    needsDistinct = true;
+                    innerJoin(qMultiDataStreams, qMultiDataStreams.getSensorId().eq(qSensors.getId()));
                     break;
 
                 case OBSERVEDPROPERTY:
                     AbstractQObsProperties<?, I, J> qObsProperties = (AbstractQObsProperties<?, I, J>) last.getqPath();
                     AbstractQMultiDatastreamsObsProperties<?, I, J> qMdOp = qCollection.qMultiDatastreamsObsProperties.newWithAlias(alias + "j1");
-                    sqlQuery.innerJoin(qMdOp).on(qObsProperties.getId().eq(qMdOp.getObsPropertyId()));
-                    sqlQuery.innerJoin(qMultiDataStreams).on(qMultiDataStreams.getId().eq(qMdOp.getMultiDatastreamId()));
+                    innerJoin(qMdOp, qObsProperties.getId().eq(qMdOp.getObsPropertyId()));
+                    innerJoin(qMultiDataStreams, qMultiDataStreams.getId().eq(qMdOp.getMultiDatastreamId()));
                     if (!isFilter) {
                         sqlQuery.orderBy(qMdOp.rank.asc());
-                    } else {
-                        needsDistinct = true;
                     }
                     break;
 
@@ -406,31 +520,30 @@ public class PathSqlBuilderImp<I extends ComparableExpressionBase<J> & Path<J>,
         AbstractQThings<?, I, J> qThings = qCollection.qThings.newWithAlias(alias);
         boolean added = true;
         if (last.getType() == null) {
-            sqlQuery.select(propertyResolver.getExpressions(qThings, selectedProperties));
+            sqlQuery.select(selectExpressions(qThings));
             sqlQuery.from(qThings);
         } else {
             switch (last.getType()) {
                 case DATASTREAM:
                     AbstractQDatastreams<?, I, J> qDatastreams = (AbstractQDatastreams<?, I, J>) last.getqPath();
-                    sqlQuery.innerJoin(qThings).on(qThings.getId().eq(qDatastreams.getThingId()));
+                    innerJoin(qThings, qThings.getId().eq(qDatastreams.getThingId()));
                     break;
 
                 case MULTIDATASTREAM:
                     AbstractQMultiDatastreams<?, I, J> qMultiDatastreams = (AbstractQMultiDatastreams<?, I, J>) last.getqPath();
-                    sqlQuery.innerJoin(qThings).on(qThings.getId().eq(qMultiDatastreams.getThingId()));
+                    innerJoin(qThings, qThings.getId().eq(qMultiDatastreams.getThingId()));
                     break;
 
                 case HISTORICALLOCATION:
                     AbstractQHistLocations<?, I, J> qHistLocations = (AbstractQHistLocations<?, I, J>) last.getqPath();
-                    sqlQuery.innerJoin(qThings).on(qThings.getId().eq(qHistLocations.getThingId()));
+                    innerJoin(qThings, qThings.getId().eq(qHistLocations.getThingId()));
                     break;
 
                 case LOCATION:
                     AbstractQLocations<?, I, J> qLocations = (AbstractQLocations<?, I, J>) last.getqPath();
                     AbstractQThingsLocations<?, I, J> qTL = qCollection.qThingsLocations.newWithAlias(alias + "j1");
-                    sqlQuery.innerJoin(qTL).on(qLocations.getId().eq(qTL.getLocationId()));
-                    sqlQuery.innerJoin(qThings).on(qThings.getId().eq(qTL.getThingId()));
-                    needsDistinct = true;
+                    innerJoin(qTL, qLocations.getId().eq(qTL.getLocationId()));
+                    innerJoin(qThings, qThings.getId().eq(qTL.getThingId()));
                     break;
 
                 case THING:
@@ -458,13 +571,13 @@ public class PathSqlBuilderImp<I extends ComparableExpressionBase<J> & Path<J>,
         AbstractQFeatures<?, I, J> qFeatures = qCollection.qFeatures.newWithAlias(alias);
         boolean added = true;
         if (last.getType() == null) {
-            sqlQuery.select(propertyResolver.getExpressions(qFeatures, selectedProperties));
+            sqlQuery.select(selectExpressions(qFeatures));
             sqlQuery.from(qFeatures);
         } else {
             switch (last.getType()) {
                 case OBSERVATION:
                     AbstractQObservations<?, I, J> qObservations = (AbstractQObservations<?, I, J>) last.getqPath();
-                    sqlQuery.innerJoin(qFeatures).on(qFeatures.getId().eq(qObservations.getFeatureId()));
+                    innerJoin(qFeatures, qFeatures.getId().eq(qObservations.getFeatureId()));
                     break;
 
                 case FEATUREOFINTEREST:
@@ -492,22 +605,20 @@ public class PathSqlBuilderImp<I extends ComparableExpressionBase<J> & Path<J>,
         AbstractQHistLocations<?, I, J> qHistLocations = qCollection.qHistLocations.newWithAlias(alias);
         boolean added = true;
         if (last.getType() == null) {
-            sqlQuery.select(propertyResolver.getExpressions(qHistLocations, selectedProperties));
+            sqlQuery.select(selectExpressions(qHistLocations));
             sqlQuery.from(qHistLocations);
         } else {
             switch (last.getType()) {
                 case THING:
                     AbstractQThings<?, I, J> qThings = (AbstractQThings<?, I, J>) last.getqPath();
-                    sqlQuery.innerJoin(qHistLocations).on(qThings.getId().eq(qHistLocations.getThingId()));
-                    needsDistinct = true;
+                    innerJoin(qHistLocations, qThings.getId().eq(qHistLocations.getThingId()));
                     break;
 
                 case LOCATION:
                     AbstractQLocations<?, I, J> qLocations = (AbstractQLocations<?, I, J>) last.getqPath();
                     AbstractQLocationsHistLocations<?, I, J> qLHL = qCollection.qLocationsHistLocations.newWithAlias(alias + "j1");
-                    sqlQuery.innerJoin(qLHL).on(qLocations.getId().eq(qLHL.getLocationId()));
-                    sqlQuery.innerJoin(qHistLocations).on(qHistLocations.getId().eq(qLHL.getHistLocationId()));
-                    needsDistinct = true;
+                    innerJoin(qLHL, qLocations.getId().eq(qLHL.getLocationId()));
+                    innerJoin(qHistLocations, qHistLocations.getId().eq(qLHL.getHistLocationId()));
                     break;
 
                 case HISTORICALLOCATION:
@@ -535,24 +646,22 @@ public class PathSqlBuilderImp<I extends ComparableExpressionBase<J> & Path<J>,
         AbstractQLocations<?, I, J> qLocations = qCollection.qLocations.newWithAlias(alias);
         boolean added = true;
         if (last.getType() == null) {
-            sqlQuery.select(propertyResolver.getExpressions(qLocations, selectedProperties));
+            sqlQuery.select(selectExpressions(qLocations));
             sqlQuery.from(qLocations);
         } else {
             switch (last.getType()) {
                 case THING:
                     AbstractQThings<?, I, J> qThings = (AbstractQThings<?, I, J>) last.getqPath();
                     AbstractQThingsLocations<?, I, J> qTL = qCollection.qThingsLocations.newWithAlias(alias + "j1");
-                    sqlQuery.innerJoin(qTL).on(qThings.getId().eq(qTL.getThingId()));
-                    sqlQuery.innerJoin(qLocations).on(qLocations.getId().eq(qTL.getLocationId()));
-                    needsDistinct = true;
+                    innerJoin(qTL, qThings.getId().eq(qTL.getThingId()));
+                    innerJoin(qLocations, qLocations.getId().eq(qTL.getLocationId()));
                     break;
 
                 case HISTORICALLOCATION:
                     AbstractQHistLocations<?, I, J> qHistLocations = (AbstractQHistLocations<?, I, J>) last.getqPath();
                     AbstractQLocationsHistLocations<?, I, J> qLHL = qCollection.qLocationsHistLocations.newWithAlias(alias + "j1");
-                    sqlQuery.innerJoin(qLHL).on(qHistLocations.getId().eq(qLHL.getHistLocationId()));
-                    sqlQuery.innerJoin(qLocations).on(qLocations.getId().eq(qLHL.getLocationId()));
-                    needsDistinct = true;
+                    innerJoin(qLHL, qHistLocations.getId().eq(qLHL.getHistLocationId()));
+                    innerJoin(qLocations, qLocations.getId().eq(qLHL.getLocationId()));
                     break;
 
                 case LOCATION:
@@ -580,18 +689,18 @@ public class PathSqlBuilderImp<I extends ComparableExpressionBase<J> & Path<J>,
         AbstractQSensors<? extends AbstractQSensors, I, J> qSensors = qCollection.qSensors.newWithAlias(alias);
         boolean added = true;
         if (last.getType() == null) {
-            sqlQuery.select(propertyResolver.getExpressions(qSensors, selectedProperties));
+            sqlQuery.select(selectExpressions(qSensors));
             sqlQuery.from(qSensors);
         } else {
             switch (last.getType()) {
                 case DATASTREAM:
                     AbstractQDatastreams<?, I, J> qDatastreams = (AbstractQDatastreams<?, I, J>) last.getqPath();
-                    sqlQuery.innerJoin(qSensors).on(qSensors.getId().eq(qDatastreams.getSensorId()));
+                    innerJoin(qSensors, qSensors.getId().eq(qDatastreams.getSensorId()));
                     break;
 
                 case MULTIDATASTREAM:
                     AbstractQMultiDatastreams<?, I, J> qMultiDatastreams = (AbstractQMultiDatastreams<?, I, J>) last.getqPath();
-                    sqlQuery.innerJoin(qSensors).on(qSensors.getId().eq(qMultiDatastreams.getSensorId()));
+                    innerJoin(qSensors, qSensors.getId().eq(qMultiDatastreams.getSensorId()));
                     break;
 
                 case SENSOR:
@@ -619,26 +728,23 @@ public class PathSqlBuilderImp<I extends ComparableExpressionBase<J> & Path<J>,
         AbstractQObservations<? extends AbstractQObservations, I, J> qObservations = qCollection.qObservations.newWithAlias(alias);
         boolean added = true;
         if (last.getType() == null) {
-            sqlQuery.select(propertyResolver.getExpressions(qObservations, selectedProperties));
+            sqlQuery.select(selectExpressions(qObservations));
             sqlQuery.from(qObservations);
         } else {
             switch (last.getType()) {
                 case FEATUREOFINTEREST:
                     AbstractQFeatures<?, I, J> qFeatures = (AbstractQFeatures<?, I, J>) last.getqPath();
-                    sqlQuery.innerJoin(qObservations).on(qFeatures.getId().eq(qObservations.getFeatureId()));
-                    needsDistinct = true;
+                    innerJoin(qObservations, qFeatures.getId().eq(qObservations.getFeatureId()));
                     break;
 
                 case DATASTREAM:
                     AbstractQDatastreams<?, I, J> qDatastreams = (AbstractQDatastreams<?, I, J>) last.getqPath();
-                    sqlQuery.innerJoin(qObservations).on(qDatastreams.getId().eq(qObservations.getDatastreamId()));
-                    needsDistinct = true;
+                    innerJoin(qObservations, qDatastreams.getId().eq(qObservations.getDatastreamId()));
                     break;
 
                 case MULTIDATASTREAM:
                     AbstractQMultiDatastreams<?, I, J> qMultiDatastreams = (AbstractQMultiDatastreams<?, I, J>) last.getqPath();
-                    sqlQuery.innerJoin(qObservations).on(qMultiDatastreams.getId().eq(qObservations.getMultiDatastreamId()));
-                    needsDistinct = true;
+                    innerJoin(qObservations, qMultiDatastreams.getId().eq(qObservations.getMultiDatastreamId()));
                     break;
 
                 case OBSERVATION:
@@ -666,21 +772,24 @@ public class PathSqlBuilderImp<I extends ComparableExpressionBase<J> & Path<J>,
         AbstractQObsProperties<?, I, J> qObsProperties = qCollection.qObsProperties.newWithAlias(alias);
         boolean added = true;
         if (last.getType() == null) {
-            sqlQuery.select(propertyResolver.getExpressions(qObsProperties, selectedProperties));
+            sqlQuery.select(selectExpressions(qObsProperties));
             sqlQuery.from(qObsProperties);
         } else {
             switch (last.getType()) {
                 case MULTIDATASTREAM:
                     AbstractQMultiDatastreams<?, I, J> qMultiDatastreams = (AbstractQMultiDatastreams<?, I, J>) last.getqPath();
                     AbstractQMultiDatastreamsObsProperties<?, I, J> qMdOp = qCollection.qMultiDatastreamsObsProperties.newWithAlias(alias + "j1");
-                    sqlQuery.innerJoin(qMdOp).on(qMultiDatastreams.getId().eq(qMdOp.getMultiDatastreamId()));
-                    sqlQuery.innerJoin(qObsProperties).on(qObsProperties.getId().eq(qMdOp.getObsPropertyId()));
-                    needsDistinct = true;
+                    innerJoin(qMdOp, qMultiDatastreams.getId().eq(qMdOp.getMultiDatastreamId()));
+                    innerJoin(qObsProperties, qObsProperties.getId().eq(qMdOp.getObsPropertyId()));
+                    if (!isFilter) {
+                        // A MultiDatastream can have the same ObservedProperty more than once.
+                        needsDistinct = true;
+                    }
                     break;
 
                 case DATASTREAM:
                     AbstractQDatastreams<?, I, J> qDatastreams = (AbstractQDatastreams<?, I, J>) last.getqPath();
-                    sqlQuery.innerJoin(qObsProperties).on(qObsProperties.getId().eq(qDatastreams.getObsPropertyId()));
+                    innerJoin(qObsProperties, qObsProperties.getId().eq(qDatastreams.getObsPropertyId()));
                     break;
                 case OBSERVEDPROPERTY:
                     added = false;
@@ -63,6 +63,7 @@ import de.fraunhofer.iosb.ilt.sta.query.expression.constant.GeoJsonConstant;
 import de.fraunhofer.iosb.ilt.sta.query.expression.constant.IntegerConstant;
 import de.fraunhofer.iosb.ilt.sta.query.expression.constant.IntervalConstant;
 import de.fraunhofer.iosb.ilt.sta.query.expression.constant.LineStringConstant;
+import de.fraunhofer.iosb.ilt.sta.query.expression.constant.NumericConstant;
 import de.fraunhofer.iosb.ilt.sta.query.expression.constant.PointConstant;
 import de.fraunhofer.iosb.ilt.sta.query.expression.constant.PolygonConstant;
 import de.fraunhofer.iosb.ilt.sta.query.expression.constant.StringConstant;
@@ -168,18 +169,24 @@ public class PgExpressionHandler implements ExpressionVisitor<Expression> {
     }
 
     public void addFilterToQuery(de.fraunhofer.iosb.ilt.sta.query.expression.Expression filter, SQLQuery<Tuple> sqlQuery) {
+        sqlQuery.where(filterToPredicate(filter));
+    }
+
+    /**
+     * Translate the given filter into a predicate.
+     *
+     * @param filter The filter to translate.
+     * @return The predicate.
+     */
+    public Predicate filterToPredicate(de.fraunhofer.iosb.ilt.sta.query.expression.Expression filter) {
         Expression filterExpression = filter.accept(this);
         if (filterExpression instanceof Predicate) {
-            Predicate predicate = (Predicate) filterExpression;
-            sqlQuery.where(predicate);
-            return;
+            return (Predicate) filterExpression;
         } else if (filterExpression instanceof ListExpression) {
             ListExpression listExpression = (ListExpression) filterExpression;
             for (Expression expression : listExpression.getExpressions().values()) {
                 if (expression instanceof Predicate) {
-                    Predicate predicate = (Predicate) expression;
-                    sqlQuery.where(predicate);
-                    return;
+                    return (Predicate) expression;
                 }
             }
         }
@@ -675,6 +682,10 @@ public class PgExpressionHandler implements ExpressionVisitor<Expression> {
     @Override
     public Expression<?> visit(GreaterEqual node) {
         List<de.fraunhofer.iosb.ilt.sta.query.expression.Expression> params = node.getParameters();
+        BooleanExpression within = distanceWithin(params.get(1), params.get(0), false);
+        if (within != null) {
+            return within;
+        }
         Expression<?> p1 = params.get(0).accept(this);
         Expression<?> p2 = params.get(1).accept(this);
         if (p1 instanceof TimeExpression) {
@@ -703,6 +714,10 @@ public class PgExpressionHandler implements ExpressionVisitor<Expression> {
     @Override
     public Expression<?> visit(GreaterThan node) {
         List<de.fraunhofer.iosb.ilt.sta.query.expression.Expression> params = node.getParameters();
+        BooleanExpression within = distanceWithin(params.get(1), params.get(0), true);
+        if (within != null) {
+            return within;
+        }
         Expression<?> p1 = params.get(0).accept(this);
         Expression<?> p2 = params.get(1).accept(this);
         if (p1 instanceof TimeExpression) {
@@ -731,6 +746,10 @@ public class PgExpressionHandler implements ExpressionVisitor<Expression> {
     @Override
     public Expression<?> visit(LessEqual node) {
         List<de.fraunhofer.iosb.ilt.sta.query.expression.Expression> params = node.getParameters();
+        BooleanExpression within = distanceWithin(params.get(0), params.get(1), false);
+        if (within != null) {
+            return within;
+        }
         Expression<?> p1 = params.get(0).accept(this);
         Expression<?> p2 = params.get(1).accept(this);
         if (p1 instanceof TimeExpression) {
@@ -760,6 +779,10 @@ public class PgExpressionHandler implements ExpressionVisitor<Expression> {
     @Override
     public Expression<?> visit(LessThan node) {
         List<de.fraunhofer.iosb.ilt.sta.query.expression.Expression> params = node.getParameters();
+        BooleanExpression within = distanceWithin(params.get(0), params.get(1), true);
+        if (within != null) {
+            return within;
+        }
         Expression<?> p1 = params.get(0).accept(this);
         Expression<?> p2 = params.get(1).accept(this);
         if (p1 instanceof TimeExpression) {
@@ -922,6 +945,33 @@ public class PgExpressionHandler implements ExpressionVisitor<Expression> {
         return g1.distance(g2);
     }
 
+    /**
+     * Rewrite geo.distance(g1, g2) lt/le d into ST_DWithin(g1, g2, d). Unlike
+     * a comparison on ST_Distance, ST_DWithin can use a spatial index.
+     *
+     * @param distance The parameter that may be a geo.distance.
+     * @param limit The parameter that may be a numeric constant.
+     * @param strict true if the distance must be strictly less than the
+     * limit.
+     * @return The rewritten expression, or null if the comparison is not a
+     * distance compared to a constant.
+     */
+    private BooleanExpression distanceWithin(de.fraunhofer.iosb.ilt.sta.query.expression.Expression distance, de.fraunhofer.iosb.ilt.sta.query.expression.Expression limit, boolean strict) {
+        if (!(distance instanceof GeoDistance) || !(limit instanceof NumericConstant)) {
+            return null;
+        }
+        List<de.fraunhofer.iosb.ilt.sta.query.expression.Expression> params = ((GeoDistance) distance).getParameters();
+        GeometryExpression g1 = getSingleOfType(GeometryExpression.class, params.get(0).accept(this));
+        GeometryExpression g2 = getSingleOfType(GeometryExpression.class, params.get(1).accept(this));
+        double value = ((NumericConstant<?>) limit).getValue().doubleValue();
+        BooleanExpression within = Expressions.booleanTemplate("ST_DWithin({0}, {1}, {2})", g1, g2, value);
+        if (strict) {
+            // ST_DWithin includes the limit itself.
+            return within.and(g1.distance(g2).lt(value));
+        }
+        return within;
+    }
+
     @Override
     public Expression<?> visit(GeoIntersects node) {
         de.fraunhofer.iosb.ilt.sta.query.expression.Expression p1 = node.getParameters().get(0);
@@ -77,12 +77,18 @@ public abstract class PostgresPersistenceManager<I extends SimpleExpression<J> &
     private CoreSettings settings;
     private ConnectionWrapper connectionProvider;
     private SQLQueryFactory queryFactory;
+    private QueryDiagnostics queryDiagnostics;
+    private QueryGuard queryGuard;
 
     @Override
     public void init(CoreSettings settings) {
         this.settings = settings;
         Settings customSettings = settings.getPersistenceSettings().getCustomSettings();
         connectionProvider = new ConnectionWrapper(customSettings);
+        queryDiagnostics = new QueryDiagnostics(customSettings);
+        queryGuard = new QueryGuard(customSettings);
+        GeometryReader.init(customSettings);
+        EntityCache.init(customSettings);
     }
 
     @Override
@@ -107,10 +113,19 @@ public abstract class PostgresPersistenceManager<I extends SimpleExpression<J> &
     public abstract String getLiquibaseChangelogFilename();
 
     public long count(ResourcePath path, Query query) {
+        long startTime = queryDiagnostics.start();
         SQLQueryFactory qf = createQueryFactory();
         PathSqlBuilderImp psb = new PathSqlBuilderImp(getPropertyResolver());
         SQLQuery<Tuple> sqlQuery = psb.buildFor(path, query, qf, getCoreSettings().getPersistenceSettings());
-        return sqlQuery.fetchCount();
+        queryGuard.applyTimeout(connectionProvider.get());
+        long count;
+        try {
+            count = sqlQuery.fetchCount();
+        } catch (RuntimeException ex) {
+            throw queryGuard.translate(ex);
+        }
+        queryDiagnostics.logIfSlow(path, query, sqlQuery, count, startTime);
+        return count;
     }
 
     @Override
@@ -161,6 +176,20 @@ public abstract class PostgresPersistenceManager<I extends SimpleExpression<J> &
 
     @Override
     public Object get(ResourcePath path, Query query) {
+        return get(path, query, true);
+    }
+
+    /**
+     * Get the entity or entities for the given path.
+     *
+     * @param path The path to get the entities for.
+     * @param query The query options.
+     * @param checkCost If true, the estimated cost of the query is checked
+     * before it is executed. False for the queries of expanded entities, that
+     * are executed once for each parent entity.
+     * @return The entity, entities or property.
+     */
+    Object get(ResourcePath path, Query query, boolean checkCost) {
         ResourcePathElement lastElement = path.getLastElement();
         if (!(lastElement instanceof EntityPathElement) && !(lastElement instanceof EntitySetPathElement)) {
             if (!query.getExpand().isEmpty()) {
@@ -173,6 +202,7 @@ public abstract class PostgresPersistenceManager<I extends SimpleExpression<J> &
             }
         }
 
+        long startTime = queryDiagnostics.start();
         SQLQueryFactory qf = createQueryFactory();
         PathSqlBuilderImp psb = new PathSqlBuilderImp(getPropertyResolver());
         SQLQuery<Tuple> sqlQuery = psb.buildFor(path, query, qf, getCoreSettings().getPersistenceSettings());
@@ -181,9 +211,19 @@ public abstract class PostgresPersistenceManager<I extends SimpleExpression<J> &
             LOGGER.trace("Generated SQL:\n{}", sqlQuery.getSQL().getSQL());
         }
 
+        queryGuard.applyTimeout(connectionProvider.get());
+        if (checkCost) {
+            queryGuard.checkCost(connectionProvider.get(), qf.getConfiguration(), applyLimits(path, query, sqlQuery.clone()));
+        }
+
         EntityCreator entityCreator = new EntityCreator(this, path, query, sqlQuery);
-        lastElement.visit(entityCreator);
+        try {
+            lastElement.visit(entityCreator);
+        } catch (RuntimeException ex) {
+            throw queryGuard.translate(ex);
+        }
         Object entity = entityCreator.getEntity();
+        queryDiagnostics.logIfSlow(path, query, sqlQuery, QueryDiagnostics.rowCount(entity), startTime);
 
         if (path.isEntityProperty() && entity instanceof Map) {
             Map map = (Map) entity;
@@ -285,18 +325,53 @@ public abstract class PostgresPersistenceManager<I extends SimpleExpression<J> &
         LOGGER.debug("Deleted {} rows using query {}", rowCount, sqlDelete);
     }
 
+    @Override
+    public String explain(ResourcePath path, Query query) {
+        SQLQueryFactory qf = createQueryFactory();
+        PathSqlBuilderImp psb = new PathSqlBuilderImp(getPropertyResolver());
+        SQLQuery<Tuple> sqlQuery = psb.buildFor(path, query, qf, getCoreSettings().getPersistenceSettings());
+        applyLimits(path, query, sqlQuery);
+        try {
+            return QueryDiagnostics.explain(connectionProvider.get(), qf.getConfiguration(), sqlQuery);
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Failed to explain query: " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Apply the limit and offset the EntityCreator uses when executing the
+     * query for the given path.
+     *
+     * @param path The path of the request.
+     * @param query The query options of the request.
+     * @param sqlQuery The query to apply the limits to.
+     * @return The given query.
+     */
+    private static SQLQuery<Tuple> applyLimits(ResourcePath path, Query query, SQLQuery<Tuple> sqlQuery) {
+        if (path.getLastElement() instanceof EntitySetPathElement) {
+            sqlQuery.limit(1L + query.getTopOrDefault());
+            sqlQuery.offset(query.getSkip(0));
+        } else {
+            sqlQuery.limit(2);
+        }
+        return sqlQuery;
+    }
+
     @Override
     protected boolean doCommit() {
+        queryGuard.reset();
         return connectionProvider.doCommit();
     }
 
     @Override
     protected boolean doRollback() {
+        queryGuard.reset();
         return connectionProvider.doRollback();
     }
 
     @Override
     protected boolean doClose() {
+        queryGuard.reset();
         return connectionProvider.doClose();
     }
 
@@ -306,7 +381,7 @@ public abstract class PostgresPersistenceManager<I extends SimpleExpression<J> &
             Settings customSettings = settings.getPersistenceSettings().getCustomSettings();
             Connection connection = ConnectionUtils.getConnection("FROST-Source", customSettings);
             String liquibaseChangelogFilename = getLiquibaseChangelogFilename();
-            return LiquibaseHelper.checkForUpgrades(connection, liquibaseChangelogFilename);
+            return LiquibaseHelper.checkForUpgrades(connection, liquibaseChangelogFilename, LiquibaseHelper.createChangelogParameters(customSettings));
         } catch (SQLException ex) {
             LOGGER.error("Could not initialise database.", ex);
             return "Failed to initialise database:\n"
@@ -329,7 +404,7 @@ public abstract class PostgresPersistenceManager<I extends SimpleExpression<J> &
             return false;
         }
         String liquibaseChangelogFilename = getLiquibaseChangelogFilename();
-        return LiquibaseHelper.doUpgrades(connection, liquibaseChangelogFilename, out);
+        return LiquibaseHelper.doUpgrades(connection, liquibaseChangelogFilename, LiquibaseHelper.createChangelogParameters(customSettings), out);
     }
 
 }
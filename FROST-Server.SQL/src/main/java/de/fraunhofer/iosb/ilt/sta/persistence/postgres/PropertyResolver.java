@@ -38,6 +38,7 @@ import de.fraunhofer.iosb.ilt.sta.persistence.postgres.relationalpaths.AbstractQ
 import de.fraunhofer.iosb.ilt.sta.persistence.postgres.relationalpaths.QCollection;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
@@ -67,6 +68,11 @@ public class PropertyResolver<I extends SimpleExpression<J> & Path<J>, J> {
     private final Map<Property, Map<Class, ExpressionFactory>> epMapSingle = new HashMap<>();
     private final Map<Property, Map<Class, Map<String, ExpressionFactory>>> epMapMulti = new HashMap<>();
     private final Map<Class, List<ExpressionFactory>> allForClass = new HashMap<>();
+    /**
+     * Expressions that are selected for a property, instead of the ones used
+     * for filtering and ordering.
+     */
+    private final Map<Property, Map<Class, ExpressionFactory>> epMapSelect = new HashMap<>();
 
     public final QCollection<I, J> qCollection;
     private final BasicPersistenceType basicPersistenceType;
@@ -119,8 +125,9 @@ public class PropertyResolver<I extends SimpleExpression<J> & Path<J>, J> {
         addEntry(EntityProperty.NAME, qFeaturesClass, (ExpressionFactory<AbstractQFeatures>) (AbstractQFeatures qPath) -> qPath.name);
         addEntry(EntityProperty.DESCRIPTION, qFeaturesClass, (ExpressionFactory<AbstractQFeatures>) (AbstractQFeatures qPath) -> qPath.description);
         addEntry(EntityProperty.ENCODINGTYPE, qFeaturesClass, (ExpressionFactory<AbstractQFeatures>) (AbstractQFeatures qPath) -> qPath.encodingType);
-        addEntry(EntityProperty.FEATURE, qFeaturesClass, "j", (ExpressionFactory<AbstractQFeatures>) (AbstractQFeatures qPath) -> qPath.feature);
-        addEntry(EntityProperty.FEATURE, qFeaturesClass, "g", (ExpressionFactory<AbstractQFeatures>) (AbstractQFeatures qPath) -> qPath.geom);
+        addEntryFilter(EntityProperty.FEATURE, qFeaturesClass, "j", (ExpressionFactory<AbstractQFeatures>) (AbstractQFeatures qPath) -> qPath.feature);
+        addEntryFilter(EntityProperty.FEATURE, qFeaturesClass, "g", (ExpressionFactory<AbstractQFeatures>) (AbstractQFeatures qPath) -> qPath.geom);
+        addEntrySelect(EntityProperty.FEATURE, qFeaturesClass, (ExpressionFactory<AbstractQFeatures>) (AbstractQFeatures qPath) -> GeometryReader.readExpression(qPath.feature, qPath.geom));
         addEntry(EntityProperty.PROPERTIES, qFeaturesClass, (ExpressionFactory<AbstractQFeatures>) (AbstractQFeatures qPath) -> qPath.properties);
 
         Class<? extends AbstractQHistLocations> qHistLocationsClass = qCollection.qHistLocations.getClass();
@@ -135,8 +142,9 @@ public class PropertyResolver<I extends SimpleExpression<J> & Path<J>, J> {
         addEntry(EntityProperty.NAME, qLocationsClass, (ExpressionFactory<AbstractQLocations>) (AbstractQLocations qPath) -> qPath.name);
         addEntry(EntityProperty.DESCRIPTION, qLocationsClass, (ExpressionFactory<AbstractQLocations>) (AbstractQLocations qPath) -> qPath.description);
         addEntry(EntityProperty.ENCODINGTYPE, qLocationsClass, (ExpressionFactory<AbstractQLocations>) (AbstractQLocations qPath) -> qPath.encodingType);
-        addEntry(EntityProperty.LOCATION, qLocationsClass, "j", (ExpressionFactory<AbstractQLocations>) (AbstractQLocations qPath) -> qPath.location);
-        addEntry(EntityProperty.LOCATION, qLocationsClass, "g", (ExpressionFactory<AbstractQLocations>) (AbstractQLocations qPath) -> qPath.geom);
+        addEntryFilter(EntityProperty.LOCATION, qLocationsClass, "j", (ExpressionFactory<AbstractQLocations>) (AbstractQLocations qPath) -> qPath.location);
+        addEntryFilter(EntityProperty.LOCATION, qLocationsClass, "g", (ExpressionFactory<AbstractQLocations>) (AbstractQLocations qPath) -> qPath.geom);
+        addEntrySelect(EntityProperty.LOCATION, qLocationsClass, (ExpressionFactory<AbstractQLocations>) (AbstractQLocations qPath) -> GeometryReader.readExpression(qPath.location, qPath.geom));
         addEntry(EntityProperty.PROPERTIES, qLocationsClass, (ExpressionFactory<AbstractQLocations>) (AbstractQLocations qPath) -> qPath.properties);
 
         Class<? extends AbstractQObsProperties> qObsPropertiesClass = qCollection.qObsProperties.getClass();
@@ -277,7 +285,12 @@ public class PropertyResolver<I extends SimpleExpression<J> & Path<J>, J> {
             expressionsForClass(qPath, exprSet);
         } else {
             for (Property property : selectedProperties) {
-                expressionsForProperty(property, qPath, exprSet);
+                ExpressionFactory selectFactory = epMapSelect.getOrDefault(property, Collections.emptyMap()).get(qPath.getClass());
+                if (selectFactory == null) {
+                    expressionsForProperty(property, qPath, exprSet);
+                } else {
+                    exprSet.add(selectFactory.get(qPath));
+                }
             }
         }
         return exprSet.toArray(new Expression<?>[exprSet.size()]);
@@ -295,6 +308,26 @@ public class PropertyResolver<I extends SimpleExpression<J> & Path<J>, J> {
         addToAll(clazz, factory);
     }
 
+    /**
+     * Add an entry that is only used for filtering and ordering, not for
+     * selecting.
+     */
+    private void addEntryFilter(Property property, Class clazz, String name, ExpressionFactory factory) {
+        addEntrySingle(property, clazz, factory);
+        addEntryMulti(property, clazz, name, factory);
+    }
+
+    /**
+     * Add an entry that is only used for selecting.
+     */
+    private void addEntrySelect(Property property, Class clazz, ExpressionFactory factory) {
+        epMapSelect.computeIfAbsent(
+                property,
+                k -> new HashMap<>()
+        ).put(clazz, factory);
+        addToAll(clazz, factory);
+    }
+
     private void addToAll(Class clazz, ExpressionFactory factory) {
         List<ExpressionFactory> list = allForClass.computeIfAbsent(
                 clazz,
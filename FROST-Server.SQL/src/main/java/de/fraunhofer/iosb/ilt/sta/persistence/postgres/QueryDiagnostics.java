@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.persistence.postgres;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.sql.Configuration;
+import com.querydsl.sql.SQLBindings;
+import com.querydsl.sql.SQLQuery;
+import com.querydsl.sql.types.Null;
+import de.fraunhofer.iosb.ilt.sta.model.core.EntitySet;
+import de.fraunhofer.iosb.ilt.sta.path.ResourcePath;
+import de.fraunhofer.iosb.ilt.sta.query.Query;
+import de.fraunhofer.iosb.ilt.sta.settings.ConfigDefaults;
+import de.fraunhofer.iosb.ilt.sta.settings.Settings;
+import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueInt;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Diagnostics for the generated SQL: logs queries that take longer than a
+ * configured threshold, and explains the execution plan of queries.
+ *
+ * @author scf
+ */
+public class QueryDiagnostics implements ConfigDefaults {
+
+    /**
+     * The time, in milliseconds, above which a request is logged as slow. 0
+     * disables the slow query log.
+     */
+    @DefaultValueInt(0)
+    public static final String TAG_SLOW_QUERY_THRESHOLD = "slowQueryThreshold";
+
+    /**
+     * The logger for this class. Slow queries are logged at WARN level on
+     * this logger, so they can be routed separately.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryDiagnostics.class);
+    private static final String EXPLAIN_PREFIX = "EXPLAIN ";
+    private static final String EXPLAIN_ANALYZE_PREFIX = "EXPLAIN (ANALYZE, BUFFERS) ";
+
+    private final long thresholdNanos;
+
+    public QueryDiagnostics(Settings customSettings) {
+        thresholdNanos = TimeUnit.MILLISECONDS.toNanos(customSettings.getInt(TAG_SLOW_QUERY_THRESHOLD, getClass()));
+    }
+
+    /**
+     * Get the start time to pass to the log methods.
+     *
+     * @return The current time in nanoseconds, or 0 if the slow query log is
+     * disabled.
+     */
+    public long start() {
+        return thresholdNanos > 0 ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Log the given query if it took longer than the threshold.
+     *
+     * @param path The path of the request.
+     * @param query The query options of the request.
+     * @param sqlQuery The generated SQL query.
+     * @param rowCount The number of rows in the result.
+     * @param startNanos The start time, as returned by {@link #start()}.
+     */
+    public void logIfSlow(ResourcePath path, Query query, SQLQuery<Tuple> sqlQuery, long rowCount, long startNanos) {
+        if (startNanos == 0) {
+            return;
+        }
+        long duration = System.nanoTime() - startNanos;
+        if (duration < thresholdNanos) {
+            return;
+        }
+        String options = query == null ? "" : query.toString();
+        SQLBindings sql = sqlQuery.getSQL();
+        LOGGER.warn("Slow query ({} ms, {} rows) for {}{}\nSQL: {}\nBindings: {}",
+                TimeUnit.NANOSECONDS.toMillis(duration),
+                rowCount,
+                path,
+                options.isEmpty() ? "" : "?" + options,
+                sql.getSQL(),
+                sql.getNullFriendlyBindings());
+    }
+
+    /**
+     * Count the rows in the given result.
+     *
+     * @param result The result of a request.
+     * @return The number of entities in the result.
+     */
+    public static long rowCount(Object result) {
+        if (result == null) {
+            return 0;
+        }
+        if (result instanceof EntitySet) {
+            return ((EntitySet) result).size();
+        }
+        return 1;
+    }
+
+    /**
+     * Run EXPLAIN (ANALYZE, BUFFERS) for the given query. This executes the
+     * query.
+     *
+     * @param connection The connection to use.
+     * @param configuration The configuration used to set the bindings.
+     * @param sqlQuery The query to explain.
+     * @return The SQL, the bindings and the execution plan, as text.
+     * @throws SQLException If the query fails.
+     */
+    public static String explain(Connection connection, Configuration configuration, SQLQuery<Tuple> sqlQuery) throws SQLException {
+        SQLBindings sql = sqlQuery.getSQL();
+        List<Object> bindings = sql.getNullFriendlyBindings();
+        StringBuilder result = new StringBuilder();
+        result.append(sql.getSQL()).append("\n\n");
+        result.append("Bindings: ").append(bindings).append("\n\n");
+        for (String line : planLines(connection, configuration, sql, true)) {
+            result.append(line).append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Get the execution plan of the given query.
+     *
+     * @param connection The connection to use.
+     * @param configuration The configuration used to set the bindings.
+     * @param sql The SQL and bindings of the query.
+     * @param analyze If true, the query is executed, and the plan contains
+     * the actual times and buffer usage. If false, the query is only planned.
+     * @return The lines of the plan.
+     * @throws SQLException If planning or executing the query fails.
+     */
+    public static List<String> planLines(Connection connection, Configuration configuration, SQLBindings sql, boolean analyze) throws SQLException {
+        String prefix = analyze ? EXPLAIN_ANALYZE_PREFIX : EXPLAIN_PREFIX;
+        List<String> lines = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement(prefix + sql.getSQL())) {
+            int index = 1;
+            for (Object binding : sql.getNullFriendlyBindings()) {
+                if (binding == null || binding instanceof Null) {
+                    statement.setNull(index, Types.NULL);
+                } else {
+                    configuration.set(statement, null, index, binding);
+                }
+                index++;
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    lines.add(resultSet.getString(1));
+                }
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.persistence.postgres;
+
+import com.querydsl.core.QueryException;
+import com.querydsl.core.Tuple;
+import com.querydsl.sql.Configuration;
+import com.querydsl.sql.SQLQuery;
+import de.fraunhofer.iosb.ilt.sta.settings.ConfigDefaults;
+import de.fraunhofer.iosb.ilt.sta.settings.Settings;
+import de.fraunhofer.iosb.ilt.sta.settings.annotation.DefaultValueInt;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Guards the database against expensive read queries: sets a statement
+ * timeout on read transactions, and rejects queries for which the planner
+ * estimates a cost above a configured maximum, before they are executed.
+ *
+ * @author scf
+ */
+public class QueryGuard implements ConfigDefaults {
+
+    /**
+     * The maximum time, in milliseconds, a read query may run. 0 disables the
+     * timeout.
+     */
+    @DefaultValueInt(0)
+    public static final String TAG_STATEMENT_TIMEOUT = "statementTimeout";
+    /**
+     * The maximum planner cost of a read query. 0 disables the check.
+     */
+    @DefaultValueInt(0)
+    public static final String TAG_MAX_QUERY_COST = "maxQueryCost";
+
+    /**
+     * The logger for this class.
+     */
+    private static final Logger LOGGER = LoggerFactory.getLogger(QueryGuard.class);
+    private static final Pattern COST_PATTERN = Pattern.compile("cost=[0-9.]+\\.\\.([0-9.]+)");
+    /**
+     * The SQL state PostgreSQL uses for statements cancelled by the statement
+     * timeout.
+     */
+    private static final String SQL_STATE_QUERY_CANCELED = "57014";
+
+    private final int statementTimeout;
+    private final int maxQueryCost;
+    private boolean timeoutSet;
+
+    public QueryGuard(Settings customSettings) {
+        statementTimeout = customSettings.getInt(TAG_STATEMENT_TIMEOUT, getClass());
+        maxQueryCost = customSettings.getInt(TAG_MAX_QUERY_COST, getClass());
+    }
+
+    /**
+     * Set the statement timeout for the current transaction, if configured
+     * and not already set. The timeout is reset by PostgreSQL when the
+     * transaction ends, so {@link #reset()} must be called after each commit
+     * or rollback.
+     *
+     * @param connection The connection to set the timeout on.
+     */
+    public void applyTimeout(Connection connection) {
+        if (statementTimeout <= 0 || timeoutSet || connection == null) {
+            return;
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("SET LOCAL statement_timeout = " + statementTimeout);
+            timeoutSet = true;
+        } catch (SQLException ex) {
+            LOGGER.error("Failed to set statement timeout.", ex);
+        }
+    }
+
+    /**
+     * Mark the end of the current transaction.
+     */
+    public void reset() {
+        timeoutSet = false;
+    }
+
+    /**
+     * Check the estimated cost of the given query, and throw an exception if
+     * it is above the configured maximum. The query is only planned, not
+     * executed.
+     *
+     * @param connection The connection to use.
+     * @param configuration The configuration used to set the bindings.
+     * @param sqlQuery The query to check, with the limit and offset that will
+     * be used to execute it.
+     * @throws IllegalArgumentException If the estimated cost is too high.
+     */
+    public void checkCost(Connection connection, Configuration configuration, SQLQuery<Tuple> sqlQuery) {
+        if (maxQueryCost <= 0 || connection == null) {
+            return;
+        }
+        double cost;
+        try {
+            cost = estimateCost(connection, configuration, sqlQuery);
+        } catch (SQLException ex) {
+            if (isTimeout(ex)) {
+                throw timeoutException();
+            }
+            LOGGER.error("Failed to estimate query cost.", ex);
+            return;
+        }
+        if (cost > maxQueryCost) {
+            LOGGER.debug("Rejected query with cost {}: {}", cost, sqlQuery);
+            throw new IllegalArgumentException("Query too expensive (estimated cost " + Math.round(cost) + ", maximum " + maxQueryCost + "). Add a more selective filter or a smaller $top.");
+        }
+    }
+
+    /**
+     * Translate a failed query into an exception the service can report to
+     * the user, if it was cancelled by the statement timeout.
+     *
+     * @param ex The exception thrown by the query.
+     * @return An IllegalArgumentException if the query timed out, the given
+     * exception otherwise.
+     */
+    public RuntimeException translate(RuntimeException ex) {
+        if (ex instanceof QueryException && ex.getCause() instanceof SQLException && isTimeout((SQLException) ex.getCause())) {
+            return timeoutException();
+        }
+        return ex;
+    }
+
+    private IllegalArgumentException timeoutException() {
+        return new IllegalArgumentException("Query took longer than " + statementTimeout + " ms. Add a more selective filter or a smaller $top.");
+    }
+
+    private static boolean isTimeout(SQLException ex) {
+        return SQL_STATE_QUERY_CANCELED.equals(ex.getSQLState());
+    }
+
+    /**
+     * Get the total cost the planner estimates for the given query.
+     *
+     * @param connection The connection to use.
+     * @param configuration The configuration used to set the bindings.
+     * @param sqlQuery The query to plan.
+     * @return The estimated total cost, or 0 if the plan could not be parsed.
+     * @throws SQLException If planning the query fails.
+     */
+    public static double estimateCost(Connection connection, Configuration configuration, SQLQuery<Tuple> sqlQuery) throws SQLException {
+        List<String> plan = QueryDiagnostics.planLines(connection, configuration, sqlQuery.getSQL(), false);
+        if (plan.isEmpty()) {
+            return 0;
+        }
+        return parseCost(plan.get(0));
+    }
+
+    /**
+     * Parse the total cost from the top line of a query plan.
+     *
+     * @param planLine The first line of the output of EXPLAIN.
+     * @return The total cost, or 0 if the line contains no cost.
+     */
+    static double parseCost(String planLine) {
+        if (planLine == null) {
+            return 0;
+        }
+        Matcher matcher = COST_PATTERN.matcher(planLine);
+        if (matcher.find()) {
+            return Double.parseDouble(matcher.group(1));
+        }
+        return 0;
+    }
+}
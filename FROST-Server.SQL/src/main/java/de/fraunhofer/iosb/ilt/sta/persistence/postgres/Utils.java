@@ -21,6 +21,7 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 import de.fraunhofer.iosb.ilt.sta.json.deserialize.EntityParser;
 import de.fraunhofer.iosb.ilt.sta.json.deserialize.custom.GeoJsonDeserializier;
+import de.fraunhofer.iosb.ilt.sta.model.ext.LazyJsonValue;
 import de.fraunhofer.iosb.ilt.sta.model.ext.TimeInstant;
 import de.fraunhofer.iosb.ilt.sta.model.ext.TimeInterval;
 import de.fraunhofer.iosb.ilt.sta.model.ext.TimeValue;
@@ -89,6 +90,25 @@ public class Utils {
         return intervalFromTimes(timeStart, timeEnd);
     }
 
+    /**
+     * Turn a location, as read from the database, into an object. GeoJSON
+     * locations are not parsed, since they are usually only written to the
+     * response again, and were validated when they were stored.
+     *
+     * @param encodingType The encodingType of the location.
+     * @param locationString The location, as read from the database.
+     * @return The location object.
+     */
+    public static Object locationFromDatabase(String encodingType, String locationString) {
+        if (locationString == null || locationString.isEmpty()) {
+            return null;
+        }
+        if (encodingType != null && GeoJsonDeserializier.ENCODINGS.contains(encodingType.toLowerCase())) {
+            return new LazyJsonValue(locationString);
+        }
+        return locationFromEncoding(encodingType, locationString);
+    }
+
     public static Object locationFromEncoding(String encodingType, String locationString) {
         if (locationString == null || locationString.isEmpty()) {
             return null;
@@ -181,7 +181,7 @@ public class StaDateTimeExpression implements TimeExpression {
                 return t1.goe(e2).and(t1.gt(s2));
 
             case ">=":
-                return t1.goe(e2);
+                return t1.goe(s2).and(t1.goe(e2));
 
             case "<":
                 return t1.lt(s2);
@@ -199,16 +199,16 @@ public class StaDateTimeExpression implements TimeExpression {
                 throw new UnsupportedOperationException("First parameter of contains must be an interval.");
 
             case "m":
-                return t1.eq(s2).or(t1.eq(e2));
+                return s2.loe(t1).and(t1.eq(s2).or(t1.eq(e2)));
 
             case "o":
-                return t1.eq(s2).or(s2.loe(t1).and(e2.gt(t1)));
+                return s2.loe(t1).and(t1.eq(s2).or(e2.gt(t1)));
 
             case "s":
                 return t1.eq(s2);
 
             case "f":
-                return t1.eq(e2);
+                return s2.loe(t1).and(t1.eq(e2));
 
             default:
                 throw new UnsupportedOperationException("Unknown boolean operation: " + op);
@@ -29,6 +29,7 @@ import de.fraunhofer.iosb.ilt.sta.model.Observation;
 import de.fraunhofer.iosb.ilt.sta.model.ObservedProperty;
 import de.fraunhofer.iosb.ilt.sta.model.Sensor;
 import de.fraunhofer.iosb.ilt.sta.model.Thing;
+import de.fraunhofer.iosb.ilt.sta.model.ext.LazyJsonMap;
 import de.fraunhofer.iosb.ilt.sta.model.ext.UnitOfMeasurement;
 import de.fraunhofer.iosb.ilt.sta.path.EntityProperty;
 import de.fraunhofer.iosb.ilt.sta.path.EntityType;
@@ -50,7 +51,6 @@ import de.fraunhofer.iosb.ilt.sta.util.IncompleteEntityException;
 import de.fraunhofer.iosb.ilt.sta.util.NoSuchEntityException;
 import java.sql.Timestamp;
 import java.util.Collections;
-import java.util.Map;
 import java.util.Set;
 import org.geojson.Polygon;
 import org.slf4j.Logger;
@@ -112,7 +112,7 @@ public class DatastreamFactory<I extends SimpleExpression<J> & Path<J>, J> imple
         }
         if (select.isEmpty() || select.contains(EntityProperty.PROPERTIES)) {
             String props = tuple.get(qInstance.properties);
-            entity.setProperties(Utils.jsonToObject(props, Map.class));
+            entity.setProperties(LazyJsonMap.fromJson(props));
         }
         entity.setSensor(entityFactories.sensorFromId(tuple, qInstance.getSensorId()));
         entity.setThing(entityFactories.thingFromId(tuple, qInstance.getThingId()));
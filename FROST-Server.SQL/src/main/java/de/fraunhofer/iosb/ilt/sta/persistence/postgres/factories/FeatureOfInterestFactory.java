@@ -26,6 +26,7 @@ import com.querydsl.sql.dml.SQLUpdateClause;
 import de.fraunhofer.iosb.ilt.sta.messagebus.EntityChangedMessage;
 import de.fraunhofer.iosb.ilt.sta.model.FeatureOfInterest;
 import de.fraunhofer.iosb.ilt.sta.model.Observation;
+import de.fraunhofer.iosb.ilt.sta.model.ext.LazyJsonMap;
 import de.fraunhofer.iosb.ilt.sta.path.EntityProperty;
 import de.fraunhofer.iosb.ilt.sta.path.EntityType;
 import de.fraunhofer.iosb.ilt.sta.path.Property;
@@ -34,6 +35,7 @@ import de.fraunhofer.iosb.ilt.sta.persistence.postgres.EntityFactories;
 import static de.fraunhofer.iosb.ilt.sta.persistence.postgres.EntityFactories.CAN_NOT_BE_NULL;
 import static de.fraunhofer.iosb.ilt.sta.persistence.postgres.EntityFactories.CHANGED_MULTIPLE_ROWS;
 import static de.fraunhofer.iosb.ilt.sta.persistence.postgres.EntityFactories.NO_ID_OR_NOT_FOUND;
+import de.fraunhofer.iosb.ilt.sta.persistence.postgres.GeometryReader;
 import de.fraunhofer.iosb.ilt.sta.persistence.postgres.PostgresPersistenceManager;
 import de.fraunhofer.iosb.ilt.sta.persistence.postgres.Utils;
 import de.fraunhofer.iosb.ilt.sta.persistence.postgres.relationalpaths.AbstractQFeatures;
@@ -43,7 +45,6 @@ import de.fraunhofer.iosb.ilt.sta.query.Query;
 import de.fraunhofer.iosb.ilt.sta.util.IncompleteEntityException;
 import de.fraunhofer.iosb.ilt.sta.util.NoSuchEntityException;
 import java.util.Collections;
-import java.util.Map;
 import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -83,13 +84,13 @@ public class FeatureOfInterestFactory<I extends SimpleExpression<J> & Path<J>, J
         String encodingType = tuple.get(qInstance.encodingType);
         entity.setEncodingType(encodingType);
         if (select.isEmpty() || select.contains(EntityProperty.FEATURE)) {
-            String locationString = tuple.get(qInstance.feature);
+            String locationString = tuple.get(GeometryReader.readExpression(qInstance.feature, qInstance.geom));
             dataSize.increase(locationString == null ? 0 : locationString.length());
-            entity.setFeature(Utils.locationFromEncoding(encodingType, locationString));
+            entity.setFeature(Utils.locationFromDatabase(encodingType, locationString));
         }
         if (select.isEmpty() || select.contains(EntityProperty.PROPERTIES)) {
             String props = tuple.get(qInstance.properties);
-            entity.setProperties(Utils.jsonToObject(props, Map.class));
+            entity.setProperties(LazyJsonMap.fromJson(props));
         }
         return entity;
     }
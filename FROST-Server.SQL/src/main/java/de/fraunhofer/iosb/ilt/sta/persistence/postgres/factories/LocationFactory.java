@@ -29,6 +29,7 @@ import de.fraunhofer.iosb.ilt.sta.model.HistoricalLocation;
 import de.fraunhofer.iosb.ilt.sta.model.Location;
 import de.fraunhofer.iosb.ilt.sta.model.Thing;
 import de.fraunhofer.iosb.ilt.sta.model.core.EntitySet;
+import de.fraunhofer.iosb.ilt.sta.model.ext.LazyJsonMap;
 import de.fraunhofer.iosb.ilt.sta.path.EntityProperty;
 import de.fraunhofer.iosb.ilt.sta.path.EntityType;
 import de.fraunhofer.iosb.ilt.sta.path.Property;
@@ -40,6 +41,7 @@ import static de.fraunhofer.iosb.ilt.sta.persistence.postgres.EntityFactories.CR
 import static de.fraunhofer.iosb.ilt.sta.persistence.postgres.EntityFactories.LINKED_L_TO_HL;
 import static de.fraunhofer.iosb.ilt.sta.persistence.postgres.EntityFactories.LINKED_L_TO_T;
 import static de.fraunhofer.iosb.ilt.sta.persistence.postgres.EntityFactories.UNLINKED_L_FROM_T;
+import de.fraunhofer.iosb.ilt.sta.persistence.postgres.GeometryReader;
 import de.fraunhofer.iosb.ilt.sta.persistence.postgres.PostgresPersistenceManager;
 import de.fraunhofer.iosb.ilt.sta.persistence.postgres.Utils;
 import de.fraunhofer.iosb.ilt.sta.persistence.postgres.relationalpaths.AbstractQHistLocations;
@@ -53,7 +55,6 @@ import de.fraunhofer.iosb.ilt.sta.util.NoSuchEntityException;
 import java.sql.Timestamp;
 import java.util.Calendar;
 import java.util.Collections;
-import java.util.Map;
 import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -93,13 +94,13 @@ public class LocationFactory<I extends SimpleExpression<J> & Path<J>, J> impleme
         String encodingType = tuple.get(qInstance.encodingType);
         entity.setEncodingType(encodingType);
         if (select.isEmpty() || select.contains(EntityProperty.LOCATION)) {
-            String locationString = tuple.get(qInstance.location);
+            String locationString = tuple.get(GeometryReader.readExpression(qInstance.location, qInstance.geom));
             dataSize.increase(locationString == null ? 0 : locationString.length());
-            entity.setLocation(Utils.locationFromEncoding(encodingType, locationString));
+            entity.setLocation(Utils.locationFromDatabase(encodingType, locationString));
         }
         if (select.isEmpty() || select.contains(EntityProperty.PROPERTIES)) {
             String props = tuple.get(qInstance.properties);
-            entity.setProperties(Utils.jsonToObject(props, Map.class));
+            entity.setProperties(LazyJsonMap.fromJson(props));
         }
         return entity;
     }
@@ -30,6 +30,7 @@ import de.fraunhofer.iosb.ilt.sta.model.ObservedProperty;
 import de.fraunhofer.iosb.ilt.sta.model.Sensor;
 import de.fraunhofer.iosb.ilt.sta.model.Thing;
 import de.fraunhofer.iosb.ilt.sta.model.core.EntitySet;
+import de.fraunhofer.iosb.ilt.sta.model.ext.LazyJsonMap;
 import de.fraunhofer.iosb.ilt.sta.model.ext.UnitOfMeasurement;
 import de.fraunhofer.iosb.ilt.sta.path.EntityProperty;
 import de.fraunhofer.iosb.ilt.sta.path.EntityType;
@@ -53,7 +54,6 @@ import de.fraunhofer.iosb.ilt.sta.util.NoSuchEntityException;
 import java.sql.Timestamp;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import org.geojson.Polygon;
 import org.slf4j.Logger;
@@ -114,7 +114,7 @@ public class MultiDatastreamFactory<I extends SimpleExpression<J> & Path<J>, J>
         }
         if (select.isEmpty() || select.contains(EntityProperty.PROPERTIES)) {
             String props = tuple.get(qInstance.properties);
-            entity.setProperties(Utils.jsonToObject(props, Map.class));
+            entity.setProperties(LazyJsonMap.fromJson(props));
         }
         entity.setSensor(entityFactories.sensorFromId(tuple, qInstance.getSensorId()));
         entity.setThing(entityFactories.thingFromId(tuple, qInstance.getThingId()));
@@ -30,6 +30,8 @@ import de.fraunhofer.iosb.ilt.sta.model.FeatureOfInterest;
 import de.fraunhofer.iosb.ilt.sta.model.MultiDatastream;
 import de.fraunhofer.iosb.ilt.sta.model.Observation;
 import de.fraunhofer.iosb.ilt.sta.model.core.Id;
+import de.fraunhofer.iosb.ilt.sta.model.ext.LazyJsonMap;
+import de.fraunhofer.iosb.ilt.sta.model.ext.LazyJsonValue;
 import de.fraunhofer.iosb.ilt.sta.model.ext.TimeInstant;
 import de.fraunhofer.iosb.ilt.sta.model.ext.TimeValue;
 import de.fraunhofer.iosb.ilt.sta.path.EntityProperty;
@@ -54,7 +56,6 @@ import java.math.BigDecimal;
 import java.sql.Timestamp;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -106,7 +107,7 @@ public class ObservationFactory<I extends SimpleExpression<J> & Path<J>, J> impl
         if (select.isEmpty() || select.contains(EntityProperty.PARAMETERS)) {
             String props = tuple.get(qInstance.parameters);
             dataSize.increase(props == null ? 0 : props.length());
-            entity.setParameters(Utils.jsonToObject(props, Map.class));
+            entity.setParameters(LazyJsonMap.fromJson(props));
         }
 
         Timestamp pTimeStart = tuple.get(qInstance.phenomenonTimeStart);
@@ -129,7 +130,7 @@ public class ObservationFactory<I extends SimpleExpression<J> & Path<J>, J> impl
         if (select.isEmpty() || select.contains(EntityProperty.RESULTQUALITY)) {
             String resultQuality = tuple.get(qInstance.resultQuality);
             dataSize.increase(resultQuality == null ? 0 : resultQuality.length());
-            entity.setResultQuality(Utils.jsonToObject(resultQuality, Object.class));
+            entity.setResultQuality(LazyJsonValue.fromJson(resultQuality));
         }
     }
 
@@ -155,7 +156,7 @@ public class ObservationFactory<I extends SimpleExpression<J> & Path<J>, J> impl
                 case OBJECT_ARRAY:
                     String jsonData = tuple.get(qInstance.resultJson);
                     dataSize.increase(jsonData == null ? 0 : jsonData.length());
-                    entity.setResult(Utils.jsonToTree(jsonData));
+                    entity.setResult(LazyJsonValue.fromJson(jsonData));
                     break;
                 case STRING:
                     String stringData = tuple.get(qInstance.resultString);
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.persistence.postgres;
+
+import com.querydsl.core.Tuple;
+import com.querydsl.core.types.Expression;
+import de.fraunhofer.iosb.ilt.sta.messagebus.EntityChangedMessage;
+import de.fraunhofer.iosb.ilt.sta.model.Sensor;
+import de.fraunhofer.iosb.ilt.sta.model.Thing;
+import de.fraunhofer.iosb.ilt.sta.model.core.Id;
+import de.fraunhofer.iosb.ilt.sta.model.core.IdLong;
+import de.fraunhofer.iosb.ilt.sta.model.core.IdString;
+import de.fraunhofer.iosb.ilt.sta.path.EntityType;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the keying and invalidation of the entity cache. No database
+ * connection is needed, the loader returns fixed rows.
+ *
+ * @author scf
+ */
+public class EntityCacheTest {
+
+    private EntityCache cache;
+    private AtomicInteger loads;
+
+    @Before
+    public void setUp() {
+        cache = new EntityCache(100, 0);
+        loads = new AtomicInteger();
+    }
+
+    private Supplier<Tuple> loader() {
+        return () -> {
+            loads.incrementAndGet();
+            return new Row();
+        };
+    }
+
+    @Test
+    public void testIdClassDoesNotMatter() {
+        Tuple first = cache.get(EntityType.THING, new IdLong(42L), loader());
+        Tuple second = cache.get(EntityType.THING, new IdString("42"), loader());
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testTypesAreSeparate() {
+        cache.get(EntityType.THING, new IdLong(1L), loader());
+        cache.get(EntityType.SENSOR, new IdLong(1L), loader());
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testChangeInvalidatesById() {
+        cache.get(EntityType.THING, new IdLong(1L), loader());
+        cache.get(EntityType.THING, new IdLong(2L), loader());
+
+        cache.messageReceived(new EntityChangedMessage().setEntity(new Thing(new IdString("1"))));
+
+        cache.get(EntityType.THING, new IdLong(1L), loader());
+        cache.get(EntityType.THING, new IdLong(2L), loader());
+        Assert.assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testChangeWithoutIdInvalidatesType() {
+        cache.get(EntityType.THING, new IdLong(1L), loader());
+        cache.get(EntityType.THING, new IdLong(2L), loader());
+        cache.get(EntityType.SENSOR, new IdLong(1L), loader());
+
+        cache.messageReceived(new EntityChangedMessage().setEntityType(EntityType.THING));
+
+        Assert.assertEquals(1, cache.size());
+        cache.get(EntityType.SENSOR, new IdLong(1L), loader());
+        Assert.assertEquals(3, loads.get());
+    }
+
+    @Test
+    public void testRowLoadedDuringChangeIsNotStored() {
+        Id id = new IdLong(1L);
+        Tuple row = cache.get(EntityType.SENSOR, id, () -> {
+            loads.incrementAndGet();
+            // The entity changes while the old row is being read.
+            cache.messageReceived(new EntityChangedMessage().setEntity(new Sensor(id)));
+            return new Row();
+        });
+        Assert.assertNotNull(row);
+        Assert.assertEquals(0, cache.size());
+
+        cache.get(EntityType.SENSOR, id, loader());
+        Assert.assertEquals(2, loads.get());
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testMissingRowIsNotStored() {
+        Assert.assertNull(cache.get(EntityType.THING, new IdLong(1L), () -> null));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    /**
+     * An empty row, only compared by identity.
+     */
+    private static class Row implements Tuple {
+
+        @Override
+        public <T> T get(int index, Class<T> type) {
+            return null;
+        }
+
+        @Override
+        public <T> T get(Expression<T> expr) {
+            return null;
+        }
+
+        @Override
+        public int size() {
+            return 0;
+        }
+
+        @Override
+        public Object[] toArray() {
+            return new Object[0];
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2018 Fraunhofer Institut IOSB, Fraunhoferstr. 1, D 76131
+ * Karlsruhe, Germany.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.fraunhofer.iosb.ilt.sta.persistence.postgres;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ *
+ * @author scf
+ */
+public class QueryGuardTest {
+
+    private static final double DELTA = 0.0001;
+
+    @Test
+    public void testParseCost() {
+        Assert.assertEquals(1234.56, QueryGuard.parseCost("Limit  (cost=0.42..1234.56 rows=101 width=72)"), DELTA);
+        Assert.assertEquals(15.5, QueryGuard.parseCost("Seq Scan on \"THINGS\" e0  (cost=0.00..15.50 rows=550 width=104)"), DELTA);
+        Assert.assertEquals(1e6, QueryGuard.parseCost("Sort  (cost=999999.00..1000000.00 rows=1 width=8)"), DELTA);
+    }
+
+    @Test
+    public void testParseCostWithoutCost() {
+        Assert.assertEquals(0, QueryGuard.parseCost(null), DELTA);
+        Assert.assertEquals(0, QueryGuard.parseCost(""), DELTA);
+        Assert.assertEquals(0, QueryGuard.parseCost("Result"), DELTA);
+    }
+}